@@ -0,0 +1,58 @@
+package com.sn0326.cicddemo.mail.template;
+
+import java.util.Map;
+
+/**
+ * 比較用の旧実装（テンプレートを事前に解析せず、描画のたびにString.formatで本文を組み立てる）
+ *
+ * ベンチマークで使用するテンプレートのみを、変更前のMailTemplateRendererから写しています。
+ */
+final class LegacyMailTemplateRenderer {
+
+    String renderPasswordReset(Map<String, String> variables) {
+        String username = variables.getOrDefault("username", "ユーザー");
+        String tempPassword = variables.getOrDefault("tempPassword", "********");
+        String resetBy = variables.getOrDefault("resetBy", "管理者");
+
+        return String.format("""
+                %s 様
+
+                パスワードがリセットされました。
+
+                リセット実施者: %s
+                新しい仮パスワード: %s
+
+                セキュリティのため、ログイン後すぐにパスワードを変更してください。
+
+                ご不明な点がございましたら、システム管理者にお問い合わせください。
+
+                ――――――――――――――――――――――――
+                このメールは自動送信されています。
+                返信はできませんのでご了承ください。
+                """, username, resetBy, tempPassword);
+    }
+
+    String renderSuspiciousLogin(Map<String, String> variables) {
+        String username = variables.getOrDefault("username", "ユーザー");
+        String ipAddress = variables.getOrDefault("ipAddress", "不明");
+        String location = variables.getOrDefault("location", "不明");
+        String timestamp = variables.getOrDefault("timestamp", "現在");
+
+        return String.format("""
+                %s 様
+
+                新しい場所からのログインを検知しました。
+
+                ログイン日時: %s
+                IPアドレス: %s
+                場所: %s
+
+                このログインにお心当たりがない場合は、
+                直ちにパスワードを変更し、システム管理者にご連絡ください。
+
+                ――――――――――――――――――――――――
+                このメールは自動送信されています。
+                返信はできませんのでご了承ください。
+                """, username, timestamp, ipAddress, location);
+    }
+}
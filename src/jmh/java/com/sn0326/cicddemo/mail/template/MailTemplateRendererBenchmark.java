@@ -0,0 +1,119 @@
+package com.sn0326.cicddemo.mail.template;
+
+import com.sn0326.cicddemo.mail.MailTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * メール本文の描画のベンチマーク
+ *
+ * 通知1件分の処理（変数の用意＋描画）を、旧実装と解析済みテンプレートで比較します。
+ * - legacyStringFormat: 通知ごとにHashMapを生成し、String.formatで描画（変更前）
+ * - compiledWithMap: 通知ごとにHashMapを生成し、解析済みテンプレートで描画
+ * - compiledWithRecord: 型付きrecordを渡し、解析済みテンプレートで描画（現在の通知サービス）
+ *
+ * 実行: mvn -Pjmh test-compile exec:exec
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MailTemplateRendererBenchmark {
+
+    @Param({"PASSWORD_RESET", "SUSPICIOUS_LOGIN"})
+    private MailTemplate template;
+
+    private LegacyMailTemplateRenderer legacyRenderer;
+    private MailTemplateRenderer renderer;
+
+    // 描画ごとに値が変わる実際の通知に近づけるため、定数畳み込みされないフィールドから渡す
+    private String username;
+    private String secondValue;
+    private String thirdValue;
+
+    @Setup
+    public void setUp() {
+        legacyRenderer = new LegacyMailTemplateRenderer();
+        renderer = new MailTemplateRenderer();
+        username = "user0001";
+        secondValue = template == MailTemplate.PASSWORD_RESET ? "Xy7$kP2!qR" : "203.0.113.10";
+        thirdValue = template == MailTemplate.PASSWORD_RESET ? "admin" : "2025年01月01日 12:00:00";
+    }
+
+    @Benchmark
+    public String legacyStringFormat() {
+        Map<String, String> variables = variables();
+        return template == MailTemplate.PASSWORD_RESET
+                ? legacyRenderer.renderPasswordReset(variables)
+                : legacyRenderer.renderSuspiciousLogin(variables);
+    }
+
+    @Benchmark
+    public String compiledWithMap() {
+        return renderer.render(template, variables());
+    }
+
+    @Benchmark
+    public String compiledWithRecord() {
+        TemplateVariables variables = template == MailTemplate.PASSWORD_RESET
+                ? new PasswordResetVariables(username, secondValue, thirdValue)
+                : new SuspiciousLoginVariables(username, secondValue, "不明", thirdValue);
+        return renderer.render(template, variables);
+    }
+
+    private Map<String, String> variables() {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("username", username);
+        if (template == MailTemplate.PASSWORD_RESET) {
+            variables.put("tempPassword", secondValue);
+            variables.put("resetBy", thirdValue);
+        } else {
+            variables.put("ipAddress", secondValue);
+            variables.put("location", "不明");
+            variables.put("timestamp", thirdValue);
+        }
+        return variables;
+    }
+
+    private record PasswordResetVariables(String username, String tempPassword, String resetBy)
+            implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "tempPassword" -> tempPassword;
+                case "resetBy" -> resetBy;
+                default -> null;
+            };
+        }
+    }
+
+    private record SuspiciousLoginVariables(String username, String ipAddress, String location, String timestamp)
+            implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "ipAddress" -> ipAddress;
+                case "location" -> location;
+                case "timestamp" -> timestamp;
+                default -> null;
+            };
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.sn0326.cicddemo.config;
+
+import com.sn0326.cicddemo.service.ratelimit.AttemptStore;
+import com.sn0326.cicddemo.service.ratelimit.JdbcAttemptStore;
+import com.sn0326.cicddemo.service.ratelimit.SlidingWindowRateLimiter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+
+/**
+ * レート制限に関するBean定義
+ *
+ * 判定はメモリ上のSlidingWindowRateLimiterで行う。
+ * パスワードリセット・メールアドレス変更は、security.rate-limit.persist-attemptsがtrueの場合に
+ * 試行記録テーブルへ非同期に書き込み、起動時には直近1時間の試行を復元する。
+ */
+@Configuration
+public class RateLimitConfig {
+
+    private static final Duration WINDOW = Duration.ofHours(1);
+
+    @Value("${security.rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    @Value("${security.rate-limit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${security.rate-limit.batch-size:200}")
+    private int batchSize;
+
+    @Bean
+    @ConditionalOnProperty(name = "security.rate-limit.persist-attempts", havingValue = "true", matchIfMissing = true)
+    public JdbcAttemptStore passwordResetAttemptStore(JdbcTemplate jdbcTemplate) {
+        return new JdbcAttemptStore(jdbcTemplate, "password_reset_attempts", queueCapacity, batchSize);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "security.rate-limit.persist-attempts", havingValue = "true", matchIfMissing = true)
+    public JdbcAttemptStore emailChangeAttemptStore(JdbcTemplate jdbcTemplate) {
+        return new JdbcAttemptStore(jdbcTemplate, "email_change_attempts", queueCapacity, batchSize);
+    }
+
+    /**
+     * パスワードリセット申請のレートリミッター（ユーザー名ごと）
+     */
+    @Bean
+    public SlidingWindowRateLimiter passwordResetRateLimiter(
+            @Value("${security.password-reset.max-attempts-per-hour:5}") int maxAttemptsPerHour,
+            @Qualifier("passwordResetAttemptStore") ObjectProvider<AttemptStore> store) {
+        return createRateLimiter("password-reset", maxAttemptsPerHour, store.getIfAvailable());
+    }
+
+    /**
+     * メールアドレス変更申請のレートリミッター（ユーザー名ごと）
+     */
+    @Bean
+    public SlidingWindowRateLimiter emailChangeRateLimiter(
+            @Value("${security.email-change.max-attempts-per-hour:3}") int maxAttemptsPerHour,
+            @Qualifier("emailChangeAttemptStore") ObjectProvider<AttemptStore> store) {
+        return createRateLimiter("email-change", maxAttemptsPerHour, store.getIfAvailable());
+    }
+
+    /**
+     * 認証・再発行系エンドポイントのレートリミッター（クライアントIPアドレスごと、永続化しない）
+     */
+    @Bean
+    public SlidingWindowRateLimiter ipThrottleRateLimiter(
+            @Value("${security.ip-throttle.max-requests:30}") int maxRequests,
+            @Value("${security.ip-throttle.window-seconds:60}") long windowSeconds,
+            @Value("${security.ip-throttle.max-keys:100000}") int maxIpAddresses) {
+        return new SlidingWindowRateLimiter(
+                "ip-throttle", maxRequests, Duration.ofSeconds(windowSeconds), maxIpAddresses, null);
+    }
+
+    private SlidingWindowRateLimiter createRateLimiter(String name, int maxAttemptsPerHour, AttemptStore store) {
+        SlidingWindowRateLimiter rateLimiter =
+                new SlidingWindowRateLimiter(name, maxAttemptsPerHour, WINDOW, maxKeys, store);
+        rateLimiter.restore();
+        return rateLimiter;
+    }
+}
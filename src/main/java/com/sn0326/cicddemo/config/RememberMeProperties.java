@@ -22,8 +22,24 @@ public class RememberMeProperties {
 
     /**
      * クリーンアップ対象となる日数
-     * この日数以上前のトークンを自動削除します。
+     * この日数以上前のトークンをCleanupServiceが定期的に削除します。
      * デフォルト: 30日
      */
     private int cleanupDays = 30;
+
+    /**
+     * トークンキャッシュの有効期限（秒、0の場合はキャッシュしない）
+     * Remember Meはトークンの値をDBの値と比較して盗用を検知するため、
+     * 他のインスタンスで更新されたトークンの古い値がキャッシュに残ると、正規の利用者が盗用と判定されて
+     * 全トークンが削除され、逆に盗まれた古いトークンがこの時間だけ受け入れられます。
+     * 単一インスタンス構成でのみ有効にしてください。
+     * デフォルト: 0（キャッシュしない）
+     */
+    private int tokenCacheTtlSeconds = 0;
+
+    /**
+     * キャッシュする最大トークン（シリーズ）数
+     * デフォルト: 10000
+     */
+    private int tokenCacheMaxSize = 10000;
 }
@@ -1,24 +1,29 @@
 package com.sn0326.cicddemo.config;
 
 import com.sn0326.cicddemo.security.AccountLockoutUserDetailsChecker;
-import com.sn0326.cicddemo.security.CleanupJdbcTokenRepository;
+import com.sn0326.cicddemo.security.CachingJdbcTokenRepository;
 import com.sn0326.cicddemo.security.CustomOidcUserService;
 import com.sn0326.cicddemo.security.FormAuthenticationFailureHandler;
 import com.sn0326.cicddemo.security.FormAuthenticationSuccessHandler;
+import com.sn0326.cicddemo.security.IpThrottlingFilter;
 import com.sn0326.cicddemo.security.OidcAuthenticationFailureHandler;
 import com.sn0326.cicddemo.security.OidcAuthenticationSuccessHandler;
+import com.sn0326.cicddemo.security.PasskeyAuthenticationSuccessHandler;
 import com.sn0326.cicddemo.security.PasswordChangeRequiredFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.ObjectPostProcessor;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.JdbcUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.authentication.rememberme.PersistentTokenRepository;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthenticationFilter;
 
 import javax.sql.DataSource;
+import java.time.Duration;
 
 @Configuration
 public class SecurityConfig {
@@ -28,7 +33,9 @@ public class SecurityConfig {
     private final FormAuthenticationFailureHandler formAuthenticationFailureHandler;
     private final OidcAuthenticationSuccessHandler oidcAuthenticationSuccessHandler;
     private final OidcAuthenticationFailureHandler oidcAuthenticationFailureHandler;
+    private final PasskeyAuthenticationSuccessHandler passkeyAuthenticationSuccessHandler;
     private final PasswordChangeRequiredFilter passwordChangeRequiredFilter;
+    private final IpThrottlingFilter ipThrottlingFilter;
     private final AccountLockoutUserDetailsChecker accountLockoutChecker;
     private final DataSource dataSource;
     private final RememberMeProperties rememberMeProperties;
@@ -40,7 +47,9 @@ public class SecurityConfig {
             FormAuthenticationFailureHandler formAuthenticationFailureHandler,
             OidcAuthenticationSuccessHandler oidcAuthenticationSuccessHandler,
             OidcAuthenticationFailureHandler oidcAuthenticationFailureHandler,
+            PasskeyAuthenticationSuccessHandler passkeyAuthenticationSuccessHandler,
             PasswordChangeRequiredFilter passwordChangeRequiredFilter,
+            IpThrottlingFilter ipThrottlingFilter,
             AccountLockoutUserDetailsChecker accountLockoutChecker,
             DataSource dataSource,
             RememberMeProperties rememberMeProperties,
@@ -50,7 +59,9 @@ public class SecurityConfig {
         this.formAuthenticationFailureHandler = formAuthenticationFailureHandler;
         this.oidcAuthenticationSuccessHandler = oidcAuthenticationSuccessHandler;
         this.oidcAuthenticationFailureHandler = oidcAuthenticationFailureHandler;
+        this.passkeyAuthenticationSuccessHandler = passkeyAuthenticationSuccessHandler;
         this.passwordChangeRequiredFilter = passwordChangeRequiredFilter;
+        this.ipThrottlingFilter = ipThrottlingFilter;
         this.accountLockoutChecker = accountLockoutChecker;
         this.dataSource = dataSource;
         this.rememberMeProperties = rememberMeProperties;
@@ -59,13 +70,16 @@ public class SecurityConfig {
 
     @Bean
     public DaoAuthenticationProvider daoAuthenticationProvider(
-            UserDetailsService userDetailsService,
+            JdbcUserDetailsManager userDetailsService,
             PasswordEncoder passwordEncoder) {
 
         // Spring Security 7では、コンストラクタでUserDetailsServiceを渡す
         DaoAuthenticationProvider provider = new DaoAuthenticationProvider(userDetailsService);
         provider.setPasswordEncoder(passwordEncoder);
 
+        // ログイン成功時、コストが古いハッシュや別アルゴリズムのハッシュを現在の設定で再ハッシュして保存
+        provider.setUserDetailsPasswordService(userDetailsService);
+
         // ログイン前のロック状態チェックを追加
         provider.setPreAuthenticationChecks(accountLockoutChecker);
 
@@ -77,8 +91,9 @@ public class SecurityConfig {
 
     @Bean
     public PersistentTokenRepository persistentTokenRepository() {
-        CleanupJdbcTokenRepository tokenRepository = new CleanupJdbcTokenRepository(
-                rememberMeProperties.getCleanupDays());
+        CachingJdbcTokenRepository tokenRepository = new CachingJdbcTokenRepository(
+                Duration.ofSeconds(rememberMeProperties.getTokenCacheTtlSeconds()),
+                rememberMeProperties.getTokenCacheMaxSize());
         tokenRepository.setDataSource(dataSource);
         return tokenRepository;
     }
@@ -120,6 +135,14 @@ public class SecurityConfig {
                 .rpName(webAuthnProperties.getRpName())
                 .rpId(webAuthnProperties.getRpId())
                 .allowedOrigins(webAuthnProperties.getAllowedOrigins().toArray(new String[0]))
+                // WebAuthnConfigurerには成功ハンドラーの設定がないため、フィルターに直接設定する
+                .withObjectPostProcessor(new ObjectPostProcessor<WebAuthnAuthenticationFilter>() {
+                    @Override
+                    public <O extends WebAuthnAuthenticationFilter> O postProcess(O filter) {
+                        filter.setAuthenticationSuccessHandler(passkeyAuthenticationSuccessHandler);
+                        return filter;
+                    }
+                })
             )
             .rememberMe(rememberMe -> rememberMe
                 .key("cicddemo-remember-me-key")
@@ -134,6 +157,8 @@ public class SecurityConfig {
                 .deleteCookies("remember-me")
                 .permitAll()
             )
+            // IPアドレス単位の制限はDB参照・ハッシュ計算より前に判定する
+            .addFilterBefore(ipThrottlingFilter, UsernamePasswordAuthenticationFilter.class)
             .addFilterAfter(passwordChangeRequiredFilter, UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
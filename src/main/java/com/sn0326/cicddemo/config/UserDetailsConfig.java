@@ -1,12 +1,21 @@
 package com.sn0326.cicddemo.config;
 
+import com.sn0326.cicddemo.security.BcryptCostCalibrator;
+import com.sn0326.cicddemo.security.BoundedPasswordEncoder;
+import com.sn0326.cicddemo.security.BoundedUserCache;
+import com.sn0326.cicddemo.security.CachingJdbcUserDetailsManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.JdbcUserDetailsManager;
 
 import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
 
 /**
  * ユーザー認証に関するBean定義を管理する設定クラス
@@ -15,13 +24,70 @@ import javax.sql.DataSource;
 @Configuration
 public class UserDetailsConfig {
 
+    /**
+     * パスワードエンコーダー
+     * ハッシュ計算の同時実行数を制限し、ログイン集中時にCPUを使い切らないようにする
+     *
+     * 新規のハッシュはbcryptCostのコストで作成する。
+     * 既存のハッシュのコストが低い場合や別アルゴリズムの場合は、upgradeEncodingがtrueを返し、
+     * ログイン成功時にDaoAuthenticationProviderが再ハッシュして保存する。
+     *
+     * @param maxConcurrent 同時に計算する最大数（0の場合はCPUコア数 - 1、最小1）
+     * @param maxBackground 一括登録などで同時に計算する最大数（0の場合はmaxConcurrent - 1、最小1）
+     * @param bcryptCost 新規ハッシュのコスト（0の場合は起動時に計測して決定）
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return PasswordEncoderFactories.createDelegatingPasswordEncoder();
+    public BoundedPasswordEncoder passwordEncoder(
+            @Value("${security.password-hashing.max-concurrent:0}") int maxConcurrent,
+            @Value("${security.password-hashing.max-queued:100}") int maxQueued,
+            @Value("${security.password-hashing.queue-timeout-ms:2000}") long queueTimeoutMillis,
+            @Value("${security.password-hashing.max-background:0}") int maxBackground,
+            @Value("${security.password-hashing.bcrypt.cost:0}") int bcryptCost,
+            BcryptCostCalibrator bcryptCostCalibrator) {
+        int concurrency = maxConcurrent > 0
+                ? maxConcurrent
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(
+                "bcrypt", Map.of("bcrypt", new BCryptPasswordEncoder(
+                        bcryptCost > 0 ? bcryptCost : bcryptCostCalibrator.calibrate())));
+        // bcrypt以外の形式（{noop}、{pbkdf2}等）は照合のみ標準のエンコーダーに任せる
+        delegating.setDefaultPasswordEncoderForMatches(PasswordEncoderFactories.createDelegatingPasswordEncoder());
+
+        return new BoundedPasswordEncoder(delegating, concurrency, maxQueued, queueTimeoutMillis, maxBackground);
+    }
+
+    /**
+     * BCryptのコストを実行環境で計測して決定する
+     * latency-budget-ms以内に収まる最も高いコストを採用する
+     */
+    @Bean
+    public BcryptCostCalibrator bcryptCostCalibrator(
+            @Value("${security.password-hashing.bcrypt.latency-budget-ms:80}") long latencyBudgetMillis,
+            @Value("${security.password-hashing.bcrypt.min-cost:10}") int minCost,
+            @Value("${security.password-hashing.bcrypt.max-cost:14}") int maxCost,
+            @Value("${security.password-hashing.bcrypt.samples:5}") int samples) {
+        return new BcryptCostCalibrator(Duration.ofMillis(latencyBudgetMillis), minCost, maxCost, samples);
+    }
+
+    /**
+     * ユーザー情報のキャッシュ
+     * 更新系の処理（ユーザー作成・更新・削除、パスワード・メール変更等）で無効化される
+     *
+     * キャッシュにはパスワードハッシュと有効/無効状態が含まれ、無効化は同じインスタンス内にしか及ばない。
+     * 複数インスタンス構成では、他のインスタンスで変更される前のパスワードや無効化されたアカウントで
+     * 有効期限の間ログインできてしまうため、既定では無効（ttl-secondsが0）。
+     * 有効にするのは単一インスタンス構成の場合に限ること。
+     */
+    @Bean
+    public BoundedUserCache userCache(
+            @Value("${security.user-cache.ttl-seconds:0}") long ttlSeconds,
+            @Value("${security.user-cache.max-size:10000}") int maxSize) {
+        return new BoundedUserCache(Duration.ofSeconds(ttlSeconds), maxSize);
     }
 
     @Bean
-    public JdbcUserDetailsManager userDetailsService(DataSource dataSource) {
-        return new JdbcUserDetailsManager(dataSource);
+    public JdbcUserDetailsManager userDetailsService(DataSource dataSource, BoundedUserCache userCache) {
+        return new CachingJdbcUserDetailsManager(dataSource, userCache);
     }
 }
@@ -1,5 +1,8 @@
 package com.sn0326.cicddemo.config;
 
+import com.sn0326.cicddemo.security.CachingPublicKeyCredentialUserEntityRepository;
+import com.sn0326.cicddemo.security.CachingUserCredentialRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcOperations;
@@ -8,15 +11,23 @@ import org.springframework.security.web.webauthn.management.UserCredentialReposi
 import org.springframework.security.web.webauthn.management.JdbcPublicKeyCredentialUserEntityRepository;
 import org.springframework.security.web.webauthn.management.JdbcUserCredentialRepository;
 
+import java.time.Duration;
+
 /**
  * WebAuthn/Passkey機能のBean定義を管理する設定クラス
  */
 @Configuration
 public class WebAuthnConfig {
 
+    @Value("${webauthn.credential-cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    @Value("${webauthn.credential-cache.max-size:10000}")
+    private int cacheMaxSize;
+
     /**
      * パスキーユーザーエンティティを管理するリポジトリ
-     * Spring Security提供のJDBC実装を使用
+     * Spring Security提供のJDBC実装をキャッシュでラップして使用
      *
      * @param jdbcOperations JDBCオペレーション
      * @return PublicKeyCredentialUserEntityRepository
@@ -24,18 +35,24 @@ public class WebAuthnConfig {
     @Bean
     public PublicKeyCredentialUserEntityRepository publicKeyCredentialUserEntityRepository(
             JdbcOperations jdbcOperations) {
-        return new JdbcPublicKeyCredentialUserEntityRepository(jdbcOperations);
+        return new CachingPublicKeyCredentialUserEntityRepository(
+                new JdbcPublicKeyCredentialUserEntityRepository(jdbcOperations),
+                Duration.ofSeconds(cacheTtlSeconds), cacheMaxSize);
     }
 
     /**
      * パスキークレデンシャル（公開鍵）を管理するリポジトリ
-     * Spring Security提供のJDBC実装を使用
+     * Spring Security提供のJDBC実装をラップし、
+     * 認証時のsignature_count・last_usedの更新はflush間隔ごとにまとめて書き込む
+     * （認証時の読み込みは、主キーでの存在確認として毎回行う）
      *
      * @param jdbcOperations JDBCオペレーション
      * @return UserCredentialRepository
      */
     @Bean
-    public UserCredentialRepository userCredentialRepository(JdbcOperations jdbcOperations) {
-        return new JdbcUserCredentialRepository(jdbcOperations);
+    public CachingUserCredentialRepository userCredentialRepository(JdbcOperations jdbcOperations) {
+        return new CachingUserCredentialRepository(
+                new JdbcUserCredentialRepository(jdbcOperations), jdbcOperations,
+                Duration.ofSeconds(cacheTtlSeconds), cacheMaxSize);
     }
 }
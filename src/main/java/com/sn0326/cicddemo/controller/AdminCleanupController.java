@@ -0,0 +1,45 @@
+package com.sn0326.cicddemo.controller;
+
+import com.sn0326.cicddemo.service.cleanup.CleanupReport;
+import com.sn0326.cicddemo.service.cleanup.CleanupService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 管理者向けクリーンアップAPI
+ *
+ * - POST /admin/cleanup: クリーンアップを実行し、テーブルごとの削除件数を返す
+ * - GET /admin/cleanup: 直近の実行結果を返す
+ */
+@RestController
+@RequestMapping("/admin/cleanup")
+public class AdminCleanupController {
+
+    private final CleanupService cleanupService;
+
+    public AdminCleanupController(CleanupService cleanupService) {
+        this.cleanupService = cleanupService;
+    }
+
+    /**
+     * クリーンアップの実行
+     * 他のインスタンスで実行中の場合はskipped=trueを返す
+     */
+    @PostMapping
+    public CleanupReport run() {
+        return cleanupService.run();
+    }
+
+    /**
+     * 直近の実行結果
+     */
+    @GetMapping
+    public ResponseEntity<CleanupReport> lastReport() {
+        return cleanupService.getLastReport()
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+}
@@ -3,6 +3,8 @@ package com.sn0326.cicddemo.controller;
 import com.sn0326.cicddemo.dto.AdminResetPasswordRequest;
 import com.sn0326.cicddemo.dto.CreateUserRequest;
 import com.sn0326.cicddemo.dto.UserInfo;
+import com.sn0326.cicddemo.dto.UserListPage;
+import com.sn0326.cicddemo.dto.UserSearchCriteria;
 import com.sn0326.cicddemo.exception.BusinessException;
 import com.sn0326.cicddemo.service.AdminUserManagementService;
 import com.sn0326.cicddemo.service.LastLoginService;
@@ -37,9 +39,11 @@ public class AdminController {
      * ユーザー一覧ページ
      */
     @GetMapping("/users")
-    public String listUsers(Model model, Authentication authentication) {
-        List<UserInfo> users = adminUserManagementService.getAllUsers();
-        model.addAttribute("users", users);
+    public String listUsers(@ModelAttribute("criteria") UserSearchCriteria criteria,
+                            Model model, Authentication authentication) {
+        UserListPage page = adminUserManagementService.findUsers(criteria);
+        model.addAttribute("users", page.getUsers());
+        model.addAttribute("page", page);
 
         // 現在ログインしているユーザーの前回ログイン日時を取得
         if (authentication != null) {
@@ -0,0 +1,44 @@
+package com.sn0326.cicddemo.controller;
+
+import com.sn0326.cicddemo.dto.LoginRollupSummary;
+import com.sn0326.cicddemo.service.analytics.LoginRollupService;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 管理者向けログイン状況ダッシュボード
+ *
+ * ログイン件数の時間単位集計（login_rollups_hourly）のみを参照し、
+ * ログイン履歴・ログイン失敗記録のテーブルは参照しない。
+ */
+@Controller
+@RequestMapping("/admin/dashboard")
+public class AdminDashboardController {
+
+    private final LoginRollupService loginRollupService;
+
+    public AdminDashboardController(LoginRollupService loginRollupService) {
+        this.loginRollupService = loginRollupService;
+    }
+
+    /**
+     * 直近24時間の時間ごとの件数と、直近24時間・7日間の方式ごとの件数
+     */
+    @GetMapping
+    public String dashboard(Model model) {
+        LocalDateTime now = LocalDateTime.now();
+        model.addAttribute("hourlyTotals", loginRollupService.findHourlyTotals(now.minusHours(23)));
+        Map<String, List<LoginRollupSummary>> methodTotals = new LinkedHashMap<>();
+        methodTotals.put("直近24時間", loginRollupService.findMethodTotals(now.minusHours(23)));
+        methodTotals.put("直近7日間", loginRollupService.findMethodTotals(now.minusDays(7)));
+        model.addAttribute("methodTotals", methodTotals);
+        return "admin/dashboard";
+    }
+}
@@ -0,0 +1,129 @@
+package com.sn0326.cicddemo.controller;
+
+import com.sn0326.cicddemo.service.export.ExportFormat;
+import com.sn0326.cicddemo.service.export.UserDataExportService;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 管理者向けデータエクスポート
+ *
+ * DBから読み込んだ行をそのままレスポンスへ書き出すため、件数に関わらずメモリ使用量は一定です。
+ * - format: csv（既定）または ndjson
+ * - gzip: trueの場合はgzip圧縮したファイルとして出力
+ */
+@RestController
+@RequestMapping("/admin/export")
+public class AdminExportController {
+
+    private final UserDataExportService exportService;
+
+    public AdminExportController(UserDataExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    /**
+     * ユーザー一覧のエクスポート
+     */
+    @GetMapping("/users")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        return stream("users", exportFormat, gzip, out -> exportService.exportUsers(exportFormat, out));
+    }
+
+    /**
+     * 権限一覧のエクスポート
+     */
+    @GetMapping("/authorities")
+    public ResponseEntity<StreamingResponseBody> exportAuthorities(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        return stream("authorities", exportFormat, gzip, out -> exportService.exportAuthorities(exportFormat, out));
+    }
+
+    /**
+     * ログイン履歴のエクスポート
+     * from / to は日時（2026-01-01T00:00:00）または日付（2026-01-01）で指定
+     */
+    @GetMapping("/logins")
+    public ResponseEntity<StreamingResponseBody> exportLogins(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        LocalDateTime fromDateTime = parseDateTime(from);
+        LocalDateTime toDateTime = parseDateTime(to);
+        return stream("user_logins", exportFormat, gzip,
+                out -> exportService.exportLogins(exportFormat, out, fromDateTime, toDateTime));
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(String name, ExportFormat format, boolean gzip,
+                                                         ExportTask task) {
+        String filename = name + "." + format.getExtension() + (gzip ? ".gz" : "");
+        MediaType contentType = gzip
+                ? MediaType.parseMediaType("application/gzip")
+                : MediaType.parseMediaType(format.getContentType() + ";charset=UTF-8");
+
+        StreamingResponseBody body = outputStream -> {
+            if (gzip) {
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(outputStream, 64 * 1024)) {
+                    task.run(gzipOut);
+                }
+            } else {
+                task.run(outputStream);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(filename).build().toString())
+                .body(body);
+    }
+
+    /**
+     * 不正なformat / from / toは画面遷移ではなくJSONで400を返す（GlobalExceptionHandlerより優先される）
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(DateTimeParseException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidDateTime(DateTimeParseException ex) {
+        return ResponseEntity.badRequest()
+                .body(Map.of("error", "日時の形式が正しくありません: " + ex.getParsedString()));
+    }
+
+    private static LocalDateTime parseDateTime(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.contains("T") ? LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+    }
+
+    @FunctionalInterface
+    private interface ExportTask {
+        void run(OutputStream out) throws IOException;
+    }
+}
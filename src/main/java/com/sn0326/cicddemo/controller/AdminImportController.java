@@ -0,0 +1,75 @@
+package com.sn0326.cicddemo.controller;
+
+import com.sn0326.cicddemo.exception.BusinessException;
+import com.sn0326.cicddemo.service.userimport.UserImportJob;
+import com.sn0326.cicddemo.service.userimport.UserImportService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 管理者向けユーザー一括登録API
+ *
+ * - POST /admin/import/users: CSVまたはJSONファイルを受け付け、ジョブIDを返す
+ * - GET /admin/import/jobs/{jobId}: ジョブの進捗と行ごとのエラーを返す
+ */
+@RestController
+@RequestMapping("/admin/import")
+public class AdminImportController {
+
+    private final UserImportService userImportService;
+
+    public AdminImportController(UserImportService userImportService) {
+        this.userImportService = userImportService;
+    }
+
+    /**
+     * ユーザー一括登録ジョブの登録
+     * formatを省略した場合はファイルの拡張子から判定する
+     */
+    @PostMapping("/users")
+    public ResponseEntity<Map<String, Object>> importUsers(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String format,
+            Authentication authentication) throws IOException {
+        String resolvedFormat = format != null ? format : extensionOf(file.getOriginalFilename());
+        UserImportJob job = userImportService.submit(file.getBytes(), resolvedFormat, authentication.getName());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "jobId", job.getId(),
+                "status", job.getStatus(),
+                "statusUrl", "/admin/import/jobs/" + job.getId()));
+    }
+
+    /**
+     * ジョブの進捗確認
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<UserImportJob> getJob(@PathVariable String jobId) {
+        return userImportService.findJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @ExceptionHandler(BusinessException.class)
+    public ResponseEntity<Map<String, String>> handleBusinessException(BusinessException ex) {
+        return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+    }
+
+    private static String extensionOf(String filename) {
+        if (filename == null || filename.lastIndexOf('.') < 0) {
+            return null;
+        }
+        return filename.substring(filename.lastIndexOf('.') + 1);
+    }
+}
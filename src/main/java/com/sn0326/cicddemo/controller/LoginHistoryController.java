@@ -0,0 +1,66 @@
+package com.sn0326.cicddemo.controller;
+
+import com.sn0326.cicddemo.dto.LoginHistoryCriteria;
+import com.sn0326.cicddemo.dto.LoginHistoryPage;
+import com.sn0326.cicddemo.exception.ResourceNotFoundException;
+import com.sn0326.cicddemo.service.LoginHistoryService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * ログイン履歴API（無限スクロール用のJSON）
+ *
+ * - GET /profile/login-history: ログイン中のユーザー自身の履歴
+ * - GET /admin/users/{username}/login-history: 指定ユーザーの履歴（ADMIN）
+ *
+ * 次ページはレスポンスのnextCursorをbeforeに指定して取得する。
+ * 絞り込み: loginMethod, oidcProvider, from, to
+ */
+@RestController
+public class LoginHistoryController {
+
+    private final LoginHistoryService loginHistoryService;
+
+    public LoginHistoryController(LoginHistoryService loginHistoryService) {
+        this.loginHistoryService = loginHistoryService;
+    }
+
+    /**
+     * 自分のログイン履歴
+     */
+    @GetMapping("/profile/login-history")
+    public LoginHistoryPage myLoginHistory(@ModelAttribute LoginHistoryCriteria criteria,
+                                           Authentication authentication) {
+        return loginHistoryService.findLoginHistory(authentication.getName(), criteria);
+    }
+
+    /**
+     * 指定ユーザーのログイン履歴
+     */
+    @GetMapping("/admin/users/{username}/login-history")
+    public LoginHistoryPage userLoginHistory(@PathVariable String username,
+                                             @ModelAttribute LoginHistoryCriteria criteria) {
+        return loginHistoryService.findLoginHistoryForAdmin(username, criteria);
+    }
+
+    /**
+     * 画面遷移ではなくJSONでエラーを返す（GlobalExceptionHandlerより優先される）
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleNotFound(ResourceNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", ex.getMessage()));
+    }
+}
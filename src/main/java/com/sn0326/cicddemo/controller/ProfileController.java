@@ -1,14 +1,15 @@
 package com.sn0326.cicddemo.controller;
 
-import com.sn0326.cicddemo.dto.OidcConnectionInfo;
+import com.sn0326.cicddemo.dto.ProfileSummary;
+import com.sn0326.cicddemo.dto.UserOidcConnections;
 import com.sn0326.cicddemo.exception.InvalidPasswordException;
 import com.sn0326.cicddemo.exception.RateLimitExceededException;
 import com.sn0326.cicddemo.model.OidcProvider;
 import com.sn0326.cicddemo.repository.UserRepository;
 import com.sn0326.cicddemo.service.EmailChangeService;
-import com.sn0326.cicddemo.service.LastLoginService;
 import com.sn0326.cicddemo.service.OidcConnectionService;
 import com.sn0326.cicddemo.service.PasswordChangeService;
+import com.sn0326.cicddemo.service.ProfileAggregateService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
@@ -21,9 +22,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
 
 /**
  * ユーザープロフィールとOIDC連携管理を行うコントローラー
@@ -34,22 +32,22 @@ import java.util.Optional;
 public class ProfileController {
 
     private final OidcConnectionService oidcConnectionService;
-    private final LastLoginService lastLoginService;
     private final UserRepository userRepository;
     private final PasswordChangeService passwordChangeService;
     private final EmailChangeService emailChangeService;
+    private final ProfileAggregateService profileAggregateService;
 
     public ProfileController(
             OidcConnectionService oidcConnectionService,
-            LastLoginService lastLoginService,
             UserRepository userRepository,
             PasswordChangeService passwordChangeService,
-            EmailChangeService emailChangeService) {
+            EmailChangeService emailChangeService,
+            ProfileAggregateService profileAggregateService) {
         this.oidcConnectionService = oidcConnectionService;
-        this.lastLoginService = lastLoginService;
         this.userRepository = userRepository;
         this.passwordChangeService = passwordChangeService;
         this.emailChangeService = emailChangeService;
+        this.profileAggregateService = profileAggregateService;
     }
 
     /**
@@ -65,22 +63,27 @@ public class ProfileController {
         String username = authentication.getName();
         model.addAttribute("username", username);
 
-        // 前回ログイン日時を取得
-        Optional<LocalDateTime> lastLogin = lastLoginService.getLastLogin(username);
-        lastLogin.ifPresent(dateTime -> model.addAttribute("lastLogin", dateTime));
+        // 前回ログイン日時・OIDC連携・メールアドレス・パスキー登録状態を同時に取得
+        ProfileSummary summary = profileAggregateService.loadProfile(username);
+        model.addAttribute("profile", summary);
+        if (summary.getLastLogin() != null) {
+            model.addAttribute("lastLogin", summary.getLastLogin());
+        }
 
-        // OIDC連携情報を取得
-        List<OidcConnectionInfo> connections = oidcConnectionService.getUserConnections(username);
-        model.addAttribute("connections", connections);
+        // OIDC連携情報（一覧・連携状態・連携情報を1回の読み込みから取得）
+        UserOidcConnections connections = summary.getOidcConnections();
+        if (connections != null) {
+            model.addAttribute("connections", connections.getConnections());
 
-        // Google連携状態を確認
-        boolean googleConnected = oidcConnectionService.isConnected(username, OidcProvider.GOOGLE);
-        model.addAttribute("googleConnected", googleConnected);
+            // Google連携状態を確認
+            boolean googleConnected = connections.isConnected(OidcProvider.GOOGLE);
+            model.addAttribute("googleConnected", googleConnected);
 
-        // Google連携情報を取得
-        if (googleConnected) {
-            oidcConnectionService.getConnection(username, OidcProvider.GOOGLE)
-                    .ifPresent(info -> model.addAttribute("googleEmail", info.getEmail()));
+            // Google連携情報を取得
+            if (googleConnected) {
+                connections.getConnection(OidcProvider.GOOGLE)
+                        .ifPresent(info -> model.addAttribute("googleEmail", info.getEmail()));
+            }
         }
 
         // メッセージ表示
@@ -0,0 +1,40 @@
+package com.sn0326.cicddemo.dto;
+
+import lombok.Data;
+
+/**
+ * ログイン履歴の検索条件
+ * ページングは (logged_in_at, id) のキーセット（before）で行う
+ */
+@Data
+public class LoginHistoryCriteria {
+    /**
+     * このカーソルより古いログインを取得（前回レスポンスのnextCursor）
+     */
+    private String before;
+
+    /**
+     * 1ページの件数
+     */
+    private Integer size;
+
+    /**
+     * ログイン方式で絞り込み（FORM / OIDC / PASSKEY）
+     */
+    private String loginMethod;
+
+    /**
+     * OIDCプロバイダーで絞り込み（例: "google"）
+     */
+    private String oidcProvider;
+
+    /**
+     * この日時以降のログインに絞り込み（2026-01-01T00:00:00 または 2026-01-01）
+     */
+    private String from;
+
+    /**
+     * この日時より前のログインに絞り込み（2026-01-01T00:00:00 または 2026-01-01）
+     */
+    private String to;
+}
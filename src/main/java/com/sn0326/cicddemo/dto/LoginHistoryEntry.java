@@ -0,0 +1,21 @@
+package com.sn0326.cicddemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * ログイン履歴の1件
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginHistoryEntry {
+    private LocalDateTime loggedInAt;
+    private String loginMethod;
+    private String oidcProvider;
+    private String ipAddress;
+    private String userAgent;
+}
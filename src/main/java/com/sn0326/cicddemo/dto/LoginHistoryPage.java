@@ -0,0 +1,22 @@
+package com.sn0326.cicddemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * ログイン履歴の1ページ分（新しい順）
+ */
+@Data
+@AllArgsConstructor
+public class LoginHistoryPage {
+    private List<LoginHistoryEntry> entries;
+
+    /**
+     * 次ページ（より古い履歴）のカーソル（次ページがない場合null）
+     */
+    private String nextCursor;
+
+    private int size;
+}
@@ -0,0 +1,33 @@
+package com.sn0326.cicddemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * ログイン件数の集計（ダッシュボード表示用）
+ * 時間ごとの集計ではbucketStartのみ、方式ごとの集計ではloginMethod / oidcProviderのみを設定する
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginRollupSummary {
+    private LocalDateTime bucketStart;
+    private String loginMethod;
+    private String oidcProvider;
+    private long successCount;
+    private long failureCount;
+    /** 混雑による拒否件数（失敗率の計算には含めない） */
+    private long rejectedCount;
+
+    /**
+     * 失敗率（%）
+     * 混雑による拒否は認証情報を検証していないため、成功・失敗のみで計算する
+     */
+    public double getFailureRate() {
+        long total = successCount + failureCount;
+        return total == 0 ? 0.0 : failureCount * 100.0 / total;
+    }
+}
@@ -0,0 +1,47 @@
+package com.sn0326.cicddemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * プロフィールページに表示する情報
+ * 取得できなかった（タイムアウト・エラー）項目はnullとし、項目名をunavailableに含める
+ */
+@Data
+@AllArgsConstructor
+public class ProfileSummary {
+
+    public static final String LAST_LOGIN = "lastLogin";
+    public static final String OIDC_CONNECTIONS = "oidcConnections";
+    public static final String EMAIL = "email";
+    public static final String PASSKEY = "passkey";
+
+    /**
+     * 前回ログイン日時（初回ログインの場合もnull）
+     */
+    private LocalDateTime lastLogin;
+
+    private UserOidcConnections oidcConnections;
+
+    /**
+     * メールアドレス（未設定の場合は空文字）
+     */
+    private String email;
+
+    private Boolean hasPasskey;
+
+    /**
+     * 取得できなかった項目
+     */
+    private Set<String> unavailable;
+
+    /**
+     * 指定した項目を取得できたか
+     */
+    public boolean isAvailable(String item) {
+        return !unavailable.contains(item);
+    }
+}
@@ -0,0 +1,27 @@
+package com.sn0326.cicddemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * ユーザー一覧の1ページ分
+ */
+@Data
+@AllArgsConstructor
+public class UserListPage {
+    private List<UserInfo> users;
+
+    /**
+     * 次ページのカーソル（次ページがない場合null）
+     */
+    private String nextCursor;
+
+    /**
+     * 前ページのカーソル（前ページがない場合null）
+     */
+    private String prevCursor;
+
+    private int size;
+}
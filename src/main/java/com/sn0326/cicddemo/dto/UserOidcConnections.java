@@ -0,0 +1,42 @@
+package com.sn0326.cicddemo.dto;
+
+import com.sn0326.cicddemo.model.OidcProvider;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * ユーザーの全OIDC連携（1回の読み込み結果）
+ * 連携一覧・連携状態・プロバイダーごとの連携情報をDBを再度参照せずに取得できる
+ */
+public class UserOidcConnections {
+
+    private final List<OidcConnectionInfo> connections;
+
+    public UserOidcConnections(List<OidcConnectionInfo> connections) {
+        this.connections = List.copyOf(connections);
+    }
+
+    /**
+     * 全ての連携情報
+     */
+    public List<OidcConnectionInfo> getConnections() {
+        return connections;
+    }
+
+    /**
+     * 指定したプロバイダーの連携情報
+     */
+    public Optional<OidcConnectionInfo> getConnection(OidcProvider provider) {
+        return connections.stream()
+                .filter(connection -> provider.getValue().equals(connection.getProvider()))
+                .findFirst();
+    }
+
+    /**
+     * 指定したプロバイダーと連携しているか（無効化された連携は含まない）
+     */
+    public boolean isConnected(OidcProvider provider) {
+        return getConnection(provider).map(OidcConnectionInfo::isEnabled).orElse(false);
+    }
+}
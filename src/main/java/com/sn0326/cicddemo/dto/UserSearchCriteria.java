@@ -0,0 +1,40 @@
+package com.sn0326.cicddemo.dto;
+
+import lombok.Data;
+
+/**
+ * ユーザー一覧の検索条件
+ * ページングはユーザー名のキーセット（after / before）で行う
+ */
+@Data
+public class UserSearchCriteria {
+    /**
+     * このユーザー名より後のユーザーを取得（次ページ）
+     */
+    private String after;
+
+    /**
+     * このユーザー名より前のユーザーを取得（前ページ）
+     */
+    private String before;
+
+    /**
+     * 1ページの件数
+     */
+    private Integer size;
+
+    /**
+     * 有効/無効で絞り込み（未指定の場合は絞り込まない）
+     */
+    private Boolean enabled;
+
+    /**
+     * ロールで絞り込み（例: "ADMIN" または "ROLE_ADMIN"）
+     */
+    private String role;
+
+    /**
+     * ロック状態で絞り込み（未指定の場合は絞り込まない）
+     */
+    private Boolean locked;
+}
@@ -32,6 +32,11 @@ public class MailProperties {
      */
     private Mock mock = new Mock();
 
+    /**
+     * アウトボックス（非同期送信）設定
+     */
+    private Outbox outbox = new Outbox();
+
     @Data
     public static class SendGrid {
         /**
@@ -57,4 +62,42 @@ public class MailProperties {
          */
         private long delayMs = 1000;
     }
+
+    @Data
+    public static class Outbox {
+        /**
+         * 送信待ちメールをポーリングする間隔（ミリ秒）
+         */
+        private long pollIntervalMs = 1000;
+
+        /**
+         * 1回のポーリングで取得する最大件数
+         */
+        private int batchSize = 50;
+
+        /**
+         * プロバイダーごとの最大同時送信数
+         */
+        private int maxConcurrency = 10;
+
+        /**
+         * 最大送信試行回数（超過時は送信失敗とする）
+         */
+        private int maxAttempts = 5;
+
+        /**
+         * 再試行の初回待機時間（ミリ秒）。試行ごとに倍増する
+         */
+        private long initialBackoffMs = 2000;
+
+        /**
+         * 再試行の最大待機時間（ミリ秒）
+         */
+        private long maxBackoffMs = 300000;
+
+        /**
+         * 取得したメールを他のインスタンスから隠す期間（秒）
+         */
+        private int leaseSeconds = 120;
+    }
 }
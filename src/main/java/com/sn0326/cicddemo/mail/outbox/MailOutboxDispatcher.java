@@ -0,0 +1,302 @@
+package com.sn0326.cicddemo.mail.outbox;
+
+import com.sn0326.cicddemo.mail.MailMessage;
+import com.sn0326.cicddemo.mail.MailSendResult;
+import com.sn0326.cicddemo.mail.MailSender;
+import com.sn0326.cicddemo.mail.config.MailProperties;
+import com.sn0326.cicddemo.mail.outbox.MailOutboxRepository.OutboxEntry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * メール送信アウトボックスのディスパッチャー
+ *
+ * リクエスト処理ではアウトボックスへの登録のみを行い、実際の送信は
+ * バックグラウンドで仮想スレッドを使って並行に行います。
+ * - プロバイダーごとに同時送信数を制限
+ * - 送信失敗時は指数バックオフで再試行し、上限超過で送信失敗とする
+ * - トランザクションのコミット直後にディスパッチを起動し、送信までの遅延を抑える
+ */
+@Slf4j
+@Component
+public class MailOutboxDispatcher {
+
+    private final MailOutboxRepository outboxRepository;
+    private final MailSender mailSender;
+    private final MailProperties mailProperties;
+
+    private final ConcurrentHashMap<String, Semaphore> providerPermits = new ConcurrentHashMap<>();
+    private final Semaphore wakeUpSignal = new Semaphore(0);
+
+    private ExecutorService deliveryExecutor;
+    private Thread dispatcherThread;
+    private volatile boolean running;
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastSendNanos = new AtomicLong();
+    private final AtomicLong lastDeliveryDelayMillis = new AtomicLong();
+
+    public MailOutboxDispatcher(MailOutboxRepository outboxRepository,
+                                MailSender mailSender,
+                                MailProperties mailProperties) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.mailProperties = mailProperties;
+    }
+
+    @PostConstruct
+    public void start() {
+        deliveryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        running = true;
+        dispatcherThread = Thread.ofPlatform()
+                .name("mail-outbox-dispatcher")
+                .daemon(true)
+                .start(this::runDispatcher);
+    }
+
+    /**
+     * メールをアウトボックスに登録する
+     * トランザクション内で呼び出された場合はコミット後に、それ以外は即時にディスパッチを起動する
+     *
+     * @param message 送信するメールメッセージ
+     */
+    public void enqueue(MailMessage message) {
+        outboxRepository.insert(mailProperties.getProvider(), message);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    /**
+     * 送信成功件数を取得
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * 再試行を予約した件数を取得
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * 再試行上限を超えて送信失敗とした件数を取得
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * 送信中の件数を取得
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * 送信待ちの件数を取得（DB参照）
+     */
+    public long getPendingCount() {
+        return outboxRepository.countPending();
+    }
+
+    /**
+     * 直近の送信処理（プロバイダー呼び出し）の所要時間を取得（ミリ秒）
+     */
+    public double getLastSendMillis() {
+        return lastSendNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * 直近の送信における登録から送信完了までの時間を取得（ミリ秒）
+     */
+    public long getLastDeliveryDelayMillis() {
+        return lastDeliveryDelayMillis.get();
+    }
+
+    /**
+     * シャットダウン時にディスパッチを停止し、送信中のメールの完了を待つ
+     * 未送信のメールはアウトボックスに残り、次回起動時（または他インスタンス）で送信される
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        wakeUp();
+        try {
+            dispatcherThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        deliveryExecutor.close();
+        log.info("メールアウトボックスのディスパッチャーを停止しました: sent={}, failed={}",
+                getSentCount(), getFailedCount());
+    }
+
+    private void wakeUp() {
+        wakeUpSignal.release();
+    }
+
+    private void runDispatcher() {
+        MailProperties.Outbox config = mailProperties.getOutbox();
+        while (running) {
+            try {
+                // 登録通知またはポーリング間隔の経過を待つ
+                wakeUpSignal.tryAcquire(config.getPollIntervalMs(), TimeUnit.MILLISECONDS);
+                wakeUpSignal.drainPermits();
+                if (!running) {
+                    break;
+                }
+                // 取得件数が上限に達した場合は続けて取得する
+                while (running && dispatchBatch(config) >= config.getBatchSize()) {
+                    log.debug("送信待ちメールが残っているため続けてディスパッチします");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("メールアウトボックスのディスパッチ中にエラーが発生しました", e);
+            }
+        }
+    }
+
+    /**
+     * 送信期限を迎えたメールを取得し、並行に送信する
+     *
+     * @return 取得した件数
+     */
+    private int dispatchBatch(MailProperties.Outbox config) throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEntry> entries = outboxRepository.claimDue(
+                now, now.plusSeconds(config.getLeaseSeconds()), config.getBatchSize());
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(entries.size());
+        for (OutboxEntry entry : entries) {
+            futures.add(deliveryExecutor.submit(() -> deliver(entry, config)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.error("メール送信タスクが異常終了しました", e.getCause());
+            }
+        }
+        return entries.size();
+    }
+
+    /**
+     * 1件のメールを送信し、結果をアウトボックスに反映する
+     */
+    private void deliver(OutboxEntry entry, MailProperties.Outbox config) {
+        Semaphore permits = providerPermits.computeIfAbsent(
+                entry.provider(), provider -> new Semaphore(config.getMaxConcurrency()));
+        int attempts = entry.attempts() + 1;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        MailSendResult result = null;
+        String error;
+        try {
+            result = mailSender.send(entry.message());
+            error = result == null ? "送信結果がありません" : result.getErrorMessage();
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+        } finally {
+            lastSendNanos.set(System.nanoTime() - start);
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+
+        if (result != null && result.isSuccess()) {
+            handleSuccess(entry, attempts, result);
+        } else {
+            handleFailure(entry, attempts, error, config);
+        }
+    }
+
+    private void handleSuccess(OutboxEntry entry, int attempts, MailSendResult result) {
+        LocalDateTime sentAt = LocalDateTime.now();
+        sentCount.increment();
+        lastDeliveryDelayMillis.set(Duration.between(entry.createdAt(), sentAt).toMillis());
+        try {
+            outboxRepository.markSent(entry.id(), result.getMessageId(), attempts, sentAt);
+            log.info("メール送信成功: outboxId={}, messageId={}", entry.id(), result.getMessageId());
+        } catch (Exception e) {
+            // 送信済みの反映に失敗した場合、リース期限切れ後に再送される可能性がある
+            log.error("メール送信済みの反映に失敗しました: outboxId={}, messageId={}",
+                    entry.id(), result.getMessageId(), e);
+        }
+    }
+
+    private void handleFailure(OutboxEntry entry, int attempts, String error, MailProperties.Outbox config) {
+        try {
+            if (attempts >= config.getMaxAttempts()) {
+                outboxRepository.markFailed(entry.id(), attempts, error);
+                failedCount.increment();
+                log.error("メール送信が再試行上限に達しました: outboxId={}, attempts={}, error={}",
+                        entry.id(), attempts, error);
+                return;
+            }
+
+            long backoffMs = computeBackoffMillis(attempts, config);
+            outboxRepository.scheduleRetry(entry.id(), attempts,
+                    LocalDateTime.now().plus(Duration.ofMillis(backoffMs)), error);
+            retryCount.increment();
+            log.warn("メール送信に失敗したため再試行を予約しました: outboxId={}, attempts={}, backoffMs={}, error={}",
+                    entry.id(), attempts, backoffMs, error);
+        } catch (Exception e) {
+            // 反映に失敗した場合はリース期限切れ後に再取得される
+            log.error("メール送信結果の反映に失敗しました: outboxId={}", entry.id(), e);
+        }
+    }
+
+    /**
+     * 指数バックオフ（ジッター付き）の待機時間を計算
+     */
+    private static long computeBackoffMillis(int attempts, MailProperties.Outbox config) {
+        long base = config.getInitialBackoffMs() << Math.min(attempts - 1, 20);
+        long capped = Math.min(base, config.getMaxBackoffMs());
+        return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+}
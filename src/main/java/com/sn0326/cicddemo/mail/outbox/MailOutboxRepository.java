@@ -0,0 +1,176 @@
+package com.sn0326.cicddemo.mail.outbox;
+
+import com.sn0326.cicddemo.mail.MailMessage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * メール送信アウトボックス（mail_outboxテーブル）へのデータアクセス
+ *
+ * 送信待ちメールの取得は FOR UPDATE SKIP LOCKED とリース期限（locked_until）で行い、
+ * 複数インスタンスが同じメールを重複して送信しないようにします。
+ *
+ * 本文にはパスワードリセットURLや一時パスワードなどの秘密情報が含まれるため、
+ * 送信済み・送信失敗になった時点で本文（text_body/html_body）を削除し、保持期間中に残さないようにします。
+ */
+@Repository
+@RequiredArgsConstructor
+public class MailOutboxRepository {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final RowMapper<OutboxEntry> ENTRY_MAPPER = (rs, rowNum) -> new OutboxEntry(
+            rs.getLong("id"),
+            rs.getString("provider"),
+            MailMessage.builder()
+                    .to(rs.getString("recipient"))
+                    .from(rs.getString("sender"))
+                    .subject(rs.getString("subject"))
+                    .textBody(rs.getString("text_body"))
+                    .htmlBody(rs.getString("html_body"))
+                    .metadata(decodeMetadata(rs.getString("metadata")))
+                    .build(),
+            rs.getInt("attempts"),
+            rs.getTimestamp("created_at").toLocalDateTime()
+    );
+
+    /**
+     * 送信待ちメールを登録
+     * 呼び出し元のトランザクション内で実行され、業務処理と同時にコミットされる
+     *
+     * @param provider 送信プロバイダー
+     * @param message メールメッセージ
+     */
+    public void insert(String provider, MailMessage message) {
+        jdbcTemplate.update(
+                "INSERT INTO mail_outbox (provider, recipient, sender, subject, text_body, html_body, metadata) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                provider,
+                message.getTo(),
+                message.getFrom(),
+                message.getSubject(),
+                message.getTextBody(),
+                message.getHtmlBody(),
+                encodeMetadata(message.getMetadata())
+        );
+    }
+
+    /**
+     * 送信期限を迎えた送信待ちメールを取得し、リース期限を設定する
+     *
+     * @param now 現在日時
+     * @param leaseUntil リース期限（この日時まで他のインスタンスから取得されない）
+     * @param limit 最大取得件数
+     * @return 取得したメールのリスト
+     */
+    public List<OutboxEntry> claimDue(LocalDateTime now, LocalDateTime leaseUntil, int limit) {
+        Timestamp nowTs = Timestamp.valueOf(now);
+        return jdbcTemplate.query(
+                "UPDATE mail_outbox SET locked_until = ? " +
+                "WHERE id IN (" +
+                "    SELECT id FROM mail_outbox " +
+                "    WHERE status = 'PENDING' AND next_attempt_at <= ? " +
+                "    AND (locked_until IS NULL OR locked_until < ?) " +
+                "    ORDER BY next_attempt_at, id " +
+                "    LIMIT ? " +
+                "    FOR UPDATE SKIP LOCKED" +
+                ") " +
+                "RETURNING id, provider, recipient, sender, subject, text_body, html_body, metadata, " +
+                "attempts, created_at",
+                ENTRY_MAPPER,
+                Timestamp.valueOf(leaseUntil), nowTs, nowTs, limit
+        );
+    }
+
+    /**
+     * 送信済みにする（本文は削除する）
+     */
+    public void markSent(long id, String messageId, int attempts, LocalDateTime sentAt) {
+        jdbcTemplate.update(
+                "UPDATE mail_outbox SET status = 'SENT', message_id = ?, attempts = ?, sent_at = ?, " +
+                "locked_until = NULL, last_error = NULL, text_body = NULL, html_body = NULL WHERE id = ?",
+                messageId, attempts, Timestamp.valueOf(sentAt), id
+        );
+    }
+
+    /**
+     * 再試行を予約する
+     */
+    public void scheduleRetry(long id, int attempts, LocalDateTime nextAttemptAt, String error) {
+        jdbcTemplate.update(
+                "UPDATE mail_outbox SET attempts = ?, next_attempt_at = ?, last_error = ?, " +
+                "locked_until = NULL WHERE id = ?",
+                attempts, Timestamp.valueOf(nextAttemptAt), truncate(error), id
+        );
+    }
+
+    /**
+     * 送信失敗（再試行上限超過）にする（本文は削除する）
+     */
+    public void markFailed(long id, int attempts, String error) {
+        jdbcTemplate.update(
+                "UPDATE mail_outbox SET status = 'FAILED', attempts = ?, last_error = ?, " +
+                "locked_until = NULL, text_body = NULL, html_body = NULL WHERE id = ?",
+                attempts, truncate(error), id
+        );
+    }
+
+    /**
+     * 送信待ちメールの件数を取得
+     */
+    public long countPending() {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM mail_outbox WHERE status = 'PENDING'", Long.class);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * メタデータを「key=value」の行形式に変換
+     */
+    private static String encodeMetadata(Map<String, String> metadata) {
+        if (metadata == null || metadata.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        metadata.forEach((key, value) -> sb.append(key).append('=')
+                .append(value != null ? value.replace('\n', ' ') : "").append('\n'));
+        return sb.toString();
+    }
+
+    private static Map<String, String> decodeMetadata(String encoded) {
+        Map<String, String> metadata = new HashMap<>();
+        if (encoded == null) {
+            return metadata;
+        }
+        for (String line : encoded.split("\n")) {
+            int separator = line.indexOf('=');
+            if (separator > 0) {
+                metadata.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        return metadata;
+    }
+
+    private static String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    /**
+     * アウトボックスから取得した送信待ちメール
+     */
+    public record OutboxEntry(long id, String provider, MailMessage message, int attempts, LocalDateTime createdAt) {
+    }
+}
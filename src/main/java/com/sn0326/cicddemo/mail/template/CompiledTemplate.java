@@ -0,0 +1,108 @@
+package com.sn0326.cicddemo.mail.template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 事前に解析済みのメールテンプレート
+ *
+ * テンプレート文字列を「固定文字列」と「名前付きスロット」のセグメント列に分解して保持し、
+ * 描画時は事前に確保したStringBuilderへ1パスで書き出します。
+ *
+ * スロットの書式: {{name}} または {{name:デフォルト値}}
+ */
+public final class CompiledTemplate {
+
+    private static final String SLOT_START = "{{";
+    private static final String SLOT_END = "}}";
+
+    /**
+     * スロット1つあたりの見込み文字数（StringBuilderの初期容量の算出に使用）
+     */
+    private static final int ESTIMATED_SLOT_LENGTH = 32;
+
+    private final Segment[] segments;
+    private final int estimatedLength;
+
+    private CompiledTemplate(Segment[] segments, int estimatedLength) {
+        this.segments = segments;
+        this.estimatedLength = estimatedLength;
+    }
+
+    /**
+     * テンプレート文字列を解析します
+     *
+     * @param source テンプレート文字列
+     * @return 解析済みテンプレート
+     * @throws IllegalArgumentException スロットが閉じられていない場合
+     */
+    public static CompiledTemplate compile(String source) {
+        List<Segment> segments = new ArrayList<>();
+        int literalLength = 0;
+        int slotCount = 0;
+        int position = 0;
+
+        while (position < source.length()) {
+            int start = source.indexOf(SLOT_START, position);
+            if (start < 0) {
+                break;
+            }
+            int end = source.indexOf(SLOT_END, start + SLOT_START.length());
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed template slot at index " + start);
+            }
+            if (start > position) {
+                segments.add(new Literal(source.substring(position, start)));
+                literalLength += start - position;
+            }
+            segments.add(Slot.parse(source.substring(start + SLOT_START.length(), end)));
+            slotCount++;
+            position = end + SLOT_END.length();
+        }
+        if (position < source.length()) {
+            segments.add(new Literal(source.substring(position)));
+            literalLength += source.length() - position;
+        }
+
+        return new CompiledTemplate(
+                segments.toArray(new Segment[0]),
+                literalLength + slotCount * ESTIMATED_SLOT_LENGTH);
+    }
+
+    /**
+     * 変数を埋め込んで描画します
+     *
+     * @param variables テンプレート変数
+     * @return 描画結果
+     */
+    public String render(TemplateVariables variables) {
+        StringBuilder sb = new StringBuilder(estimatedLength);
+        for (Segment segment : segments) {
+            if (segment instanceof Literal literal) {
+                sb.append(literal.text());
+            } else {
+                Slot slot = (Slot) segment;
+                String value = variables.resolve(slot.name());
+                sb.append(value != null ? value : slot.defaultValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    private sealed interface Segment permits Literal, Slot {
+    }
+
+    private record Literal(String text) implements Segment {
+    }
+
+    private record Slot(String name, String defaultValue) implements Segment {
+
+        static Slot parse(String expression) {
+            int separator = expression.indexOf(':');
+            if (separator < 0) {
+                return new Slot(expression.trim(), "");
+            }
+            return new Slot(expression.substring(0, separator).trim(), expression.substring(separator + 1));
+        }
+    }
+}
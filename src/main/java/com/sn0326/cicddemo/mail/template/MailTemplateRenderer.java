@@ -3,14 +3,26 @@ package com.sn0326.cicddemo.mail.template;
 import com.sn0326.cicddemo.mail.MailTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
  * メールテンプレートを描画するコンポーネント
+ *
+ * テンプレートは起動時に1度だけ解析（{@link CompiledTemplate}）し、
+ * 描画時は解析済みのセグメント列に変数を埋め込むのみとします。
  */
 @Component
 public class MailTemplateRenderer {
 
+    private final Map<MailTemplate, CompiledTemplate> compiledTemplates = new EnumMap<>(MailTemplate.class);
+
+    public MailTemplateRenderer() {
+        for (MailTemplate template : MailTemplate.values()) {
+            compiledTemplates.put(template, CompiledTemplate.compile(source(template)));
+        }
+    }
+
     /**
      * テンプレートを使用してメール本文を生成します
      *
@@ -19,209 +31,163 @@ public class MailTemplateRenderer {
      * @return 生成されたメール本文
      */
     public String render(MailTemplate template, Map<String, String> variables) {
-        return switch (template) {
-            case PASSWORD_RESET -> renderPasswordReset(variables);
-            case PASSWORD_REISSUE -> renderPasswordReissue(variables);
-            case PASSWORD_CHANGED -> renderPasswordChanged(variables);
-            case SUSPICIOUS_LOGIN -> renderSuspiciousLogin(variables);
-            case ACCOUNT_DISABLED -> renderAccountDisabled(variables);
-            case ACCOUNT_ENABLED -> renderAccountEnabled(variables);
-            case EMAIL_CHANGE_VERIFICATION -> renderEmailChangeVerification(variables);
-            case EMAIL_CHANGED -> renderEmailChanged(variables);
-        };
-    }
-
-    private String renderPasswordReset(Map<String, String> variables) {
-        String username = variables.getOrDefault("username", "ユーザー");
-        String tempPassword = variables.getOrDefault("tempPassword", "********");
-        String resetBy = variables.getOrDefault("resetBy", "管理者");
-
-        return String.format("""
-                %s 様
-
-                パスワードがリセットされました。
-
-                リセット実施者: %s
-                新しい仮パスワード: %s
-
-                セキュリティのため、ログイン後すぐにパスワードを変更してください。
-
-                ご不明な点がございましたら、システム管理者にお問い合わせください。
-
-                ――――――――――――――――――――――――
-                このメールは自動送信されています。
-                返信はできませんのでご了承ください。
-                """, username, resetBy, tempPassword);
+        return render(template, variables::get);
     }
 
-    private String renderPasswordReissue(Map<String, String> variables) {
-        String username = variables.getOrDefault("username", "ユーザー");
-        String resetUrl = variables.getOrDefault("resetUrl", "");
-        String expiryMinutes = variables.getOrDefault("expiryMinutes", "30");
-
-        return String.format("""
-                %s 様
-
-                パスワード再発行のリクエストを受け付けました。
-
-                以下のURLにアクセスして、パスワードの再設定を行ってください。
-
-                【パスワード再設定URL】
-                %s
-
-                ※このURLは発行から%s分間有効です。
-                ※このURLは1回のみ使用可能です。
-
-                ――――――――――――――――――――――――
-                このメールに心当たりがない場合は、第三者がパスワード
-                リセットを試みた可能性があります。このメールを破棄し、
-                アカウントのセキュリティ状態を確認することをお勧めします。
-
-                ――――――――――――――――――――――――
-                このメールは自動送信されています。
-                返信はできませんのでご了承ください。
-                """, username, resetUrl, expiryMinutes);
+    /**
+     * テンプレートを使用してメール本文を生成します
+     *
+     * @param template テンプレート種類
+     * @param variables テンプレート変数（通知ごとの型付きrecordなど）
+     * @return 生成されたメール本文
+     */
+    public String render(MailTemplate template, TemplateVariables variables) {
+        return compiledTemplates.get(template).render(variables);
     }
 
-    private String renderPasswordChanged(Map<String, String> variables) {
-        String username = variables.getOrDefault("username", "ユーザー");
-        String changedAt = variables.getOrDefault("changedAt", "現在");
+    /**
+     * テンプレート文字列を取得します
+     * スロットは {{変数名:デフォルト値}} の形式で記述します
+     */
+    private static String source(MailTemplate template) {
+        return switch (template) {
+            case PASSWORD_RESET -> """
+                    {{username:ユーザー}} 様
 
-        return String.format("""
-                %s 様
+                    パスワードがリセットされました。
 
-                パスワードが正常に変更されました。
+                    リセット実施者: {{resetBy:管理者}}
+                    新しい仮パスワード: {{tempPassword:********}}
 
-                変更日時: %s
+                    セキュリティのため、ログイン後すぐにパスワードを変更してください。
 
-                もしこの変更にお心当たりがない場合は、
-                すぐにシステム管理者にご連絡ください。
+                    ご不明な点がございましたら、システム管理者にお問い合わせください。
 
-                ――――――――――――――――――――――――
-                このメールは自動送信されています。
-                返信はできませんのでご了承ください。
-                """, username, changedAt);
-    }
+                    ――――――――――――――――――――――――
+                    このメールは自動送信されています。
+                    返信はできませんのでご了承ください。
+                    """;
+            case PASSWORD_REISSUE -> """
+                    {{username:ユーザー}} 様
 
-    private String renderSuspiciousLogin(Map<String, String> variables) {
-        String username = variables.getOrDefault("username", "ユーザー");
-        String ipAddress = variables.getOrDefault("ipAddress", "不明");
-        String location = variables.getOrDefault("location", "不明");
-        String timestamp = variables.getOrDefault("timestamp", "現在");
+                    パスワード再発行のリクエストを受け付けました。
 
-        return String.format("""
-                %s 様
+                    以下のURLにアクセスして、パスワードの再設定を行ってください。
 
-                新しい場所からのログインを検知しました。
+                    【パスワード再設定URL】
+                    {{resetUrl}}
 
-                ログイン日時: %s
-                IPアドレス: %s
-                場所: %s
+                    ※このURLは発行から{{expiryMinutes:30}}分間有効です。
+                    ※このURLは1回のみ使用可能です。
 
-                このログインにお心当たりがない場合は、
-                直ちにパスワードを変更し、システム管理者にご連絡ください。
+                    ――――――――――――――――――――――――
+                    このメールに心当たりがない場合は、第三者がパスワード
+                    リセットを試みた可能性があります。このメールを破棄し、
+                    アカウントのセキュリティ状態を確認することをお勧めします。
 
-                ――――――――――――――――――――――――
-                このメールは自動送信されています。
-                返信はできませんのでご了承ください。
-                """, username, timestamp, ipAddress, location);
-    }
+                    ――――――――――――――――――――――――
+                    このメールは自動送信されています。
+                    返信はできませんのでご了承ください。
+                    """;
+            case PASSWORD_CHANGED -> """
+                    {{username:ユーザー}} 様
 
-    private String renderAccountDisabled(Map<String, String> variables) {
-        String username = variables.getOrDefault("username", "ユーザー");
-        String reason = variables.getOrDefault("reason", "管理者の判断により");
-        String disabledBy = variables.getOrDefault("disabledBy", "管理者");
+                    パスワードが正常に変更されました。
 
-        return String.format("""
-                %s 様
+                    変更日時: {{changedAt:現在}}
 
-                アカウントが無効化されました。
+                    もしこの変更にお心当たりがない場合は、
+                    すぐにシステム管理者にご連絡ください。
 
-                無効化実施者: %s
-                理由: %s
+                    ――――――――――――――――――――――――
+                    このメールは自動送信されています。
+                    返信はできませんのでご了承ください。
+                    """;
+            case SUSPICIOUS_LOGIN -> """
+                    {{username:ユーザー}} 様
 
-                詳細についてはシステム管理者にお問い合わせください。
+                    新しい場所からのログインを検知しました。
 
-                ――――――――――――――――――――――――
-                このメールは自動送信されています。
-                返信はできませんのでご了承ください。
-                """, username, disabledBy, reason);
-    }
+                    ログイン日時: {{timestamp:現在}}
+                    IPアドレス: {{ipAddress:不明}}
+                    場所: {{location:不明}}
 
-    private String renderAccountEnabled(Map<String, String> variables) {
-        String username = variables.getOrDefault("username", "ユーザー");
-        String enabledBy = variables.getOrDefault("enabledBy", "管理者");
+                    このログインにお心当たりがない場合は、
+                    直ちにパスワードを変更し、システム管理者にご連絡ください。
 
-        return String.format("""
-                %s 様
+                    ――――――――――――――――――――――――
+                    このメールは自動送信されています。
+                    返信はできませんのでご了承ください。
+                    """;
+            case ACCOUNT_DISABLED -> """
+                    {{username:ユーザー}} 様
 
-                アカウントが有効化されました。
+                    アカウントが無効化されました。
 
-                有効化実施者: %s
+                    無効化実施者: {{disabledBy:管理者}}
+                    理由: {{reason:管理者の判断により}}
 
-                ログインして通常通りサービスをご利用いただけます。
+                    詳細についてはシステム管理者にお問い合わせください。
 
-                ――――――――――――――――――――――――
-                このメールは自動送信されています。
-                返信はできませんのでご了承ください。
-                """, username, enabledBy);
-    }
+                    ――――――――――――――――――――――――
+                    このメールは自動送信されています。
+                    返信はできませんのでご了承ください。
+                    """;
+            case ACCOUNT_ENABLED -> """
+                    {{username:ユーザー}} 様
 
-    private String renderEmailChangeVerification(Map<String, String> variables) {
-        String username = variables.getOrDefault("username", "ユーザー");
-        String newEmail = variables.getOrDefault("newEmail", "");
-        String verificationUrl = variables.getOrDefault("verificationUrl", "");
-        String expiryMinutes = variables.getOrDefault("expiryMinutes", "30");
+                    アカウントが有効化されました。
 
-        return String.format("""
-                %s 様
+                    有効化実施者: {{enabledBy:管理者}}
 
-                メールアドレス変更のリクエストを受け付けました。
+                    ログインして通常通りサービスをご利用いただけます。
 
-                新しいメールアドレス: %s
+                    ――――――――――――――――――――――――
+                    このメールは自動送信されています。
+                    返信はできませんのでご了承ください。
+                    """;
+            case EMAIL_CHANGE_VERIFICATION -> """
+                    {{username:ユーザー}} 様
 
-                以下のURLにアクセスして、メールアドレスの変更を完了してください。
+                    メールアドレス変更のリクエストを受け付けました。
 
-                【確認URL】
-                %s
+                    新しいメールアドレス: {{newEmail}}
 
-                ※このURLは発行から%s分間有効です。
-                ※このURLは1回のみ使用可能です。
+                    以下のURLにアクセスして、メールアドレスの変更を完了してください。
 
-                ――――――――――――――――――――――――
-                このメールに心当たりがない場合は、第三者がメールアドレス
-                変更を試みた可能性があります。このメールを破棄し、
-                アカウントのセキュリティ状態を確認することをお勧めします。
+                    【確認URL】
+                    {{verificationUrl}}
 
-                ――――――――――――――――――――――――
-                このメールは自動送信されています。
-                返信はできませんのでご了承ください。
-                """, username, newEmail, verificationUrl, expiryMinutes);
-    }
+                    ※このURLは発行から{{expiryMinutes:30}}分間有効です。
+                    ※このURLは1回のみ使用可能です。
 
-    private String renderEmailChanged(Map<String, String> variables) {
-        String username = variables.getOrDefault("username", "ユーザー");
-        String oldEmail = variables.getOrDefault("oldEmail", "");
-        String newEmail = variables.getOrDefault("newEmail", "");
-        String changedAt = variables.getOrDefault("changedAt", "現在");
+                    ――――――――――――――――――――――――
+                    このメールに心当たりがない場合は、第三者がメールアドレス
+                    変更を試みた可能性があります。このメールを破棄し、
+                    アカウントのセキュリティ状態を確認することをお勧めします。
 
-        return String.format("""
-                %s 様
+                    ――――――――――――――――――――――――
+                    このメールは自動送信されています。
+                    返信はできませんのでご了承ください。
+                    """;
+            case EMAIL_CHANGED -> """
+                    {{username:ユーザー}} 様
 
-                メールアドレスが正常に変更されました。
+                    メールアドレスが正常に変更されました。
 
-                変更前: %s
-                変更後: %s
-                変更日時: %s
+                    変更前: {{oldEmail}}
+                    変更後: {{newEmail}}
+                    変更日時: {{changedAt:現在}}
 
-                今後のお知らせは新しいメールアドレスに送信されます。
+                    今後のお知らせは新しいメールアドレスに送信されます。
 
-                もしこの変更にお心当たりがない場合は、
-                すぐにシステム管理者にご連絡ください。
+                    もしこの変更にお心当たりがない場合は、
+                    すぐにシステム管理者にご連絡ください。
 
-                ――――――――――――――――――――――――
-                このメールは自動送信されています。
-                返信はできませんのでご了承ください。
-                """, username, oldEmail, newEmail, changedAt);
+                    ――――――――――――――――――――――――
+                    このメールは自動送信されています。
+                    返信はできませんのでご了承ください。
+                    """;
+        };
     }
 }
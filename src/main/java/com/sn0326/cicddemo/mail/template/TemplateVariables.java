@@ -0,0 +1,19 @@
+package com.sn0326.cicddemo.mail.template;
+
+/**
+ * テンプレート変数の参照元
+ *
+ * テンプレートのスロット名から値を解決します。
+ * 通知ごとの型付きrecordで実装することで、変数用のMapを生成せずに描画できます。
+ */
+@FunctionalInterface
+public interface TemplateVariables {
+
+    /**
+     * スロット名に対応する値を取得します
+     *
+     * @param name スロット名
+     * @return 値（未設定の場合はnull。テンプレートのデフォルト値が使用される）
+     */
+    String resolve(String name);
+}
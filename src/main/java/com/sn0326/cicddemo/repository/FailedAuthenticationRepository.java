@@ -34,6 +34,34 @@ public interface FailedAuthenticationRepository
             @Param("since") LocalDateTime since
     );
 
+    /**
+     * 指定時刻以降の失敗回数を取得
+     * メモリ上で追跡できないユーザーのロック判定に使用
+     *
+     * @param username 対象ユーザー名
+     * @param since この時刻以降の失敗をカウント
+     * @return 失敗回数
+     */
+    @Query("SELECT COUNT(f) FROM FailedAuthentication f " +
+           "WHERE f.username = :username " +
+           "AND f.authenticationTimestamp >= :since")
+    long countRecentFailures(
+            @Param("username") String username,
+            @Param("since") LocalDateTime since
+    );
+
+    /**
+     * 指定時刻以降の全ユーザーの失敗レコードを取得（古い順）
+     * 起動時のロック状態の復元に使用
+     *
+     * @param since この時刻以降の失敗を取得
+     * @return 失敗記録のリスト
+     */
+    @Query("SELECT f FROM FailedAuthentication f " +
+           "WHERE f.authenticationTimestamp >= :since " +
+           "ORDER BY f.authenticationTimestamp ASC")
+    List<FailedAuthentication> findAllSince(@Param("since") LocalDateTime since);
+
     /**
      * 指定ユーザーの全失敗レコードを削除（認証成功時に使用）
      *
@@ -2,6 +2,7 @@ package com.sn0326.cicddemo.repository;
 
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -11,9 +12,11 @@ import org.springframework.stereotype.Repository;
 public class JdbcPasswordChangeRequirementRepository implements PasswordChangeRequirementRepository {
 
     private final JdbcTemplate jdbcTemplate;
+    private final UserCache userCache;
 
-    public JdbcPasswordChangeRequirementRepository(JdbcTemplate jdbcTemplate) {
+    public JdbcPasswordChangeRequirementRepository(JdbcTemplate jdbcTemplate, UserCache userCache) {
         this.jdbcTemplate = jdbcTemplate;
+        this.userCache = userCache;
     }
 
     @Override
@@ -32,11 +35,13 @@ public class JdbcPasswordChangeRequirementRepository implements PasswordChangeRe
     public void requirePasswordChange(String username) {
         String sql = "UPDATE users SET password_must_change = TRUE WHERE username = ?";
         jdbcTemplate.update(sql, username);
+        userCache.removeUserFromCache(username);
     }
 
     @Override
     public void clearPasswordChangeRequirement(String username) {
         String sql = "UPDATE users SET password_must_change = FALSE WHERE username = ?";
         jdbcTemplate.update(sql, username);
+        userCache.removeUserFromCache(username);
     }
 }
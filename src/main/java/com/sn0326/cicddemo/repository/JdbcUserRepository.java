@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -18,6 +19,7 @@ import org.springframework.stereotype.Repository;
 public class JdbcUserRepository implements UserRepository {
 
     private final JdbcTemplate jdbcTemplate;
+    private final UserCache userCache;
 
     /**
      * ユーザー名からメールアドレスを取得
@@ -51,11 +53,51 @@ public class JdbcUserRepository implements UserRepository {
      */
     @Override
     public int updatePasswordAndClearMustChangeFlag(String username, String encodedPassword) {
-        return jdbcTemplate.update(
+        int updated = jdbcTemplate.update(
                 "UPDATE users SET password = ?, password_must_change = false WHERE username = ?",
                 encodedPassword,
                 username
         );
+        userCache.removeUserFromCache(username);
+        return updated;
+    }
+
+    /**
+     * パスワードのみを更新
+     * 他の列は書き換えないため、キャッシュ上の古い値で有効/無効状態を戻すことはない
+     *
+     * @param username ユーザー名
+     * @param encodedPassword エンコード済みパスワード
+     * @return 更新された行数
+     */
+    @Override
+    public int updatePassword(String username, String encodedPassword) {
+        int updated = jdbcTemplate.update(
+                "UPDATE users SET password = ? WHERE username = ?",
+                encodedPassword,
+                username
+        );
+        userCache.removeUserFromCache(username);
+        return updated;
+    }
+
+    /**
+     * 有効/無効状態のみを更新
+     * 他の列は書き換えないため、キャッシュ上の古いパスワードハッシュを書き戻すことはない
+     *
+     * @param username ユーザー名
+     * @param enabled 有効にする場合true
+     * @return 更新された行数
+     */
+    @Override
+    public int updateEnabled(String username, boolean enabled) {
+        int updated = jdbcTemplate.update(
+                "UPDATE users SET enabled = ? WHERE username = ?",
+                enabled,
+                username
+        );
+        userCache.removeUserFromCache(username);
+        return updated;
     }
 
     /**
@@ -67,10 +109,12 @@ public class JdbcUserRepository implements UserRepository {
      */
     @Override
     public int updateEmail(String username, String email) {
-        return jdbcTemplate.update(
+        int updated = jdbcTemplate.update(
                 "UPDATE users SET email = ? WHERE username = ?",
                 email,
                 username
         );
+        userCache.removeUserFromCache(username);
+        return updated;
     }
 }
@@ -1,42 +1,53 @@
 package com.sn0326.cicddemo.repository;
 
 import com.sn0326.cicddemo.model.UserLogin;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * ユーザーログインのリポジトリ
+ * ログイン履歴の一覧はLoginHistoryServiceがキーセットページングで取得する
  */
 @Repository
 public interface UserLoginRepository extends JpaRepository<UserLogin, Long> {
 
     /**
-     * ユーザー名で成功したログインを新しい順に取得
+     * ユーザー名で直近2回のログイン日時を新しい順に取得
+     *
+     * user_loginsは月単位でパーティション化されているため、まず当月と前月のパーティションのみを参照し、
+     * 2件に満たない場合（しばらくログインしていないユーザー）のみ全パーティションを参照する。
      *
      * @param username ユーザー名
-     * @param pageable ページング情報
-     * @return ログインリスト
+     * @return ログイン日時のリスト（最大2件）
      */
-    List<UserLogin> findByUsernameAndSuccessTrueOrderByLoggedInAtDesc(String username, Pageable pageable);
+    default List<LocalDateTime> findRecentLoginTimes(String username) {
+        LocalDateTime recentFrom = LocalDate.now().withDayOfMonth(1).minusMonths(1).atStartOfDay();
+        List<LocalDateTime> recent = findRecentLoginTimesSince(username, recentFrom);
+        if (recent.size() >= 2) {
+            return recent;
+        }
+        return findRecentLoginTimesSince(username, LocalDateTime.of(1970, 1, 1, 0, 0));
+    }
 
     /**
-     * ユーザー名で前回のログイン日時を取得（現在のログインを除く）
-     * 最新のログインをスキップして、2番目のログイン日時を取得
+     * 指定日時以降のログイン日時を新しい順に最大2件取得
+     * logged_in_atの下限により、対象外のパーティションは参照しない
      *
      * @param username ユーザー名
-     * @return 前回ログイン日時
+     * @param since 基準日時（この日時を含む）
+     * @return ログイン日時のリスト（最大2件）
      */
     @Query(value = "SELECT logged_in_at FROM user_logins " +
-                   "WHERE username = :username AND success = true " +
+                   "WHERE username = :username AND success = true AND logged_in_at >= :since " +
                    "ORDER BY logged_in_at DESC " +
-                   "LIMIT 1 OFFSET 1",
+                   "LIMIT 2",
            nativeQuery = true)
-    LocalDateTime findLastLoginTime(@Param("username") String username);
+    List<LocalDateTime> findRecentLoginTimesSince(@Param("username") String username,
+                                                  @Param("since") LocalDateTime since);
 }
@@ -25,6 +25,24 @@ public interface UserRepository {
      */
     int updatePasswordAndClearMustChangeFlag(String username, String encodedPassword);
 
+    /**
+     * パスワードのみを更新
+     *
+     * @param username ユーザー名
+     * @param encodedPassword エンコード済みパスワード
+     * @return 更新された行数
+     */
+    int updatePassword(String username, String encodedPassword);
+
+    /**
+     * 有効/無効状態のみを更新
+     *
+     * @param username ユーザー名
+     * @param enabled 有効にする場合true
+     * @return 更新された行数
+     */
+    int updateEnabled(String username, boolean enabled);
+
     /**
      * メールアドレスを更新
      *
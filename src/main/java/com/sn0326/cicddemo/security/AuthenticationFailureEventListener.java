@@ -1,12 +1,21 @@
 package com.sn0326.cicddemo.security;
 
 import com.sn0326.cicddemo.service.AccountLockoutService;
+import com.sn0326.cicddemo.service.analytics.LoginRollupService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.event.AbstractAuthenticationFailureEvent;
 import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.authentication.OAuth2LoginAuthenticationToken;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthenticationRequestToken;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
 /**
  * 認証失敗イベントをハンドリングするリスナー
  * TERASOLUNAガイドラインに準拠した実装
@@ -17,9 +26,12 @@ public class AuthenticationFailureEventListener {
     private static final Logger logger = LoggerFactory.getLogger(AuthenticationFailureEventListener.class);
 
     private final AccountLockoutService lockoutService;
+    private final LoginRollupService loginRollupService;
 
-    public AuthenticationFailureEventListener(AccountLockoutService lockoutService) {
+    public AuthenticationFailureEventListener(AccountLockoutService lockoutService,
+                                              LoginRollupService loginRollupService) {
         this.lockoutService = lockoutService;
+        this.loginRollupService = loginRollupService;
     }
 
     /**
@@ -35,7 +47,7 @@ public class AuthenticationFailureEventListener {
         logger.info("Authentication failed for user: {}", username);
 
         try {
-            // 失敗を記録（独立したトランザクション）
+            // 失敗を記録（メモリ上で即時反映、DBへは非同期に書き込み）
             lockoutService.recordFailedAttempt(username);
 
             // ロック状態をログに記録（ユーザーには通知しない）
@@ -47,4 +59,26 @@ public class AuthenticationFailureEventListener {
             logger.error("Failed to record authentication failure for user: {}", username, e);
         }
     }
+
+    /**
+     * 認証失敗（理由を問わない）をログイン件数の集計に加算する
+     * パスワードのハッシュ計算の混雑による拒否は、認証情報の誤りと区別して拒否件数に加算する
+     * メモリ上のカウンターへの加算のみで、DBへは定期的にまとめて書き込む
+     *
+     * @param event 認証失敗イベント
+     */
+    @EventListener
+    public void onAnyAuthenticationFailure(AbstractAuthenticationFailureEvent event) {
+        Authentication authentication = event.getAuthentication();
+        LocalDateTime failedAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(event.getTimestamp()), ZoneId.systemDefault());
+        if (event.getException() instanceof PasswordHashingRejectedException) {
+            loginRollupService.recordRejection("FORM", null, failedAt);
+        } else if (authentication instanceof OAuth2LoginAuthenticationToken oauth2Token) {
+            loginRollupService.recordFailure("OIDC", oauth2Token.getClientRegistration().getRegistrationId(), failedAt);
+        } else if (authentication instanceof WebAuthnAuthenticationRequestToken) {
+            loginRollupService.recordFailure("PASSKEY", null, failedAt);
+        } else {
+            loginRollupService.recordFailure("FORM", null, failedAt);
+        }
+    }
 }
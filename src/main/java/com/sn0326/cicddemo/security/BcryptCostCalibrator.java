@@ -0,0 +1,113 @@
+package com.sn0326.cicddemo.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * 実行環境のCPUでBCryptのハッシュ計算時間を計測し、コスト（ストレングス）を決定するクラス
+ *
+ * 最小コストから1ずつ上げながら計測し、計測値の最大（p99の近似）が
+ * レイテンシ予算に収まる最も高いコストを選びます。
+ * コストが1上がるごとに計算時間は約2倍になるため、次のコストが明らかに予算を超える場合は計測を打ち切ります。
+ *
+ * 同時実行数はBoundedPasswordEncoderでCPUコア数以下に制限されるため、
+ * 単一スレッドでの計測値をログイン1回あたりのハッシュ計算時間とみなします。
+ */
+public class BcryptCostCalibrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BcryptCostCalibrator.class);
+
+    /** BCryptで指定可能なコストの範囲 */
+    private static final int BCRYPT_MIN_COST = 4;
+    private static final int BCRYPT_MAX_COST = 31;
+
+    private final Duration latencyBudget;
+    private final int minCost;
+    private final int maxCost;
+    private final int samples;
+
+    /**
+     * @param latencyBudget ハッシュ計算1回あたりに許容する時間
+     * @param minCost 採用する最小コスト（予算を超える場合でもこの値を下回らない）
+     * @param maxCost 採用する最大コスト
+     * @param samples コストごとの計測回数
+     */
+    public BcryptCostCalibrator(Duration latencyBudget, int minCost, int maxCost, int samples) {
+        if (latencyBudget.isNegative() || latencyBudget.isZero()) {
+            throw new IllegalArgumentException("latencyBudget must be positive");
+        }
+        if (minCost < BCRYPT_MIN_COST || maxCost > BCRYPT_MAX_COST || minCost > maxCost) {
+            throw new IllegalArgumentException(
+                    "cost range must be within " + BCRYPT_MIN_COST + ".." + BCRYPT_MAX_COST + ": " + minCost + ".." + maxCost);
+        }
+        this.latencyBudget = latencyBudget;
+        this.minCost = minCost;
+        this.maxCost = maxCost;
+        this.samples = Math.max(1, samples);
+    }
+
+    /**
+     * コストを決定する
+     *
+     * @return レイテンシ予算に収まる最も高いコスト（最小コストでも超える場合は最小コスト）
+     */
+    public int calibrate() {
+        long budgetNanos = latencyBudget.toNanos();
+        String password = randomPassword();
+
+        // JITのウォームアップ
+        measureMaxNanos(minCost, password, 2);
+
+        int chosen = minCost;
+        long chosenNanos = measureMaxNanos(minCost, password, samples);
+        if (chosenNanos > budgetNanos) {
+            logger.warn("最小コストでもハッシュ計算時間が予算を超えています: cost={}, {} ms, budget={} ms",
+                    minCost, toMillis(chosenNanos), latencyBudget.toMillis());
+            return minCost;
+        }
+
+        for (int cost = minCost + 1; cost <= maxCost; cost++) {
+            // 計算時間はコストごとに約2倍になるため、明らかに超える場合は計測しない
+            if (chosenNanos * 2 > budgetNanos * 3 / 2) {
+                break;
+            }
+            long nanos = measureMaxNanos(cost, password, samples);
+            if (nanos > budgetNanos) {
+                break;
+            }
+            chosen = cost;
+            chosenNanos = nanos;
+        }
+
+        logger.info("BCryptのコストを決定しました: cost={}, {} ms (budget={} ms, range={}..{})",
+                chosen, toMillis(chosenNanos), latencyBudget.toMillis(), minCost, maxCost);
+        return chosen;
+    }
+
+    private static long measureMaxNanos(int cost, String password, int count) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(cost);
+        long[] elapsed = new long[count];
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            encoder.encode(password);
+            elapsed[i] = System.nanoTime() - start;
+        }
+        return Arrays.stream(elapsed).max().orElse(0);
+    }
+
+    private static String randomPassword() {
+        byte[] bytes = new byte[12];
+        new SecureRandom().nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.1f", nanos / 1_000_000.0);
+    }
+}
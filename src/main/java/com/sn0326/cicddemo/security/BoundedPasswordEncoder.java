@@ -0,0 +1,191 @@
+package com.sn0326.cicddemo.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 同時実行数を制限するPasswordEncoder（バルクヘッド）
+ *
+ * BCryptなどのハッシュ計算（matches / encode）はCPUを大きく消費するため、
+ * ログインが集中すると全コアを使い切り、ヘルスチェックなど他のリクエストが応答できなくなります。
+ * 同時に計算する数をセマフォで制限し、待機数と待機時間の上限を超えた場合は即座に拒否します。
+ *
+ * 一括登録などのバックグラウンド処理はencodeInBackgroundを使い、別のセマフォで同時実行数を
+ * maxBackground（maxConcurrentが2以上の場合は最大でmaxConcurrent - 1）に制限します。
+ * バックグラウンド処理は空きを待つ列に順番に並び、ログインは空きがあれば列を追い越して取得するため、
+ * バックグラウンド処理中でもログイン用の空きが常に1つ以上残ります。
+ *
+ * 実行中・待機中の件数と拒否件数を計測します。
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Logger log = LoggerFactory.getLogger(BoundedPasswordEncoder.class);
+
+    private final PasswordEncoder delegate;
+    private final Semaphore permits;
+    private final Semaphore backgroundPermits;
+    private final int maxConcurrent;
+    private final int maxBackground;
+    private final int maxQueued;
+    private final long queueTimeoutMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * コンストラクタ
+     * @param delegate 実際にハッシュ計算を行うPasswordEncoder
+     * @param maxConcurrent 同時に計算する最大数
+     * @param maxQueued 空きを待つ最大数（超過時は待たずに拒否）
+     * @param queueTimeoutMillis 空きを待つ最大時間（0の場合は待たずに拒否）
+     * @param maxBackground バックグラウンド処理で同時に計算する最大数（0の場合はmaxConcurrent - 1、最小1）
+     */
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int maxConcurrent, int maxQueued, long queueTimeoutMillis,
+                                  int maxBackground) {
+        this.delegate = delegate;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.permits = new Semaphore(this.maxConcurrent, true);
+        // ログイン用に少なくとも1つは空けておく（maxConcurrentが1の場合のみ共用）
+        int backgroundLimit = Math.max(1, this.maxConcurrent - 1);
+        this.maxBackground = maxBackground > 0 ? Math.min(maxBackground, backgroundLimit) : backgroundLimit;
+        this.backgroundPermits = new Semaphore(this.maxBackground, true);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeoutMillis = Math.max(0, queueTimeoutMillis);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        acquire();
+        try {
+            return delegate.encode(rawPassword);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        acquire();
+        try {
+            return delegate.matches(rawPassword, encodedPassword);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * バックグラウンド処理（一括登録など）用のハッシュ化
+     * ログインより優先度を下げるため、拒否せずに空きを順番に待つ（待機数・待機時間の上限は適用しない）
+     *
+     * @param rawPassword パスワード
+     * @return ハッシュ値
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public String encodeInBackground(CharSequence rawPassword) throws InterruptedException {
+        backgroundPermits.acquire();
+        try {
+            // 公平なセマフォのため、先に待っているログインを追い越さない
+            permits.acquire();
+            inFlight.incrementAndGet();
+            try {
+                return delegate.encode(rawPassword);
+            } finally {
+                release();
+            }
+        } finally {
+            backgroundPermits.release();
+        }
+    }
+
+    /**
+     * ハッシュ形式の判定のみでハッシュ計算は行わないため、制限しない
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * 同時に計算する最大数を取得
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * バックグラウンド処理で同時に計算する最大数を取得
+     */
+    public int getMaxBackground() {
+        return maxBackground;
+    }
+
+    /**
+     * 計算中の件数を取得
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * 空きを待っている件数を取得
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * 拒否した件数を取得
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private void acquire() {
+        if (!permits.tryAcquire()) {
+            waitForPermit();
+        }
+        inFlight.incrementAndGet();
+    }
+
+    private void waitForPermit() {
+        if (queueTimeoutMillis == 0) {
+            reject("空きなし");
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            reject("待機数の上限");
+        }
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            queued.decrementAndGet();
+        }
+        if (!acquired) {
+            reject("待機時間の上限");
+        }
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        permits.release();
+    }
+
+    private void reject(String reason) {
+        rejected.increment();
+        // 集中時に大量に出力されるため、件数はgetRejectedCount()で確認する
+        log.debug("パスワードのハッシュ計算を拒否しました（{}）: inFlight={}, queued={}, rejected={}",
+                reason, inFlight.get(), queued.get(), rejected.sum());
+        throw new PasswordHashingRejectedException("パスワードのハッシュ計算が混雑しています");
+    }
+}
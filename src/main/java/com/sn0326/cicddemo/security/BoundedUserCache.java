@@ -0,0 +1,80 @@
+package com.sn0326.cicddemo.security;
+
+import com.sn0326.cicddemo.util.BoundedTtlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+
+/**
+ * 有効期限と最大件数を持つUserCache実装
+ *
+ * ユーザー情報の読み込み結果をメモリ上に保持し、users/authoritiesテーブルへの
+ * 問い合わせを削減します。ヒット数・ミス数を計測します。
+ *
+ * 認証後にProviderManagerが資格情報を消去する（eraseCredentials）ため、
+ * キャッシュにはコピーを格納し、取得時もコピーを返します。
+ */
+public class BoundedUserCache implements UserCache {
+
+    private static final Logger log = LoggerFactory.getLogger(BoundedUserCache.class);
+
+    private final BoundedTtlCache<String, UserDetails> cache;
+
+    /**
+     * コンストラクタ
+     * @param ttl キャッシュの有効期限
+     * @param maxSize キャッシュする最大ユーザー数
+     */
+    public BoundedUserCache(Duration ttl, int maxSize) {
+        this.cache = new BoundedTtlCache<>(ttl, maxSize);
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        UserDetails user = cache.get(username);
+        return user == null ? null : copyOf(user);
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        if (cache.isEnabled()) {
+            cache.put(user.getUsername(), copyOf(user));
+        }
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        if (username != null && cache.remove(username)) {
+            log.debug("Evicted user from cache: {}", username);
+        }
+    }
+
+    /**
+     * キャッシュヒット数を取得
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * キャッシュミス数を取得
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * キャッシュされているユーザー数を取得
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    private static UserDetails copyOf(UserDetails user) {
+        return User.withUserDetails(user).build();
+    }
+}
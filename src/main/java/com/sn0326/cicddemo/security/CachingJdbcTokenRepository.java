@@ -0,0 +1,102 @@
+package com.sn0326.cicddemo.security;
+
+import com.sn0326.cicddemo.util.BoundedTtlCache;
+import org.springframework.security.web.authentication.rememberme.JdbcTokenRepositoryImpl;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+
+import java.time.Duration;
+import java.util.Date;
+
+/**
+ * Remember MeトークンをシリーズごとにキャッシュするカスタムTokenRepository
+ *
+ * 期限切れトークンの削除はリクエストの処理中には行わず、CleanupService（persistent_logins）が
+ * 件数を区切って定期的に行います。
+ *
+ * シリーズごとのトークンを短時間キャッシュし、連続する自動ログインでのSELECTを省略します。
+ * updateToken/removeUserTokensでキャッシュを更新・無効化するため、同じインスタンス内では常に最新です。
+ * 他のインスタンスで更新されたトークンは最大cacheTtlの間古い値が返り、盗用の検知結果が変わるため
+ * （正規の利用者のログアウト、盗まれた古いトークンの受け入れ）、既定では無効（cacheTtlがゼロ）です。
+ * 有効にするのは単一インスタンス構成の場合に限ってください。
+ */
+public class CachingJdbcTokenRepository extends JdbcTokenRepositoryImpl {
+
+    private final BoundedTtlCache<String, PersistentRememberMeToken> tokenCache;
+
+    /**
+     * コンストラクタ
+     * @param cacheTtl トークンキャッシュの有効期限（ゼロの場合はキャッシュしない）
+     * @param cacheMaxSize キャッシュする最大シリーズ数
+     */
+    public CachingJdbcTokenRepository(Duration cacheTtl, int cacheMaxSize) {
+        this.tokenCache = new BoundedTtlCache<>(cacheTtl, cacheMaxSize);
+    }
+
+    /**
+     * トークンを取得
+     * キャッシュにあればDBを参照しない
+     */
+    @Override
+    public PersistentRememberMeToken getTokenForSeries(String seriesId) {
+        PersistentRememberMeToken cached = tokenCache.get(seriesId);
+        if (cached != null) {
+            return cached;
+        }
+
+        PersistentRememberMeToken token = super.getTokenForSeries(seriesId);
+        if (token != null) {
+            putInCache(token);
+        }
+        return token;
+    }
+
+    /**
+     * 新規トークン作成時にキャッシュにも格納
+     */
+    @Override
+    public void createNewToken(PersistentRememberMeToken token) {
+        super.createNewToken(token);
+        putInCache(token);
+    }
+
+    /**
+     * トークン更新時にキャッシュも更新
+     */
+    @Override
+    public void updateToken(String series, String tokenValue, Date lastUsed) {
+        super.updateToken(series, tokenValue, lastUsed);
+        PersistentRememberMeToken cached = tokenCache.peek(series);
+        if (cached != null) {
+            putInCache(new PersistentRememberMeToken(cached.getUsername(), series, tokenValue, lastUsed));
+        }
+    }
+
+    /**
+     * ユーザーのトークン削除時にキャッシュからも削除
+     */
+    @Override
+    public void removeUserTokens(String username) {
+        super.removeUserTokens(username);
+        tokenCache.removeIf(token -> token.getUsername().equals(username));
+    }
+
+    /**
+     * キャッシュヒット数を取得
+     */
+    public long getCacheHitCount() {
+        return tokenCache.getHitCount();
+    }
+
+    /**
+     * キャッシュミス数を取得
+     */
+    public long getCacheMissCount() {
+        return tokenCache.getMissCount();
+    }
+
+    private void putInCache(PersistentRememberMeToken token) {
+        // 同時に読み込んだ古いトークンで更新後の値を上書きしないよう、last_usedが新しい方を残す
+        tokenCache.merge(token.getSeries(), token,
+                (current, candidate) -> candidate.getDate().before(current.getDate()) ? current : candidate);
+    }
+}
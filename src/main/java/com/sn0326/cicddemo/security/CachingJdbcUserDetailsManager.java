@@ -0,0 +1,63 @@
+package com.sn0326.cicddemo.security;
+
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.provisioning.JdbcUserDetailsManager;
+
+import javax.sql.DataSource;
+
+/**
+ * UserCacheを参照するカスタムJdbcUserDetailsManager
+ *
+ * loadUserByUsername/userExistsはキャッシュを優先し、ミス時のみDBを参照します。
+ * updateUser/deleteUser/changePasswordの無効化は親クラスが行うため、
+ * ここではcreateUser/updatePasswordの無効化を補います。
+ */
+public class CachingJdbcUserDetailsManager extends JdbcUserDetailsManager {
+
+    private final UserCache userCache;
+
+    /**
+     * コンストラクタ
+     * @param dataSource データソース
+     * @param userCache ユーザー情報のキャッシュ
+     */
+    public CachingJdbcUserDetailsManager(DataSource dataSource, UserCache userCache) {
+        super(dataSource);
+        this.userCache = userCache;
+        setUserCache(userCache);
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        UserDetails cached = userCache.getUserFromCache(username);
+        if (cached != null) {
+            return cached;
+        }
+        UserDetails user = super.loadUserByUsername(username);
+        userCache.putUserInCache(user);
+        return user;
+    }
+
+    @Override
+    public boolean userExists(String username) {
+        if (userCache.getUserFromCache(username) != null) {
+            return true;
+        }
+        return super.userExists(username);
+    }
+
+    @Override
+    public void createUser(UserDetails user) {
+        super.createUser(user);
+        userCache.removeUserFromCache(user.getUsername());
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        UserDetails updated = super.updatePassword(user, newPassword);
+        userCache.removeUserFromCache(user.getUsername());
+        return updated;
+    }
+}
@@ -0,0 +1,108 @@
+package com.sn0326.cicddemo.security;
+
+import com.sn0326.cicddemo.util.BoundedTtlCache;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialUserEntityRepository;
+
+import java.time.Duration;
+
+/**
+ * パスキーユーザーエンティティをキャッシュするPublicKeyCredentialUserEntityRepository
+ *
+ * パスキー認証のたびに行われるfindById（クレデンシャルの所有者の取得）と、
+ * 認証・登録オプション生成時のfindByUsernameの結果をcacheTtlの間キャッシュします。
+ * 見つからなかった結果はキャッシュしないため、登録直後のエンティティもすぐに参照できます。
+ * save/deleteでキャッシュを無効化するため、同じインスタンス内では常に最新です。
+ */
+public class CachingPublicKeyCredentialUserEntityRepository implements PublicKeyCredentialUserEntityRepository {
+
+    private final PublicKeyCredentialUserEntityRepository delegate;
+    private final BoundedTtlCache<Bytes, PublicKeyCredentialUserEntity> idCache;
+    private final BoundedTtlCache<String, PublicKeyCredentialUserEntity> usernameCache;
+
+    /**
+     * コンストラクタ
+     * @param delegate 実際に読み書きするリポジトリ
+     * @param cacheTtl キャッシュの有効期限（ゼロの場合はキャッシュしない）
+     * @param cacheMaxSize キャッシュする最大エンティティ数（ID・ユーザー名それぞれ）
+     */
+    public CachingPublicKeyCredentialUserEntityRepository(PublicKeyCredentialUserEntityRepository delegate,
+                                                          Duration cacheTtl, int cacheMaxSize) {
+        this.delegate = delegate;
+        this.idCache = new BoundedTtlCache<>(cacheTtl, cacheMaxSize);
+        this.usernameCache = new BoundedTtlCache<>(cacheTtl, cacheMaxSize);
+    }
+
+    @Override
+    public PublicKeyCredentialUserEntity findById(Bytes id) {
+        PublicKeyCredentialUserEntity cached = idCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        PublicKeyCredentialUserEntity entity = delegate.findById(id);
+        putInCache(entity);
+        return entity;
+    }
+
+    @Override
+    public PublicKeyCredentialUserEntity findByUsername(String username) {
+        PublicKeyCredentialUserEntity cached = usernameCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+        PublicKeyCredentialUserEntity entity = delegate.findByUsername(username);
+        putInCache(entity);
+        return entity;
+    }
+
+    /**
+     * エンティティを保存し、キャッシュを無効化
+     */
+    @Override
+    public void save(PublicKeyCredentialUserEntity userEntity) {
+        delegate.save(userEntity);
+        evict(userEntity.getId());
+        usernameCache.remove(userEntity.getName());
+    }
+
+    /**
+     * エンティティを削除し、キャッシュを無効化
+     */
+    @Override
+    public void delete(Bytes id) {
+        delegate.delete(id);
+        evict(id);
+    }
+
+    /**
+     * キャッシュヒット数を取得
+     */
+    public long getCacheHitCount() {
+        return idCache.getHitCount() + usernameCache.getHitCount();
+    }
+
+    /**
+     * キャッシュミス数を取得
+     */
+    public long getCacheMissCount() {
+        return idCache.getMissCount() + usernameCache.getMissCount();
+    }
+
+    private void putInCache(PublicKeyCredentialUserEntity entity) {
+        if (entity == null) {
+            return;
+        }
+        idCache.put(entity.getId(), entity);
+        usernameCache.put(entity.getName(), entity);
+    }
+
+    /**
+     * IDに対応するエンティティをID・ユーザー名の両方のキャッシュから削除
+     */
+    private void evict(Bytes id) {
+        idCache.remove(id);
+        // ユーザー名の変更に備えて、IDで一致するエントリをすべて削除する
+        usernameCache.removeIf(entity -> entity.getId().equals(id));
+    }
+}
@@ -0,0 +1,285 @@
+package com.sn0326.cicddemo.security;
+
+import com.sn0326.cicddemo.util.BoundedTtlCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * パスキークレデンシャルの使用時の更新をまとめて書き込むUserCredentialRepository
+ *
+ * パスキー認証のたびに行われるsignature_count・last_usedの書き戻しを削減します。
+ * 削減するのは書き込みのみで、認証ごとのDBの読み込み（1往復）は残ります。
+ * - findByCredentialIdの結果をcacheTtlの間保持し、次のsaveが使用状況のみの変更かを判定する比較元とする
+ *   保持している場合も、クレデンシャルがDBに残っているかを主キーで確認してから返す
+ *   （省略されるのは行全体の読み込みと変換のみ）。そのため、他のインスタンスや直接のDB操作で
+ *   削除されたクレデンシャルは、キャッシュの有効期限に関わらず直ちに使えなくなる
+ * - 認証時のsave（signature_countとlast_usedのみの変更）はキャッシュを即時に更新し、
+ *   DBへはflush()でクレデンシャルごとに1回の更新にまとめて書き込む
+ * - 登録やラベル変更などそれ以外のsaveは、そのままDBへ書き込む
+ *   （キャッシュを無効にした場合も、使用時の更新を含めてそのまま書き込む）
+ *
+ * signature_countはキャッシュ・DBとも大きい方の値を残すため、書き込み順に関わらず減ることはありません。
+ * 他のインスタンスでの認証による値は最大でflush間隔＋cacheTtlの間反映されないため、
+ * 複数インスタンス構成ではクローン検出が緩くなる（正規の認証を拒否することはない）点に注意してください。
+ */
+public class CachingUserCredentialRepository implements UserCredentialRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingUserCredentialRepository.class);
+
+    /** GREATESTはNULLを無視するため、どちらかがNULLの場合はもう一方の値になる */
+    private static final String FLUSH_USAGE_SQL =
+            "UPDATE user_credentials SET signature_count = GREATEST(signature_count, ?), " +
+            "last_used = GREATEST(last_used, ?) WHERE credential_id = ?";
+
+    private static final String EXISTS_SQL = "SELECT 1 FROM user_credentials WHERE credential_id = ?";
+
+    private final UserCredentialRepository delegate;
+    private final JdbcOperations jdbcOperations;
+
+    private final BoundedTtlCache<Bytes, CredentialRecord> credentialCache;
+    private final ConcurrentHashMap<Bytes, Usage> pendingUsages = new ConcurrentHashMap<>();
+    private final LongAdder coalescedWrites = new LongAdder();
+    private final LongAdder revokedHits = new LongAdder();
+
+    /**
+     * コンストラクタ
+     * @param delegate 実際に読み書きするリポジトリ
+     * @param jdbcOperations 使用状況をまとめて書き込むためのJDBCオペレーション
+     * @param cacheTtl キャッシュの有効期限（ゼロの場合はキャッシュしない）
+     * @param cacheMaxSize キャッシュする最大クレデンシャル数
+     */
+    public CachingUserCredentialRepository(UserCredentialRepository delegate, JdbcOperations jdbcOperations,
+                                           Duration cacheTtl, int cacheMaxSize) {
+        this.delegate = delegate;
+        this.jdbcOperations = jdbcOperations;
+        this.credentialCache = new BoundedTtlCache<>(cacheTtl, cacheMaxSize);
+    }
+
+    /**
+     * クレデンシャルを取得
+     * キャッシュにあっても存在の確認のためDBを参照する（行全体は読み込まない）。未書き込みの使用状況があれば反映して返す
+     */
+    @Override
+    public CredentialRecord findByCredentialId(Bytes credentialId) {
+        CredentialRecord cached = credentialCache.get(credentialId);
+        if (cached != null) {
+            if (exists(credentialId)) {
+                return cached;
+            }
+            // 削除済みのクレデンシャルでは認証させない
+            pendingUsages.remove(credentialId);
+            credentialCache.remove(credentialId);
+            revokedHits.increment();
+            return null;
+        }
+
+        CredentialRecord record = applyPendingUsage(delegate.findByCredentialId(credentialId));
+        if (record != null) {
+            putInCache(record);
+        }
+        return record;
+    }
+
+    /**
+     * ユーザーのクレデンシャル一覧を取得
+     * 認証オプションの生成時のみ使われるためキャッシュせず、未書き込みの使用状況のみ反映する
+     */
+    @Override
+    public List<CredentialRecord> findByUserId(Bytes userId) {
+        List<CredentialRecord> records = delegate.findByUserId(userId);
+        if (pendingUsages.isEmpty()) {
+            return records;
+        }
+        List<CredentialRecord> result = new ArrayList<>(records.size());
+        for (CredentialRecord record : records) {
+            result.add(applyPendingUsage(record));
+        }
+        return result;
+    }
+
+    /**
+     * クレデンシャルを保存
+     * キャッシュ済みのクレデンシャルに対するsignature_count・last_usedのみの変更は、
+     * キャッシュだけを更新し、DBへの書き込みはflush()まで遅らせる
+     */
+    @Override
+    public void save(CredentialRecord record) {
+        Bytes credentialId = record.getCredentialId();
+        CredentialRecord cached = credentialCache.peek(credentialId);
+        if (cached != null && isUsageUpdate(cached, record)) {
+            Usage usage = pendingUsages.merge(credentialId,
+                    new Usage(record.getSignatureCount(), record.getLastUsed()), Usage::max);
+            putInCache(withUsage(record, usage));
+            coalescedWrites.increment();
+            return;
+        }
+
+        // 未書き込みの使用状況より古い値で上書きしないよう、反映してから書き込む
+        CredentialRecord merged = applyPendingUsage(record);
+        delegate.save(merged);
+        pendingUsages.remove(credentialId);
+        credentialCache.remove(credentialId);
+    }
+
+    /**
+     * クレデンシャルを削除
+     */
+    @Override
+    public void delete(Bytes credentialId) {
+        pendingUsages.remove(credentialId);
+        delegate.delete(credentialId);
+        credentialCache.remove(credentialId);
+    }
+
+    /**
+     * 未書き込みの使用状況をまとめてDBへ書き込む
+     * 既存の値より小さいsignature_count・古いlast_usedでは上書きしない
+     */
+    @Scheduled(initialDelayString = "${webauthn.credential-cache.flush-interval-ms:30000}",
+               fixedDelayString = "${webauthn.credential-cache.flush-interval-ms:30000}")
+    public synchronized void flush() {
+        if (pendingUsages.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Bytes, Usage>> drained = new ArrayList<>();
+        for (Bytes credentialId : pendingUsages.keySet()) {
+            Usage usage = pendingUsages.remove(credentialId);
+            if (usage != null) {
+                drained.add(Map.entry(credentialId, usage));
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(drained.size());
+        for (Map.Entry<Bytes, Usage> drainedEntry : drained) {
+            Usage usage = drainedEntry.getValue();
+            Timestamp lastUsed = usage.lastUsed() == null ? null : Timestamp.from(usage.lastUsed());
+            batchArgs.add(new Object[] {
+                    usage.signatureCount(), lastUsed, drainedEntry.getKey().toBase64UrlString()});
+        }
+        try {
+            jdbcOperations.batchUpdate(FLUSH_USAGE_SQL, batchArgs);
+            log.debug("Flushed usage of {} passkey credentials", batchArgs.size());
+        } catch (Exception e) {
+            // 次回の書き込みで再試行する（その間の使用状況とは大きい方を残す）
+            for (Map.Entry<Bytes, Usage> drainedEntry : drained) {
+                pendingUsages.merge(drainedEntry.getKey(), drainedEntry.getValue(), Usage::max);
+            }
+            log.error("Failed to flush usage of {} passkey credentials", batchArgs.size(), e);
+        }
+    }
+
+    /**
+     * 停止時に未書き込みの使用状況を書き込む
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * キャッシュヒット数を取得
+     */
+    public long getCacheHitCount() {
+        return credentialCache.getHitCount();
+    }
+
+    /**
+     * キャッシュミス数を取得
+     */
+    public long getCacheMissCount() {
+        return credentialCache.getMissCount();
+    }
+
+    /**
+     * DBへの即時書き込みをまとめた回数を取得
+     */
+    public long getCoalescedWriteCount() {
+        return coalescedWrites.sum();
+    }
+
+    /**
+     * キャッシュにあったがDBから削除されていたクレデンシャルの取得回数を取得
+     */
+    public long getRevokedHitCount() {
+        return revokedHits.sum();
+    }
+
+    /**
+     * クレデンシャルがDBに存在するか
+     */
+    private boolean exists(Bytes credentialId) {
+        return !jdbcOperations.queryForList(EXISTS_SQL, Integer.class, credentialId.toBase64UrlString()).isEmpty();
+    }
+
+    /**
+     * signature_count・last_used以外に変更がないか
+     */
+    private static boolean isUsageUpdate(CredentialRecord current, CredentialRecord updated) {
+        return Objects.equals(current.getUserEntityUserId(), updated.getUserEntityUserId())
+                && Arrays.equals(current.getPublicKey().getBytes(), updated.getPublicKey().getBytes())
+                && current.isUvInitialized() == updated.isUvInitialized()
+                && current.isBackupEligible() == updated.isBackupEligible()
+                && current.isBackupState() == updated.isBackupState()
+                && Objects.equals(current.getTransports(), updated.getTransports())
+                && Objects.equals(current.getLabel(), updated.getLabel());
+    }
+
+    private CredentialRecord applyPendingUsage(CredentialRecord record) {
+        if (record == null) {
+            return null;
+        }
+        Usage pending = pendingUsages.get(record.getCredentialId());
+        if (pending == null) {
+            return record;
+        }
+        return withUsage(record, pending.max(new Usage(record.getSignatureCount(), record.getLastUsed())));
+    }
+
+    private static CredentialRecord withUsage(CredentialRecord record, Usage usage) {
+        return ImmutableCredentialRecord.fromCredentialRecord(record)
+                .signatureCount(usage.signatureCount())
+                .lastUsed(usage.lastUsed())
+                .build();
+    }
+
+    private void putInCache(CredentialRecord record) {
+        // 同時に読み込んだ古い値で更新後の値を上書きしないよう、signature_countが大きい方を残す
+        // （上限到達で削除されても、未書き込みの使用状況はpendingUsagesに残るため失われない）
+        credentialCache.merge(record.getCredentialId(), record,
+                (current, candidate) -> candidate.getSignatureCount() < current.getSignatureCount()
+                        ? current : candidate);
+    }
+
+    /**
+     * 未書き込みの使用状況
+     */
+    private record Usage(long signatureCount, Instant lastUsed) {
+
+        Usage max(Usage other) {
+            Instant latest = lastUsed == null || (other.lastUsed() != null && other.lastUsed().isAfter(lastUsed))
+                    ? other.lastUsed() : lastUsed;
+            return new Usage(Math.max(signatureCount, other.signatureCount()), latest);
+        }
+    }
+}
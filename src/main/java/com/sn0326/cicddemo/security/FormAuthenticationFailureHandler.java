@@ -41,7 +41,9 @@ public class FormAuthenticationFailureHandler extends SimpleUrlAuthenticationFai
     }
 
     private String getErrorMessage(AuthenticationException exception) {
-        if (exception instanceof LockedException) {
+        if (exception instanceof PasswordHashingRejectedException) {
+            return "現在ログインが混み合っています。しばらくしてから再度お試しください。";
+        } else if (exception instanceof LockedException) {
             return "アカウントがロックされています。しばらくしてから再度お試しください。";
         } else if (exception instanceof DisabledException) {
             return "アカウントが無効です。";
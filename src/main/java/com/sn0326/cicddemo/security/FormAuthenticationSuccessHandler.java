@@ -3,6 +3,7 @@ package com.sn0326.cicddemo.security;
 import com.sn0326.cicddemo.service.AccountLockoutService;
 import com.sn0326.cicddemo.service.ForcePasswordChangeService;
 import com.sn0326.cicddemo.service.LastLoginService;
+import com.sn0326.cicddemo.service.suspiciouslogin.SuspiciousLoginDetector;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -25,14 +26,17 @@ public class FormAuthenticationSuccessHandler extends SavedRequestAwareAuthentic
     private final LastLoginService lastLoginService;
     private final ForcePasswordChangeService forcePasswordChangeService;
     private final AccountLockoutService lockoutService;
+    private final SuspiciousLoginDetector suspiciousLoginDetector;
 
     public FormAuthenticationSuccessHandler(
             LastLoginService lastLoginService,
             ForcePasswordChangeService forcePasswordChangeService,
-            AccountLockoutService lockoutService) {
+            AccountLockoutService lockoutService,
+            SuspiciousLoginDetector suspiciousLoginDetector) {
         this.lastLoginService = lastLoginService;
         this.forcePasswordChangeService = forcePasswordChangeService;
         this.lockoutService = lockoutService;
+        this.suspiciousLoginDetector = suspiciousLoginDetector;
         setDefaultTargetUrl("/home");
     }
 
@@ -44,9 +48,9 @@ public class FormAuthenticationSuccessHandler extends SavedRequestAwareAuthentic
 
         String username = authentication.getName();
 
-        // ログイン履歴を記録（独立したトランザクション）
+        // ログイン履歴を記録（非同期に書き込み）し、不審なログインの判定に回す（判定は待たない）
         try {
-            lastLoginService.recordLogin(username, "FORM", null, request);
+            suspiciousLoginDetector.submit(lastLoginService.recordLogin(username, "FORM", null, request));
         } catch (Exception e) {
             logger.error("Failed to record login for user: {}", username, e);
         }
@@ -0,0 +1,111 @@
+package com.sn0326.cicddemo.security;
+
+import com.sn0326.cicddemo.service.ratelimit.RateLimiter;
+import com.sn0326.cicddemo.util.ClientIpAddressResolver;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 認証・再発行系のエンドポイントへのリクエスト数をクライアントIPアドレス単位で制限するフィルター
+ *
+ * ユーザー名単位の制限（アカウントロック、リセット回数制限）では、
+ * 1つのIPアドレスから多数のユーザー名を試す攻撃を防げないため、
+ * UsernamePasswordAuthenticationFilterより前で判定し、
+ * 上限を超えた場合はDB参照やパスワードハッシュ計算を行わずに429を返します。
+ *
+ * 数えるのは認証・申請を行うリクエストのみです。
+ * - pathsに一致するGET/HEAD/OPTIONS以外のリクエスト（ログイン・申請のPOSTなど）
+ * - get-pathsに一致するGETリクエスト（リンクのトークンを検証する画面）
+ * ログイン画面の表示や/login?errorへのリダイレクトは数えません。
+ * キーはClientIpAddressResolver.resolveThrottleKey（信頼できるプロキシが付加したアドレス）です。
+ * 保持するアドレス数が上限に達した場合は、最終リクエストの古いアドレスから削除して新しいクライアントを受け付けます。
+ */
+@Component
+public class IpThrottlingFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IpThrottlingFilter.class);
+
+    private static final String REJECTED_MESSAGE =
+            "リクエストが多すぎます。しばらく時間をおいてから再試行してください";
+
+    private final RateLimiter ipThrottleRateLimiter;
+    private final RequestMatcher throttledRequests;
+    private final RequestMatcher throttledGetRequests;
+    private final boolean enabled;
+    private final String retryAfterSeconds;
+
+    public IpThrottlingFilter(
+            RateLimiter ipThrottleRateLimiter,
+            @Value("${security.ip-throttle.enabled:true}") boolean enabled,
+            @Value("${security.ip-throttle.paths:/login,/login/webauthn,/reissue/**,/verify-email,/webauthn/**}")
+            List<String> paths,
+            @Value("${security.ip-throttle.get-paths:/verify-email,/reissue/resetpassword}")
+            List<String> getPaths,
+            @Value("${security.ip-throttle.window-seconds:60}") long windowSeconds) {
+        this.ipThrottleRateLimiter = ipThrottleRateLimiter;
+        this.enabled = enabled;
+        this.throttledRequests = matcherOf(paths, null);
+        this.throttledGetRequests = matcherOf(getPaths, HttpMethod.GET);
+        this.retryAfterSeconds = Long.toString(windowSeconds);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!enabled) {
+            return true;
+        }
+        if (isSafeMethod(request.getMethod())) {
+            return !throttledGetRequests.matches(request);
+        }
+        return !throttledRequests.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String ipAddress = ClientIpAddressResolver.resolveThrottleKey(request);
+        if (!ipThrottleRateLimiter.tryAcquire(ipAddress)) {
+            logger.warn("Too many requests from {}: {} {}", ipAddress, request.getMethod(), request.getRequestURI());
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(REJECTED_MESSAGE);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private static RequestMatcher matcherOf(List<String> paths, HttpMethod method) {
+        return new OrRequestMatcher(paths.stream()
+                .map(String::trim)
+                .filter(path -> !path.isEmpty())
+                .<RequestMatcher>map(path -> PathPatternRequestMatcher.withDefaults().matcher(method, path))
+                .toList());
+    }
+
+    private static boolean isSafeMethod(String method) {
+        return HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method)
+                || HttpMethod.OPTIONS.matches(method);
+    }
+}
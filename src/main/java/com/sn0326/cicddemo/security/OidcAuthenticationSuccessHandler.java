@@ -3,6 +3,7 @@ package com.sn0326.cicddemo.security;
 import com.sn0326.cicddemo.model.OidcProvider;
 import com.sn0326.cicddemo.service.OidcConnectionService;
 import com.sn0326.cicddemo.service.LastLoginService;
+import com.sn0326.cicddemo.service.suspiciouslogin.SuspiciousLoginDetector;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -23,12 +24,15 @@ public class OidcAuthenticationSuccessHandler extends SavedRequestAwareAuthentic
 
     private final OidcConnectionService oidcConnectionService;
     private final LastLoginService lastLoginService;
+    private final SuspiciousLoginDetector suspiciousLoginDetector;
 
     public OidcAuthenticationSuccessHandler(
             OidcConnectionService oidcConnectionService,
-            LastLoginService lastLoginService) {
+            LastLoginService lastLoginService,
+            SuspiciousLoginDetector suspiciousLoginDetector) {
         this.oidcConnectionService = oidcConnectionService;
         this.lastLoginService = lastLoginService;
+        this.suspiciousLoginDetector = suspiciousLoginDetector;
         setDefaultTargetUrl("/home");
     }
 
@@ -53,8 +57,9 @@ public class OidcAuthenticationSuccessHandler extends SavedRequestAwareAuthentic
                 String username = authentication.getName();
                 String registrationId = oauth2Token.getAuthorizedClientRegistrationId();
 
-                // ログイン履歴を記録
-                lastLoginService.recordLogin(username, "OIDC", registrationId, request);
+                // ログイン履歴を記録し、不審なログインの判定に回す（判定は待たない）
+                suspiciousLoginDetector.submit(
+                        lastLoginService.recordLogin(username, "OIDC", registrationId, request));
             }
 
             super.onAuthenticationSuccess(request, response, authentication);
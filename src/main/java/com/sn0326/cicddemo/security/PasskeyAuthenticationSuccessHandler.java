@@ -0,0 +1,47 @@
+package com.sn0326.cicddemo.security;
+
+import com.sn0326.cicddemo.service.LastLoginService;
+import com.sn0326.cicddemo.service.suspiciouslogin.SuspiciousLoginDetector;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+import org.springframework.security.web.authentication.HttpMessageConverterAuthenticationSuccessHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * パスキー認証成功時の処理を行うハンドラー
+ *
+ * ログイン履歴（PASSKEY）を記録してから、Spring Security標準のハンドラーで
+ * JavaScriptクライアント向けのJSON（遷移先URL）を返します。
+ */
+@Component
+public class PasskeyAuthenticationSuccessHandler implements AuthenticationSuccessHandler {
+
+    private final LastLoginService lastLoginService;
+    private final SuspiciousLoginDetector suspiciousLoginDetector;
+    private final AuthenticationSuccessHandler delegate = new HttpMessageConverterAuthenticationSuccessHandler();
+
+    public PasskeyAuthenticationSuccessHandler(
+            LastLoginService lastLoginService,
+            SuspiciousLoginDetector suspiciousLoginDetector) {
+        this.lastLoginService = lastLoginService;
+        this.suspiciousLoginDetector = suspiciousLoginDetector;
+    }
+
+    @Override
+    public void onAuthenticationSuccess(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            Authentication authentication) throws ServletException, IOException {
+
+        // ログイン履歴を記録し、不審なログインの判定に回す（判定は待たない）
+        suspiciousLoginDetector.submit(
+                lastLoginService.recordLogin(authentication.getName(), "PASSKEY", null, request));
+
+        delegate.onAuthenticationSuccess(request, response, authentication);
+    }
+}
@@ -13,7 +13,6 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Set;
 
 /**
  * パスワード変更が必要なユーザーを専用ページへリダイレクトするフィルター
@@ -23,10 +22,10 @@ import java.util.Set;
 public class PasswordChangeRequiredFilter extends OncePerRequestFilter {
 
     private static final String FORCE_CHANGE_PASSWORD_URL = "/force-change-password";
-    private static final Set<String> ALLOWED_PATHS = Set.of(
+    private static final String[] ALLOWED_PATH_PREFIXES = {
             FORCE_CHANGE_PASSWORD_URL,
             "/logout"
-    );
+    };
 
     private final ForcePasswordChangeService forcePasswordChangeService;
 
@@ -47,20 +46,26 @@ public class PasswordChangeRequiredFilter extends OncePerRequestFilter {
             !(auth instanceof AnonymousAuthenticationToken) &&
             auth instanceof UsernamePasswordAuthenticationToken) {
 
-            String requestPath = request.getRequestURI();
-
-            // 許可されたパスはスキップ
-            if (ALLOWED_PATHS.stream().noneMatch(requestPath::startsWith)) {
-                String username = auth.getName();
-
-                // パスワード変更が必要な場合はリダイレクト
-                if (forcePasswordChangeService.isPasswordChangeRequired(username)) {
-                    response.sendRedirect(FORCE_CHANGE_PASSWORD_URL);
-                    return;
-                }
+            // パスワード変更が必要な場合はリダイレクト（有効期限内はメモリ参照のみ、許可されたパスはスキップ）
+            if (forcePasswordChangeService.isPasswordChangeFlagged(auth.getName()) &&
+                !isAllowedPath(request.getRequestURI())) {
+                response.sendRedirect(FORCE_CHANGE_PASSWORD_URL);
+                return;
             }
         }
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * パスワード変更前でもアクセスを許可するパスか判定
+     */
+    private static boolean isAllowedPath(String requestPath) {
+        for (String prefix : ALLOWED_PATH_PREFIXES) {
+            if (requestPath.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
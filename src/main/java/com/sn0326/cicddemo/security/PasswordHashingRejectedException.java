@@ -0,0 +1,14 @@
+package com.sn0326.cicddemo.security;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * パスワードのハッシュ計算が混雑により受け付けられなかったことを示す例外
+ * 認証失敗（パスワード誤り）としては扱わず、ロックアウトの失敗回数にも数えない
+ */
+public class PasswordHashingRejectedException extends AuthenticationServiceException {
+
+    public PasswordHashingRejectedException(String message) {
+        super(message);
+    }
+}
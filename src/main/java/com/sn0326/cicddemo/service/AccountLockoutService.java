@@ -2,26 +2,70 @@ package com.sn0326.cicddemo.service;
 
 import com.sn0326.cicddemo.model.FailedAuthentication;
 import com.sn0326.cicddemo.repository.FailedAuthenticationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * アカウントロックアウト機能を提供するサービス
  * TERASOLUNAガイドラインに準拠した実装
+ *
+ * ロック判定はユーザーごとのスライディングウィンドウ（メモリ上）で行い、
+ * DBへの問い合わせを発生させません。
+ * failed_authenticationsテーブルはライトビハインドの永続ログとして扱い、
+ * 起動時にロック期間内の記録をリプレイしてメモリ上の状態を復元します。
  */
 @Service
 public class AccountLockoutService {
 
     private static final Logger logger = LoggerFactory.getLogger(AccountLockoutService.class);
 
+    private static final String INSERT_FAILURE_SQL =
+            "INSERT INTO failed_authentications (username, authentication_timestamp) " +
+            "SELECT ?, ? WHERE EXISTS (SELECT 1 FROM users WHERE username = ?) " +
+            "ON CONFLICT DO NOTHING";
+
+    private static final String DELETE_FAILURES_SQL =
+            "DELETE FROM failed_authentications WHERE username = ?";
+
     private final FailedAuthenticationRepository failedAuthRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate requiresNewTransactionTemplate;
+
+    /**
+     * ユーザーごとの失敗ウィンドウ
+     * ウィンドウ単位でロックするため、ユーザー間で競合しない
+     */
+    private final ConcurrentHashMap<String, FailureWindow> windows = new ConcurrentHashMap<>();
+
+    /**
+     * DBへの未反映の書き込み（記録・リセット）を発生順に保持するキュー
+     */
+    private final Queue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 追跡上限を超えて記録を保持できなかったユーザーがいる間は、
+     * メモリ上にウィンドウのないユーザーのロック判定をDBで行う（エポックミリ秒）
+     */
+    private volatile long dbFallbackUntil;
 
     @Value("${security.account.lockout.max-attempts:5}")
     private int maxAttempts;
@@ -29,8 +73,36 @@ public class AccountLockoutService {
     @Value("${security.account.lockout.duration-minutes:60}")
     private int lockoutDurationMinutes;
 
-    public AccountLockoutService(FailedAuthenticationRepository failedAuthRepository) {
+    @Value("${security.account.lockout.max-tracked-users:100000}")
+    private int maxTrackedUsers;
+
+    public AccountLockoutService(FailedAuthenticationRepository failedAuthRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate requiresNewTransactionTemplate) {
         this.failedAuthRepository = failedAuthRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.requiresNewTransactionTemplate = requiresNewTransactionTemplate;
+    }
+
+    /**
+     * 起動時にロック期間内の失敗記録をリプレイ
+     * インスタンスが再起動してもロック状態が維持される
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            List<FailedAuthentication> failures =
+                    failedAuthRepository.findAllSince(LocalDateTime.now().minusMinutes(lockoutDurationMinutes));
+            for (FailedAuthentication failure : failures) {
+                recordInMemory(failure.getUsername(), toEpochMillis(failure.getAuthenticationTimestamp()));
+            }
+            logger.info("Replayed {} failed authentication records for {} users",
+                    failures.size(), windows.size());
+        } catch (Exception e) {
+            // リプレイに失敗した場合でも起動は継続し、ロック判定はDBにフォールバックする
+            dbFallbackUntil = System.currentTimeMillis() + lockoutDurationMillis();
+            logger.error("Failed to replay failed authentication records", e);
+        }
     }
 
     /**
@@ -40,74 +112,245 @@ public class AccountLockoutService {
      * @param username 対象ユーザー名
      * @return ロック状態の場合true
      */
-    @Transactional(readOnly = true)
     public boolean isAccountLocked(String username) {
-        LocalDateTime lockoutThreshold = LocalDateTime.now()
-                .minusMinutes(lockoutDurationMinutes);
+        long now = System.currentTimeMillis();
+        FailureWindow window = windows.get(username);
+
+        if (window == null) {
+            // 追跡上限超過中はメモリに存在しないユーザーをDBで判定
+            return now < dbFallbackUntil && isAccountLockedInDatabase(username);
+        }
 
-        // 閾値以降の失敗を取得
-        List<FailedAuthentication> recentFailures =
-                failedAuthRepository.findRecentFailures(username, lockoutThreshold);
+        int failureCount = window.countSince(now - lockoutDurationMillis());
 
         // 失敗回数が閾値以上ならロック状態
-        boolean locked = recentFailures.size() >= maxAttempts;
+        boolean locked = failureCount >= maxAttempts;
 
         if (locked) {
-            logger.debug("Account is locked: username={}, failureCount={}", username, recentFailures.size());
+            logger.debug("Account is locked: username={}, failureCount={}", username, failureCount);
         }
 
         return locked;
     }
 
+    /**
+     * ロックされているユーザー名の一覧を取得
+     * 追跡上限超過中はメモリに存在しないユーザーもDBで判定して含める
+     *
+     * @return ロック中のユーザー名
+     */
+    public Set<String> getLockedUsernames() {
+        long now = System.currentTimeMillis();
+        long since = now - lockoutDurationMillis();
+        Set<String> locked = new HashSet<>();
+        windows.forEach((username, window) -> {
+            if (window.countSince(since) >= maxAttempts) {
+                locked.add(username);
+            }
+        });
+        if (now < dbFallbackUntil) {
+            locked.addAll(jdbcTemplate.queryForList(
+                    "SELECT username FROM failed_authentications WHERE authentication_timestamp > ? " +
+                    "GROUP BY username HAVING COUNT(*) >= ?",
+                    String.class,
+                    Timestamp.valueOf(LocalDateTime.now().minusMinutes(lockoutDurationMinutes)), maxAttempts));
+        }
+        return locked;
+    }
+
     /**
      * 失敗を記録
-     * 独立したトランザクションで実行し、失敗しても認証プロセスに影響しない
+     * メモリ上のウィンドウを即時更新し、DBへの書き込みは非同期に行う
      *
      * @param username 対象ユーザー名
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void recordFailedAttempt(String username) {
-        FailedAuthentication failure = new FailedAuthentication(
-                username,
-                LocalDateTime.now()
-        );
-        failedAuthRepository.save(failure);
+        LocalDateTime timestamp = LocalDateTime.now();
+        recordInMemory(username, toEpochMillis(timestamp));
+        pendingWrites.add(PendingWrite.record(username, timestamp));
         logger.debug("Recorded failed authentication attempt: username={}", username);
     }
 
     /**
      * 認証成功時に失敗記録をクリア
-     * 独立したトランザクションで実行し、失敗しても認証プロセスに影響しない
+     * 失敗記録のないユーザーではDBへの書き込みを発生させない
      *
      * @param username 対象ユーザー名
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void resetFailedAttempts(String username) {
-        failedAuthRepository.deleteByUsername(username);
-        logger.debug("Reset failed authentication attempts: username={}", username);
+        boolean tracked = windows.remove(username) != null;
+        if (tracked || System.currentTimeMillis() < dbFallbackUntil) {
+            pendingWrites.add(PendingWrite.reset(username));
+            logger.debug("Reset failed authentication attempts: username={}", username);
+        }
+    }
+
+    /**
+     * 未反映の書き込みをDBへ反映（ライトビハインド）
+     * 発生順を保つため、連続する記録はバッチで挿入し、リセットの前で区切る
+     */
+    @Scheduled(fixedDelayString = "${security.account.lockout.flush-interval-ms:1000}")
+    public synchronized void flushPendingWrites() {
+        List<PendingWrite> drained = new ArrayList<>();
+        PendingWrite write;
+        while ((write = pendingWrites.poll()) != null) {
+            drained.add(write);
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        try {
+            requiresNewTransactionTemplate.executeWithoutResult(status -> {
+                List<Object[]> inserts = new ArrayList<>();
+                for (PendingWrite pending : drained) {
+                    if (pending.timestamp() != null) {
+                        Timestamp ts = Timestamp.valueOf(pending.timestamp());
+                        inserts.add(new Object[]{pending.username(), ts, pending.username()});
+                    } else {
+                        batchInsert(inserts);
+                        jdbcTemplate.update(DELETE_FAILURES_SQL, pending.username());
+                    }
+                }
+                batchInsert(inserts);
+            });
+            logger.debug("Flushed {} failed authentication writes", drained.size());
+        } catch (Exception e) {
+            // DB障害時はログのみ（メモリ上のロック判定は継続して機能する）
+            logger.error("Failed to flush {} failed authentication writes", drained.size(), e);
+        }
     }
 
     /**
-     * 古い失敗記録を削除（クリーンアップ用）
-     * スケジューラーから定期的に呼び出される
+     * 期限切れのウィンドウをメモリから削除
      */
-    @Transactional
-    public void cleanupOldRecords() {
-        LocalDateTime threshold = LocalDateTime.now()
-                .minusDays(7); // 1週間以上前のレコードを削除
-        failedAuthRepository.deleteOldRecords(threshold);
-        logger.info("Cleaned up old failed authentication records before {}", threshold);
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpiredWindows() {
+        long threshold = System.currentTimeMillis() - lockoutDurationMillis();
+        for (String username : windows.keySet()) {
+            windows.computeIfPresent(username,
+                    (key, window) -> window.isExpired(threshold) ? null : window);
+        }
+    }
+
+    /**
+     * シャットダウン時に未反映の書き込みを反映
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushPendingWrites();
     }
 
     /**
      * 管理者によるロック解除
-     * 明示的なトランザクションで実行
+     * 未反映の書き込みとの順序を保つため、キュー経由で即時反映する
      *
      * @param username 対象ユーザー名
      */
-    @Transactional
     public void unlockAccount(String username) {
-        failedAuthRepository.deleteByUsername(username);
+        windows.remove(username);
+        pendingWrites.add(PendingWrite.reset(username));
+        flushPendingWrites();
         logger.info("Account unlocked by admin: username={}", username);
     }
+
+    /**
+     * メモリ上のウィンドウに失敗を記録
+     * 追跡上限に達している場合は記録せず、一定期間DB判定にフォールバックする
+     */
+    private void recordInMemory(String username, long epochMillis) {
+        if (!windows.containsKey(username) && windows.size() >= maxTrackedUsers) {
+            dbFallbackUntil = System.currentTimeMillis() + lockoutDurationMillis();
+            logger.warn("Lockout tracking capacity reached ({} users), falling back to database: username={}",
+                    maxTrackedUsers, username);
+            return;
+        }
+        // 期限切れ削除と競合しないよう、マップのロック内で記録する
+        windows.compute(username, (key, window) -> {
+            FailureWindow target = window != null ? window : new FailureWindow(maxAttempts);
+            target.record(epochMillis);
+            return target;
+        });
+    }
+
+    /**
+     * DBの失敗記録からロック状態を判定（フォールバック用）
+     */
+    private boolean isAccountLockedInDatabase(String username) {
+        LocalDateTime lockoutThreshold = LocalDateTime.now()
+                .minusMinutes(lockoutDurationMinutes);
+        return failedAuthRepository.countRecentFailures(username, lockoutThreshold) >= maxAttempts;
+    }
+
+    private void batchInsert(List<Object[]> inserts) {
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_FAILURE_SQL, inserts);
+            inserts.clear();
+        }
+    }
+
+    private long lockoutDurationMillis() {
+        return TimeUnit.MINUTES.toMillis(lockoutDurationMinutes);
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 直近maxAttempts件の失敗時刻を保持するリングバッファ
+     * ロック判定には直近N件のみで十分なため、メモリ使用量はユーザーあたり一定
+     */
+    private static final class FailureWindow {
+
+        private final long[] timestamps;
+        private int next;
+        private int size;
+
+        FailureWindow(int capacity) {
+            this.timestamps = new long[Math.max(1, capacity)];
+        }
+
+        synchronized void record(long epochMillis) {
+            timestamps[next] = epochMillis;
+            next = (next + 1) % timestamps.length;
+            if (size < timestamps.length) {
+                size++;
+            }
+        }
+
+        synchronized int countSince(long threshold) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (timestamps[i] >= threshold) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        synchronized boolean isExpired(long threshold) {
+            for (int i = 0; i < size; i++) {
+                if (timestamps[i] >= threshold) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * DBへの未反映の書き込み
+     * timestampがnullの場合はリセット（全削除）を表す
+     */
+    private record PendingWrite(String username, LocalDateTime timestamp) {
+
+        static PendingWrite record(String username, LocalDateTime timestamp) {
+            return new PendingWrite(username, timestamp);
+        }
+
+        static PendingWrite reset(String username) {
+            return new PendingWrite(username, null);
+        }
+    }
 }
@@ -1,8 +1,11 @@
 package com.sn0326.cicddemo.service;
 
 import com.sn0326.cicddemo.dto.UserInfo;
+import com.sn0326.cicddemo.dto.UserListPage;
+import com.sn0326.cicddemo.dto.UserSearchCriteria;
 import com.sn0326.cicddemo.exception.InvalidPasswordException;
 import com.sn0326.cicddemo.exception.UserValidationException;
+import com.sn0326.cicddemo.repository.UserRepository;
 import com.sn0326.cicddemo.service.notification.SecurityNotificationService;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.GrantedAuthority;
@@ -15,45 +18,109 @@ import org.springframework.security.provisioning.JdbcUserDetailsManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Array;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Service
 public class AdminUserManagementService {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final JdbcUserDetailsManager userDetailsManager;
     private final PasswordEncoder passwordEncoder;
     private final JdbcTemplate jdbcTemplate;
     private final SecurityNotificationService notificationService;
     private final ForcePasswordChangeService forcePasswordChangeService;
     private final AccountLockoutService lockoutService;
+    private final OidcConnectionService oidcConnectionService;
+    private final UserRepository userRepository;
 
     public AdminUserManagementService(JdbcUserDetailsManager userDetailsManager,
                                       PasswordEncoder passwordEncoder,
                                       JdbcTemplate jdbcTemplate,
                                       SecurityNotificationService notificationService,
                                       ForcePasswordChangeService forcePasswordChangeService,
-                                      AccountLockoutService lockoutService) {
+                                      AccountLockoutService lockoutService,
+                                      OidcConnectionService oidcConnectionService,
+                                      UserRepository userRepository) {
         this.userDetailsManager = userDetailsManager;
         this.passwordEncoder = passwordEncoder;
         this.jdbcTemplate = jdbcTemplate;
         this.notificationService = notificationService;
         this.forcePasswordChangeService = forcePasswordChangeService;
         this.lockoutService = lockoutService;
+        this.oidcConnectionService = oidcConnectionService;
+        this.userRepository = userRepository;
     }
 
     /**
-     * ユーザー一覧を取得
+     * ユーザー一覧を1ページ分取得
+     * ユーザーと権限を1回のクエリで取得し、ユーザー名のキーセットでページングする
+     *
+     * @param criteria 検索条件（カーソル、件数、絞り込み条件）
+     * @return ユーザー一覧のページ
      */
-    public List<UserInfo> getAllUsers() {
-        String sql = "SELECT username, enabled FROM users ORDER BY username";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> {
-            String username = rs.getString("username");
-            boolean enabled = rs.getBoolean("enabled");
-            List<String> authorities = getAuthoritiesByUsername(username);
-            return new UserInfo(username, enabled, authorities);
-        });
+    public UserListPage findUsers(UserSearchCriteria criteria) {
+        int size = criteria.getSize() == null ? DEFAULT_PAGE_SIZE
+                : Math.clamp(criteria.getSize(), 1, MAX_PAGE_SIZE);
+        boolean backward = criteria.getBefore() != null && !criteria.getBefore().isEmpty();
+        String cursor = backward ? criteria.getBefore() : criteria.getAfter();
+        boolean hasCursor = cursor != null && !cursor.isEmpty();
+
+        StringBuilder sql = new StringBuilder(
+                "SELECT u.username, u.enabled, " +
+                "array_agg(a.authority ORDER BY a.authority) FILTER (WHERE a.authority IS NOT NULL) AS authorities " +
+                "FROM users u LEFT JOIN authorities a ON a.username = u.username WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+
+        if (hasCursor) {
+            sql.append(backward ? " AND u.username < ?" : " AND u.username > ?");
+            params.add(cursor);
+        }
+        if (criteria.getEnabled() != null) {
+            sql.append(" AND u.enabled = ?");
+            params.add(criteria.getEnabled());
+        }
+        if (criteria.getRole() != null && !criteria.getRole().isEmpty()) {
+            String role = criteria.getRole().startsWith("ROLE_") ? criteria.getRole() : "ROLE_" + criteria.getRole();
+            sql.append(" AND EXISTS (SELECT 1 FROM authorities r WHERE r.username = u.username AND r.authority = ?)");
+            params.add(role);
+        }
+        if (criteria.getLocked() != null) {
+            // ロック状態はAccountLockoutServiceのメモリ上の状態を正とする
+            String[] lockedUsernames = lockoutService.getLockedUsernames().toArray(new String[0]);
+            sql.append(criteria.getLocked() ? " AND u.username = ANY (?)" : " AND NOT (u.username = ANY (?))");
+            params.add(lockedUsernames);
+        }
+        sql.append(" GROUP BY u.username, u.enabled ORDER BY u.username ")
+                .append(backward ? "DESC" : "ASC")
+                .append(" LIMIT ?");
+        params.add(size + 1);
+
+        List<UserInfo> users = new ArrayList<>(jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Array array = rs.getArray("authorities");
+            List<String> authorities = array == null ? List.of() : List.of((String[]) array.getArray());
+            return new UserInfo(rs.getString("username"), rs.getBoolean("enabled"), authorities);
+        }, params.toArray()));
+
+        boolean hasMore = users.size() > size;
+        if (hasMore) {
+            users.remove(users.size() - 1);
+        }
+        if (backward) {
+            Collections.reverse(users);
+        }
+
+        String first = users.isEmpty() ? null : users.get(0).getUsername();
+        String last = users.isEmpty() ? null : users.get(users.size() - 1).getUsername();
+        // 前ページから戻った場合は必ず次ページがあり、次ページへ進んだ場合は必ず前ページがある
+        String nextCursor = (backward ? hasCursor : hasMore) ? last : null;
+        String prevCursor = (backward ? hasMore : hasCursor) ? first : null;
+        return new UserListPage(users, nextCursor, prevCursor, size);
     }
 
     /**
@@ -127,6 +194,8 @@ public class AdminUserManagementService {
         }
 
         userDetailsManager.deleteUser(username);
+        // OIDC連携は外部キーのカスケードで削除されるため、キャッシュも削除する
+        oidcConnectionService.evictUser(username);
     }
 
     /**
@@ -141,18 +210,8 @@ public class AdminUserManagementService {
             throw new InvalidPasswordException("パスワードは8文字以上必要です");
         }
 
-        // 既存のユーザー情報を取得
-        UserDetails existingUser = userDetailsManager.loadUserByUsername(username);
-
-        // パスワードのみを更新した新しいUserDetailsを作成
-        UserDetails updatedUser = User.builder()
-                .username(existingUser.getUsername())
-                .password(passwordEncoder.encode(newPassword))
-                .disabled(!existingUser.isEnabled())
-                .authorities(existingUser.getAuthorities())
-                .build();
-
-        userDetailsManager.updateUser(updatedUser);
+        // パスワードのみを更新する（キャッシュ上の古い有効/無効状態を書き戻さない）
+        userRepository.updatePassword(username, passwordEncoder.encode(newPassword));
 
         // リセットされたパスワードは仮パスワードのため、パスワード変更を要求
         forcePasswordChangeService.requirePasswordChange(username, "Password reset by admin");
@@ -205,26 +264,8 @@ public class AdminUserManagementService {
             throw new UserValidationException("ユーザーが存在しません: " + username);
         }
 
-        // 既存のユーザー情報を取得
-        UserDetails existingUser = userDetailsManager.loadUserByUsername(username);
-
-        // 有効/無効状態のみを更新した新しいUserDetailsを作成
-        UserDetails updatedUser = User.builder()
-                .username(existingUser.getUsername())
-                .password(existingUser.getPassword())
-                .disabled(!enabled)
-                .authorities(existingUser.getAuthorities())
-                .build();
-
-        userDetailsManager.updateUser(updatedUser);
-    }
-
-    /**
-     * ユーザー名から権限リストを取得
-     */
-    private List<String> getAuthoritiesByUsername(String username) {
-        String sql = "SELECT authority FROM authorities WHERE username = ? ORDER BY authority";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getString("authority"), username);
+        // 有効/無効状態のみを更新する（キャッシュ上の古いパスワードハッシュを書き戻さない）
+        userRepository.updateEnabled(username, enabled);
     }
 
     /**
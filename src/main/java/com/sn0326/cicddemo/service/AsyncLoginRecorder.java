@@ -0,0 +1,228 @@
+package com.sn0326.cicddemo.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import com.sn0326.cicddemo.service.analytics.LoginRollupService;
+import com.sn0326.cicddemo.util.BatchingQueueWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ログイン履歴を非同期にDBへ書き込むレコーダー
+ *
+ * ログイン成功時はキューへの追加のみを行い、バックグラウンドのワーカーが
+ * 複数行INSERTでまとめて書き込みます。
+ * キューが満杯の場合は一定時間待機し、それでも空かなければ呼び出し元スレッドで
+ * 同期的に書き込みます（監査記録は欠落させない）。
+ * シャットダウン時には未書き込みの記録をすべて書き込みます。
+ * 書き込んだ記録はログイン件数の集計（LoginRollupService）にも加算します。
+ */
+@Service
+public class AsyncLoginRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncLoginRecorder.class);
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO user_logins " +
+            "(username, logged_in_at, login_method, oidc_provider, ip_address, user_agent, success) VALUES ";
+    private static final String VALUES_ROW = "(?, ?, ?, ?, ?, ?, ?)";
+    private static final int COLUMN_COUNT = 7;
+    private static final int MAX_USER_AGENT_LENGTH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LoginRollupService loginRollupService;
+
+    @Value("${security.login-history.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${security.login-history.batch-size:200}")
+    private int batchSize;
+
+    @Value("${security.login-history.enqueue-timeout-ms:50}")
+    private long enqueueTimeoutMs;
+
+    private BatchingQueueWorker<LoginRecord> writer;
+
+    private final LongAdder recordedCount = new LongAdder();
+    private final LongAdder synchronousFallbackCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder totalFlushNanos = new LongAdder();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+
+    public AsyncLoginRecorder(JdbcTemplate jdbcTemplate, LoginRollupService loginRollupService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.loginRollupService = loginRollupService;
+    }
+
+    @PostConstruct
+    public void start() {
+        writer = new BatchingQueueWorker<>("login-history-writer", queueCapacity, batchSize, this::write);
+        writer.start();
+    }
+
+    /**
+     * ログイン記録をキューへ追加
+     * キューが満杯の場合は待機し、タイムアウト時は同期的に書き込む（バックプレッシャー）
+     *
+     * @param record ログイン記録
+     */
+    public void enqueue(LoginRecord record) {
+        try {
+            if (writer.offer(record, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // キューに追加できない場合は呼び出し元で書き込む
+        synchronousFallbackCount.increment();
+        logger.warn("Login history queue is full, writing synchronously: username={}", record.username());
+        write(List.of(record));
+    }
+
+    /**
+     * キューに溜まっている件数を取得
+     */
+    public int getQueueDepth() {
+        return writer.size();
+    }
+
+    /**
+     * DBへ書き込んだ件数を取得
+     */
+    public long getRecordedCount() {
+        return recordedCount.sum();
+    }
+
+    /**
+     * キュー満杯により同期的に書き込んだ件数を取得
+     */
+    public long getSynchronousFallbackCount() {
+        return synchronousFallbackCount.sum();
+    }
+
+    /**
+     * 書き込みに失敗した件数を取得
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * 直近の書き込み（1バッチ）の所要時間を取得（ミリ秒）
+     */
+    public double getLastFlushMillis() {
+        return lastFlushNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * 書き込み（1バッチ）の平均所要時間を取得（ミリ秒）
+     */
+    public double getAverageFlushMillis() {
+        long flushes = flushCount.sum();
+        return flushes == 0 ? 0.0 : totalFlushNanos.sum() / 1_000_000.0 / flushes;
+    }
+
+    /**
+     * シャットダウン時にワーカーを停止し、残りの記録を書き込む
+     */
+    @PreDestroy
+    public void shutdown() {
+        writer.stop(true);
+        logger.info("Login history recorder stopped: recorded={}, failed={}",
+                getRecordedCount(), getFailedCount());
+    }
+
+    /**
+     * 複数行INSERTで書き込む
+     * 失敗した場合は1行ずつ再試行し、問題のある行のみを欠落させる
+     */
+    private void write(List<LoginRecord> records) {
+        long start = System.nanoTime();
+        try {
+            insertRows(records);
+            recordedCount.add(records.size());
+            for (LoginRecord record : records) {
+                addToRollup(record);
+            }
+        } catch (Exception e) {
+            logger.warn("Batch insert of {} login records failed, retrying row by row", records.size(), e);
+            for (LoginRecord record : records) {
+                try {
+                    insertRows(List.of(record));
+                    recordedCount.increment();
+                    addToRollup(record);
+                } catch (Exception rowError) {
+                    failedCount.increment();
+                    logger.error("Failed to record login for user: {}", record.username(), rowError);
+                }
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            lastFlushNanos.set(elapsed);
+            totalFlushNanos.add(elapsed);
+            flushCount.increment();
+        }
+    }
+
+    private void addToRollup(LoginRecord record) {
+        loginRollupService.recordSuccess(record.loginMethod(), record.oidcProvider(), record.loggedInAt());
+    }
+
+    private void insertRows(List<LoginRecord> records) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + records.size() * (VALUES_ROW.length() + 2))
+                .append(INSERT_PREFIX);
+        Object[] args = new Object[records.size() * COLUMN_COUNT];
+        int i = 0;
+        for (LoginRecord record : records) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(VALUES_ROW);
+            args[i++] = record.username();
+            args[i++] = Timestamp.valueOf(record.loggedInAt());
+            args[i++] = record.loginMethod();
+            args[i++] = record.oidcProvider();
+            args[i++] = record.ipAddress();
+            args[i++] = truncate(record.userAgent());
+            args[i++] = Boolean.TRUE;
+        }
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    private static String truncate(String userAgent) {
+        if (userAgent == null || userAgent.length() <= MAX_USER_AGENT_LENGTH) {
+            return userAgent;
+        }
+        return userAgent.substring(0, MAX_USER_AGENT_LENGTH);
+    }
+
+    /**
+     * キューに積むログイン記録
+     * リクエストスレッドでIPアドレス・User-Agentを取得してから渡す
+     *
+     * @param ipAddress 表示・記録用のIPアドレス（X-Forwarded-Forの先頭を含む、user_loginsに書き込む）
+     * @param trustedIpAddress 判定用のIPアドレス（信頼できるプロキシが付加したもののみ、書き込まない）
+     */
+    public record LoginRecord(
+            String username,
+            LocalDateTime loggedInAt,
+            String loginMethod,
+            String oidcProvider,
+            String ipAddress,
+            String trustedIpAddress,
+            String userAgent) {
+    }
+}
@@ -2,22 +2,19 @@ package com.sn0326.cicddemo.service;
 
 import com.sn0326.cicddemo.exception.InvalidTokenException;
 import com.sn0326.cicddemo.exception.RateLimitExceededException;
-import com.sn0326.cicddemo.model.EmailChangeAttempt;
 import com.sn0326.cicddemo.model.EmailChangeToken;
-import com.sn0326.cicddemo.repository.EmailChangeAttemptRepository;
 import com.sn0326.cicddemo.repository.EmailChangeTokenRepository;
 import com.sn0326.cicddemo.repository.UserRepository;
 import com.sn0326.cicddemo.service.notification.SecurityNotificationService;
+import com.sn0326.cicddemo.service.ratelimit.RateLimiter;
 import com.sn0326.cicddemo.util.TokenGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
-import java.util.Random;
 
 /**
  * メールアドレス変更機能を提供するサービス
@@ -30,26 +27,17 @@ import java.util.Random;
 public class EmailChangeService {
 
     private final EmailChangeTokenRepository tokenRepository;
-    private final EmailChangeAttemptRepository attemptRepository;
     private final UserRepository userRepository;
     private final TokenGenerator tokenGenerator;
     private final SecurityNotificationService notificationService;
-    private final TransactionTemplate requiresNewTransactionTemplate;
+    private final RateLimiter emailChangeRateLimiter;
 
     @Value("${security.email-change.token-expiry-minutes:30}")
     private int tokenExpiryMinutes;
 
-    @Value("${security.email-change.max-attempts-per-hour:3}")
-    private int maxAttemptsPerHour;
-
     @Value("${app.base-url:http://localhost:8080}")
     private String baseUrl;
 
-    private final Random random = new Random();
-
-    @Value("${security.email-change.cleanup-probability:0.1}")
-    private double cleanupProbability;
-
     /**
      * メールアドレス変更申請
      *
@@ -60,12 +48,9 @@ public class EmailChangeService {
      * @throws IllegalArgumentException パスワードが正しくない場合
      */
     public void requestEmailChange(String username, String newEmail, String currentPassword) {
-        // レート制限チェック
+        // レート制限チェック（許可した場合は試行として記録される）
         checkRateLimit(username);
 
-        // 試行記録（独立トランザクション）
-        recordAttempt(username);
-
         // 現在のパスワード検証
         String currentEncodedPassword = userRepository.findEmailByUsername(username);
         // パスワード検証のため、ユーザー詳細からパスワードを取得
@@ -98,9 +83,6 @@ public class EmailChangeService {
                 username, newEmail, verificationUrl, tokenExpiryMinutes);
 
         log.info("Email change token generated for user: {}", username);
-
-        // 確率的にクリーンアップを実行
-        maybeCleanup();
     }
 
     /**
@@ -155,9 +137,6 @@ public class EmailChangeService {
         }
 
         log.info("Email successfully changed for user: {} from {} to {}", username, oldEmail, newEmail);
-
-        // 確率的にクリーンアップを実行
-        maybeCleanup();
     }
 
     /**
@@ -167,71 +146,10 @@ public class EmailChangeService {
      * @throws RateLimitExceededException レート制限超過時
      */
     private void checkRateLimit(String username) {
-        LocalDateTime oneHourAgo = LocalDateTime.now().minusHours(1);
-        long attemptCount = attemptRepository.countByUsernameAndAttemptTimeSince(
-                username, oneHourAgo);
-
-        if (attemptCount >= maxAttemptsPerHour) {
+        if (!emailChangeRateLimiter.tryAcquire(username)) {
             log.warn("Rate limit exceeded for user: {}", username);
             throw new RateLimitExceededException(
                     "メールアドレス変更の試行回数が上限に達しました。1時間後に再試行してください");
         }
     }
-
-    /**
-     * メールアドレス変更試行を記録（独立トランザクション）
-     *
-     * @param username ユーザー名
-     */
-    private void recordAttempt(String username) {
-        try {
-            requiresNewTransactionTemplate.execute(status -> {
-                EmailChangeAttempt attempt = new EmailChangeAttempt(
-                        username, LocalDateTime.now());
-                attemptRepository.save(attempt);
-                log.debug("Email change attempt recorded for user: {}", username);
-                return null;
-            });
-        } catch (Exception e) {
-            // 試行記録の失敗はメイン処理に影響を与えない
-            log.error("Failed to record email change attempt for user: {}", username, e);
-        }
-    }
-
-    /**
-     * 期限切れトークンと古い試行記録のクリーンアップ
-     *
-     * 注意: @Scheduledは常駐アプリケーションでないと動作しないため、
-     * 手動呼び出しまたはリクエスト時の確率的クリーンアップを使用してください。
-     */
-    @Transactional
-    public void cleanupExpiredData() {
-        try {
-            LocalDateTime now = LocalDateTime.now();
-
-            // 期限切れトークン削除
-            int deletedTokens = tokenRepository.deleteExpiredTokens(now);
-
-            // 7日以上前の試行記録を削除
-            int deletedAttempts = attemptRepository.deleteOldAttempts(now.minusDays(7));
-
-            if (deletedTokens > 0 || deletedAttempts > 0) {
-                log.info("Cleaned up {} expired email change tokens and {} old attempts",
-                        deletedTokens, deletedAttempts);
-            }
-        } catch (Exception e) {
-            log.error("Failed to cleanup expired email change data", e);
-        }
-    }
-
-    /**
-     * 確率的にクリーンアップを実行
-     * リクエスト処理時に呼び出されることで、パフォーマンスへの影響を最小限に抑えつつクリーンアップを実行
-     */
-    private void maybeCleanup() {
-        if (random.nextDouble() < cleanupProbability) {
-            log.debug("Probabilistic cleanup triggered for email change tokens");
-            cleanupExpiredData();
-        }
-    }
 }
@@ -2,19 +2,26 @@ package com.sn0326.cicddemo.service;
 
 import com.sn0326.cicddemo.exception.InvalidPasswordException;
 import com.sn0326.cicddemo.repository.PasswordChangeRequirementRepository;
+import com.sn0326.cicddemo.repository.UserRepository;
 import com.sn0326.cicddemo.service.notification.SecurityNotificationService;
+import com.sn0326.cicddemo.util.BoundedTtlCache;
 import com.sn0326.cicddemo.validator.PasswordValidationResult;
 import com.sn0326.cicddemo.validator.PasswordValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.JdbcUserDetailsManager;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Collection;
+
 /**
  * 強制パスワード変更を管理するサービス
+ *
+ * リクエストごとのフィルター判定のため、ユーザーごとの要求状態をcache-ttl-secondsの間メモリ上に保持します。
+ * 同じインスタンスでの変更は即時に反映し、他のインスタンスで要求された場合も有効期限が切れた時点でDBから読み直すため、
+ * 既存のセッションも最大cache-ttl-secondsで専用ページへ誘導されます。
  */
 @Service
 public class ForcePasswordChangeService {
@@ -22,32 +29,59 @@ public class ForcePasswordChangeService {
     private static final Logger log = LoggerFactory.getLogger(ForcePasswordChangeService.class);
 
     private final PasswordChangeRequirementRepository repository;
-    private final JdbcUserDetailsManager userDetailsManager;
+    private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final PasswordValidator passwordValidator;
     private final SecurityNotificationService notificationService;
 
+    /**
+     * ユーザーごとのパスワード変更要求の有無（プロセス全体で共有）
+     * リクエストごとのフィルター判定で、有効期限内はDB問い合わせを省略するために保持する
+     */
+    private final BoundedTtlCache<String, Boolean> requirementCache;
+
     public ForcePasswordChangeService(
             PasswordChangeRequirementRepository repository,
-            JdbcUserDetailsManager userDetailsManager,
+            UserRepository userRepository,
             PasswordEncoder passwordEncoder,
             PasswordValidator passwordValidator,
-            SecurityNotificationService notificationService) {
+            SecurityNotificationService notificationService,
+            @Value("${security.force-password-change.cache-ttl-seconds:5}") long cacheTtlSeconds,
+            @Value("${security.force-password-change.cache-max-size:10000}") int cacheMaxSize) {
         this.repository = repository;
-        this.userDetailsManager = userDetailsManager;
+        this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.passwordValidator = passwordValidator;
         this.notificationService = notificationService;
+        this.requirementCache = new BoundedTtlCache<>(Duration.ofSeconds(cacheTtlSeconds), cacheMaxSize);
     }
 
     /**
-     * ユーザーがパスワード変更を要求されているかチェック
+     * ユーザーがパスワード変更を要求されているかチェック（DB参照）
+     * ログイン時に呼び出し、結果をメモリ上にも反映する
      *
      * @param username ユーザー名
      * @return パスワード変更が必要な場合true
      */
     public boolean isPasswordChangeRequired(String username) {
-        return repository.isPasswordChangeRequired(username);
+        boolean required = repository.isPasswordChangeRequired(username);
+        requirementCache.put(username, required);
+        return required;
+    }
+
+    /**
+     * ユーザーがパスワード変更を要求されているかチェック（メモリ優先）
+     * リクエストごとに呼び出されるフィルター用で、有効期限内の結果があればDBへ問い合わせない
+     *
+     * @param username ユーザー名
+     * @return パスワード変更が必要な場合true
+     */
+    public boolean isPasswordChangeFlagged(String username) {
+        Boolean cached = requirementCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+        return isPasswordChangeRequired(username);
     }
 
     /**
@@ -58,9 +92,32 @@ public class ForcePasswordChangeService {
      */
     public void requirePasswordChange(String username, String reason) {
         repository.requirePasswordChange(username);
+        requirementCache.put(username, true);
         log.info("Password change required for user: {} (reason: {})", username, reason);
     }
 
+    /**
+     * パスワード変更が必要な状態で登録済みのユーザーをメモリ上に反映する
+     * 一括登録などでDBへ直接フラグを立てた場合に呼び出す
+     *
+     * @param usernames ユーザー名
+     */
+    public void registerPasswordChangeRequired(Collection<String> usernames) {
+        for (String username : usernames) {
+            requirementCache.put(username, true);
+        }
+    }
+
+    /**
+     * パスワード変更要求が解除されたユーザーをメモリ上に反映する
+     * パスワードリセットなどでパスワード更新と同時にDBのフラグをクリアした場合に呼び出す
+     *
+     * @param username ユーザー名
+     */
+    public void unregisterPasswordChangeRequired(String username) {
+        requirementCache.put(username, false);
+    }
+
     /**
      * パスワード変更要求をクリアする
      *
@@ -68,6 +125,7 @@ public class ForcePasswordChangeService {
      */
     public void clearPasswordChangeRequirement(String username) {
         repository.clearPasswordChangeRequirement(username);
+        requirementCache.put(username, false);
         log.info("Password change requirement cleared for user: {}", username);
     }
 
@@ -87,18 +145,8 @@ public class ForcePasswordChangeService {
             throw new InvalidPasswordException(validationResult.getErrorMessage());
         }
 
-        // ユーザー情報を取得
-        UserDetails existingUser = userDetailsManager.loadUserByUsername(username);
-
-        // パスワードを更新
-        UserDetails updatedUser = User.builder()
-                .username(existingUser.getUsername())
-                .password(passwordEncoder.encode(newPassword))
-                .disabled(!existingUser.isEnabled())
-                .authorities(existingUser.getAuthorities())
-                .build();
-
-        userDetailsManager.updateUser(updatedUser);
+        // パスワードのみを更新する（キャッシュ上の古い有効/無効状態を書き戻さない）
+        userRepository.updatePassword(username, passwordEncoder.encode(newPassword));
 
         // パスワード変更要求フラグをクリア
         clearPasswordChangeRequirement(username);
@@ -1,41 +1,70 @@
 package com.sn0326.cicddemo.service;
 
-import com.sn0326.cicddemo.model.UserLogin;
 import com.sn0326.cicddemo.repository.UserLoginRepository;
+import com.sn0326.cicddemo.util.BoundedTtlCache;
+import com.sn0326.cicddemo.util.ClientIpAddressResolver;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.servlet.http.HttpServletRequest;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * ログインを管理するサービス
+ *
+ * ユーザーごとに直近2回のログイン日時をメモリ上にキャッシュし、
+ * 画面表示のたびにログイン履歴テーブルを参照しないようにします。
+ * キャッシュはログイン記録時に更新され、ミス時のみDBから読み込みます。
  */
 @Service
 public class LastLoginService {
 
     private final UserLoginRepository userLoginRepository;
+    private final AsyncLoginRecorder asyncLoginRecorder;
 
-    public LastLoginService(UserLoginRepository userLoginRepository) {
+    /**
+     * ユーザーごとの直近2回のログイン日時
+     */
+    private final BoundedTtlCache<String, LoginTimes> loginTimesCache;
+
+    public LastLoginService(UserLoginRepository userLoginRepository,
+                            AsyncLoginRecorder asyncLoginRecorder,
+                            @Value("${security.login-history.cache-ttl-minutes:10}") long cacheTtlMinutes,
+                            @Value("${security.login-history.cache-max-size:10000}") int cacheMaxSize) {
         this.userLoginRepository = userLoginRepository;
+        this.asyncLoginRecorder = asyncLoginRecorder;
+        this.loginTimesCache = new BoundedTtlCache<>(Duration.ofMinutes(cacheTtlMinutes), cacheMaxSize);
     }
 
     /**
      * ログインを記録する
+     * DBへの書き込みは非同期に行われるため、ログイン処理を待たせない
      *
      * @param username ユーザー名
-     * @param loginMethod ログイン方式 ("FORM" or "OIDC")
+     * @param loginMethod ログイン方式 ("FORM", "OIDC" or "PASSKEY")
      * @param oidcProvider OIDCプロバイダー名（OIDCの場合のみ）
      * @param request HTTPリクエスト（IP、User-Agent取得用）
+     * @return 記録したログイン（不審なログインの検知等に渡す）
      */
-    @Transactional
-    public void recordLogin(String username, String loginMethod, String oidcProvider, HttpServletRequest request) {
-        String ipAddress = getClientIpAddress(request);
+    public AsyncLoginRecorder.LoginRecord recordLogin(String username, String loginMethod, String oidcProvider,
+                                                      HttpServletRequest request) {
+        String ipAddress = ClientIpAddressResolver.resolve(request);
+        String trustedIpAddress = ClientIpAddressResolver.resolveTrusted(request);
         String userAgent = request.getHeader("User-Agent");
 
-        UserLogin userLogin = new UserLogin(username, loginMethod, oidcProvider, ipAddress, userAgent);
-        userLoginRepository.save(userLogin);
+        // DBのTIMESTAMP精度（マイクロ秒）に揃え、キャッシュとDBの値を一致させる
+        LocalDateTime loggedInAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+
+        AsyncLoginRecorder.LoginRecord record = new AsyncLoginRecorder.LoginRecord(
+                username, loggedInAt, loginMethod, oidcProvider, ipAddress, trustedIpAddress, userAgent);
+        asyncLoginRecorder.enqueue(record);
+
+        updateCache(username, loggedInAt);
+        return record;
     }
 
     /**
@@ -45,9 +74,15 @@ public class LastLoginService {
      * @return 前回ログイン日時（存在しない場合はOptional.empty()）
      */
     public Optional<LocalDateTime> getLastLogin(String username) {
+        LoginTimes cached = loginTimesCache.get(username);
+        if (cached != null && cached.previousKnown()) {
+            return Optional.ofNullable(cached.previous());
+        }
+
         try {
-            LocalDateTime lastLogin = userLoginRepository.findLastLoginTime(username);
-            return Optional.ofNullable(lastLogin);
+            LoginTimes loaded = loadFromDatabase(username, cached);
+            loginTimesCache.put(username, loaded);
+            return Optional.ofNullable(loaded.previous());
         } catch (Exception e) {
             // データが存在しない場合
             return Optional.empty();
@@ -55,15 +90,36 @@ public class LastLoginService {
     }
 
     /**
-     * クライアントのIPアドレスを取得する
-     * プロキシ経由の場合はX-Forwarded-Forヘッダーを確認
+     * ログイン記録時にキャッシュを更新する
+     * 有効なエントリがあれば1つずらし、なければ前回ログイン日時を未確定として登録する
      */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            // X-Forwarded-Forには複数のIPが含まれる場合があるため、最初のIPを取得
-            return xForwardedFor.split(",")[0].trim();
+    private void updateCache(String username, LocalDateTime loggedInAt) {
+        loginTimesCache.compute(username, existing -> existing != null
+                ? new LoginTimes(loggedInAt, existing.latest(), true)
+                : new LoginTimes(loggedInAt, null, false));
+    }
+
+    /**
+     * DBから直近2回のログイン日時を読み込む
+     * キャッシュ済みの最新ログインがまだ非同期書き込み待ちの場合は、DB上の最新が前回ログインとなる
+     *
+     * @param cached 前回ログイン日時が未確定のエントリ（なければnull）
+     */
+    private LoginTimes loadFromDatabase(String username, LoginTimes cached) {
+        List<LocalDateTime> recent = userLoginRepository.findRecentLoginTimes(username);
+        LocalDateTime first = recent.size() > 0 ? recent.get(0) : null;
+        LocalDateTime second = recent.size() > 1 ? recent.get(1) : null;
+
+        if (cached != null && !cached.latest().equals(first)) {
+            return new LoginTimes(cached.latest(), first, true);
         }
-        return request.getRemoteAddr();
+        return new LoginTimes(first, second, true);
+    }
+
+    /**
+     * 直近2回のログイン日時
+     * previousKnownがfalseの場合、前回ログイン日時はまだDBから読み込まれていない
+     */
+    private record LoginTimes(LocalDateTime latest, LocalDateTime previous, boolean previousKnown) {
     }
 }
@@ -0,0 +1,159 @@
+package com.sn0326.cicddemo.service;
+
+import com.sn0326.cicddemo.dto.LoginHistoryCriteria;
+import com.sn0326.cicddemo.dto.LoginHistoryEntry;
+import com.sn0326.cicddemo.dto.LoginHistoryPage;
+import com.sn0326.cicddemo.exception.ResourceNotFoundException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.provisioning.JdbcUserDetailsManager;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * ログイン履歴を取得するサービス
+ *
+ * 成功したログインを新しい順に、(logged_in_at, id) のキーセットでページングします。
+ * OFFSETを使わないため、履歴の長いユーザーでも後ろのページの取得コストが増えません。
+ * カーソルの日時を上限条件にも使うため、(username, logged_in_at) のインデックスで範囲走査でき、
+ * カーソルより新しい月のパーティションは参照しません。
+ */
+@Service
+public class LoginHistoryService {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcUserDetailsManager userDetailsManager;
+
+    public LoginHistoryService(JdbcTemplate jdbcTemplate, JdbcUserDetailsManager userDetailsManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userDetailsManager = userDetailsManager;
+    }
+
+    /**
+     * ユーザーのログイン履歴を1ページ分取得
+     *
+     * @param username ユーザー名
+     * @param criteria 検索条件（カーソル、件数、絞り込み条件）
+     * @return ログイン履歴のページ
+     */
+    public LoginHistoryPage findLoginHistory(String username, LoginHistoryCriteria criteria) {
+        int size = criteria.getSize() == null ? DEFAULT_PAGE_SIZE
+                : Math.clamp(criteria.getSize(), 1, MAX_PAGE_SIZE);
+
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, logged_in_at, login_method, oidc_provider, ip_address, user_agent " +
+                "FROM user_logins WHERE username = ? AND success = true");
+        List<Object> params = new ArrayList<>();
+        params.add(username);
+
+        if (criteria.getBefore() != null && !criteria.getBefore().isEmpty()) {
+            Cursor cursor = Cursor.decode(criteria.getBefore());
+            Timestamp cursorTime = Timestamp.valueOf(cursor.loggedInAt());
+            // 単独の上限条件はインデックスの範囲走査とパーティションの除外に使われる
+            sql.append(" AND logged_in_at <= ? AND (logged_in_at, id) < (?, ?)");
+            params.add(cursorTime);
+            params.add(cursorTime);
+            params.add(cursor.id());
+        }
+        if (criteria.getLoginMethod() != null && !criteria.getLoginMethod().isEmpty()) {
+            sql.append(" AND login_method = ?");
+            params.add(criteria.getLoginMethod().toUpperCase());
+        }
+        if (criteria.getOidcProvider() != null && !criteria.getOidcProvider().isEmpty()) {
+            sql.append(" AND oidc_provider = ?");
+            params.add(criteria.getOidcProvider().toLowerCase());
+        }
+        LocalDateTime from = parseDateTime(criteria.getFrom());
+        if (from != null) {
+            sql.append(" AND logged_in_at >= ?");
+            params.add(Timestamp.valueOf(from));
+        }
+        LocalDateTime to = parseDateTime(criteria.getTo());
+        if (to != null) {
+            sql.append(" AND logged_in_at < ?");
+            params.add(Timestamp.valueOf(to));
+        }
+        sql.append(" ORDER BY logged_in_at DESC, id DESC LIMIT ?");
+        params.add(size + 1);
+
+        List<Long> ids = new ArrayList<>();
+        List<LoginHistoryEntry> entries = new ArrayList<>(jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            ids.add(rs.getLong("id"));
+            return new LoginHistoryEntry(
+                    rs.getTimestamp("logged_in_at").toLocalDateTime(),
+                    rs.getString("login_method"),
+                    rs.getString("oidc_provider"),
+                    rs.getString("ip_address"),
+                    rs.getString("user_agent"));
+        }, params.toArray()));
+
+        String nextCursor = null;
+        if (entries.size() > size) {
+            entries.remove(entries.size() - 1);
+            LoginHistoryEntry last = entries.get(entries.size() - 1);
+            nextCursor = new Cursor(last.getLoggedInAt(), ids.get(entries.size() - 1)).encode();
+        }
+        return new LoginHistoryPage(entries, nextCursor, size);
+    }
+
+    /**
+     * 管理者向け：指定ユーザーのログイン履歴を1ページ分取得
+     *
+     * @throws ResourceNotFoundException ユーザーが存在しない場合
+     */
+    public LoginHistoryPage findLoginHistoryForAdmin(String username, LoginHistoryCriteria criteria) {
+        if (!userDetailsManager.userExists(username)) {
+            throw new ResourceNotFoundException("ユーザー", username);
+        }
+        return findLoginHistory(username, criteria);
+    }
+
+    /**
+     * 日時（2026-01-01T00:00:00）または日付（2026-01-01）を解析
+     *
+     * @throws IllegalArgumentException 形式が不正な場合
+     */
+    private static LocalDateTime parseDateTime(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return value.contains("T") ? LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("日時の形式が不正です: " + value, e);
+        }
+    }
+
+    /**
+     * ページングのカーソル
+     * 直前のページの最後の行の (logged_in_at, id) をURLセーフなBase64で表す
+     */
+    private record Cursor(LocalDateTime loggedInAt, long id) {
+
+        String encode() {
+            String raw = loggedInAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("カーソルが不正です: " + value, e);
+            }
+        }
+    }
+}
@@ -1,21 +1,35 @@
 package com.sn0326.cicddemo.service;
 
 import com.sn0326.cicddemo.dto.OidcConnectionInfo;
+import com.sn0326.cicddemo.dto.UserOidcConnections;
 import com.sn0326.cicddemo.exception.ResourceNotFoundException;
 import com.sn0326.cicddemo.exception.UserValidationException;
 import com.sn0326.cicddemo.model.OidcProvider;
 import com.sn0326.cicddemo.model.UserOidcConnection;
 import com.sn0326.cicddemo.repository.UserOidcConnectionRepository;
+import com.sn0326.cicddemo.util.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.provisioning.JdbcUserDetailsManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
  * OIDC連携を管理するサービス
+ *
+ * OIDCログインのたびに参照されるプロバイダーID→ユーザー名の対応をメモリ上にキャッシュします。
+ * 連携の作成・更新・無効化・削除時には、コミット後にも該当するエントリを削除し、
+ * コミット前に他のスレッドが古い値を読み込んでキャッシュした場合も残らないようにします。
+ * 有効な連携のみをキャッシュするため、未連携のアカウントでのログイン試行はキャッシュしません。
+ *
+ * 他のインスタンスで無効化・削除された連携は、キャッシュの有効期限（既定10秒）の間ログインに使えるため、
+ * 有効期限は短く保ってください。
  */
 @Service
 public class OidcConnectionService {
@@ -23,11 +37,19 @@ public class OidcConnectionService {
     private final UserOidcConnectionRepository oidcConnectionRepository;
     private final JdbcUserDetailsManager userDetailsManager;
 
+    /**
+     * (プロバイダー, プロバイダーID) ごとのユーザー名
+     */
+    private final BoundedTtlCache<ProviderKey, String> usernameCache;
+
     public OidcConnectionService(
             UserOidcConnectionRepository oidcConnectionRepository,
-            JdbcUserDetailsManager userDetailsManager) {
+            JdbcUserDetailsManager userDetailsManager,
+            @Value("${security.oidc-connection-cache.ttl-seconds:10}") long cacheTtlSeconds,
+            @Value("${security.oidc-connection-cache.max-size:10000}") int cacheMaxSize) {
         this.oidcConnectionRepository = oidcConnectionRepository;
         this.userDetailsManager = userDetailsManager;
+        this.usernameCache = new BoundedTtlCache<>(Duration.ofSeconds(cacheTtlSeconds), cacheMaxSize);
     }
 
     /**
@@ -49,9 +71,13 @@ public class OidcConnectionService {
         Optional<UserOidcConnection> existing = oidcConnectionRepository
                 .findByUsernameAndProvider(username, provider.getValue());
 
+        // 同じプロバイダーIDが別のユーザーに対応付けられていた場合に備えて削除する
+        evictProviderId(provider.getValue(), providerId);
+
         if (existing.isPresent()) {
             // 既存連携を更新
             UserOidcConnection connection = existing.get();
+            evictProviderId(connection.getProvider(), connection.getProviderId());
             connection.setProviderId(providerId);
             connection.setEmail(email);
             connection.setEnabled(true);
@@ -70,41 +96,47 @@ public class OidcConnectionService {
 
     /**
      * プロバイダーIDからユーザー名を検索する
+     * 有効な連携はキャッシュし、以降のログインではDBを参照しない
      */
     public Optional<String> findUsernameByProviderId(OidcProvider provider, String providerId) {
-        return oidcConnectionRepository
+        ProviderKey key = new ProviderKey(provider.getValue(), providerId);
+        String cached = usernameCache.get(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<String> username = oidcConnectionRepository
                 .findByProviderAndProviderId(provider.getValue(), providerId)
                 .filter(UserOidcConnection::isEnabled)
                 .map(UserOidcConnection::getUsername);
+        username.ifPresent(value -> usernameCache.put(key, value));
+        return username;
     }
 
     /**
-     * ユーザーの連携状態を確認する
+     * ユーザーの全OIDC連携を1回のクエリで取得する
+     * 連携一覧・連携状態・プロバイダーごとの連携情報が必要な画面ではこちらを使う
      */
-    public boolean isConnected(String username, OidcProvider provider) {
-        return oidcConnectionRepository
-                .findByUsernameAndProvider(username, provider.getValue())
-                .map(UserOidcConnection::isEnabled)
-                .orElse(false);
+    public UserOidcConnections getConnections(String username) {
+        return new UserOidcConnections(oidcConnectionRepository.findByUsername(username)
+                .stream()
+                .map(this::toConnectionInfo)
+                .collect(Collectors.toList()));
     }
 
     /**
      * ユーザーの全OIDC連携を取得する
      */
     public List<OidcConnectionInfo> getUserConnections(String username) {
-        return oidcConnectionRepository.findByUsername(username)
-                .stream()
-                .map(this::toConnectionInfo)
-                .collect(Collectors.toList());
+        return getConnections(username).getConnections();
     }
 
     /**
-     * 特定のOIDC連携を取得する
+     * ユーザーの連携をキャッシュから削除する（ユーザー削除時など、連携が外部で削除される場合）
      */
-    public Optional<OidcConnectionInfo> getConnection(String username, OidcProvider provider) {
-        return oidcConnectionRepository
-                .findByUsernameAndProvider(username, provider.getValue())
-                .map(this::toConnectionInfo);
+    public void evictUser(String username) {
+        usernameCache.removeIf(username::equals);
+        afterCommit(() -> usernameCache.removeIf(username::equals));
     }
 
     /**
@@ -118,6 +150,7 @@ public class OidcConnectionService {
 
         connection.setEnabled(false);
         oidcConnectionRepository.save(connection);
+        evictProviderId(connection.getProvider(), connection.getProviderId());
     }
 
     /**
@@ -130,6 +163,27 @@ public class OidcConnectionService {
                 .orElseThrow(() -> new ResourceNotFoundException("連携が見つかりません"));
 
         oidcConnectionRepository.delete(connection);
+        evictProviderId(connection.getProvider(), connection.getProviderId());
+    }
+
+    /**
+     * キャッシュから削除する（トランザクション内の場合はコミット後にも削除する）
+     */
+    private void evictProviderId(String provider, String providerId) {
+        ProviderKey key = new ProviderKey(provider, providerId);
+        usernameCache.remove(key);
+        afterCommit(() -> usernameCache.remove(key));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
     }
 
     /**
@@ -144,4 +198,7 @@ public class OidcConnectionService {
                 connection.getCreatedAt()
         );
     }
+
+    private record ProviderKey(String provider, String providerId) {
+    }
 }
@@ -5,9 +5,11 @@ import com.sn0326.cicddemo.repository.UserPasskeyBindingRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
 import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
 import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
 import org.springframework.security.web.webauthn.management.PublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,6 +26,7 @@ public class PasskeyService {
 
     private final UserPasskeyBindingRepository userPasskeyBindingRepository;
     private final PublicKeyCredentialUserEntityRepository userEntityRepository;
+    private final UserCredentialRepository userCredentialRepository;
 
     /**
      * ユーザーのパスキー登録を開始
@@ -114,10 +117,16 @@ public class PasskeyService {
 
         var bindings = userPasskeyBindingRepository.findByUsername(username);
         for (UserPasskeyBinding binding : bindings) {
+            Bytes userEntityId = Bytes.fromBase64(binding.getUserEntityId());
             // 先に紐付け情報を削除
             userPasskeyBindingRepository.delete(binding);
-            // その後、パスキーエンティティを削除（CASCADE削除でクレデンシャルも削除される）
-            userEntityRepository.delete(Bytes.fromBase64(binding.getUserEntityId()));
+            // クレデンシャルはリポジトリ経由で削除し、キャッシュからも取り除く
+            // （エンティティのCASCADE削除に任せると、キャッシュ済みのクレデンシャルで認証できてしまう）
+            for (CredentialRecord credential : userCredentialRepository.findByUserId(userEntityId)) {
+                userCredentialRepository.delete(credential.getCredentialId());
+            }
+            // その後、パスキーエンティティを削除
+            userEntityRepository.delete(userEntityId);
         }
 
         log.info("パスキー削除完了: username={}", username);
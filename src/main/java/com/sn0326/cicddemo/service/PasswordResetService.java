@@ -2,12 +2,11 @@ package com.sn0326.cicddemo.service;
 
 import com.sn0326.cicddemo.exception.InvalidTokenException;
 import com.sn0326.cicddemo.exception.RateLimitExceededException;
-import com.sn0326.cicddemo.model.PasswordResetAttempt;
 import com.sn0326.cicddemo.model.PasswordResetToken;
-import com.sn0326.cicddemo.repository.PasswordResetAttemptRepository;
 import com.sn0326.cicddemo.repository.PasswordResetTokenRepository;
 import com.sn0326.cicddemo.repository.UserRepository;
 import com.sn0326.cicddemo.service.notification.SecurityNotificationService;
+import com.sn0326.cicddemo.service.ratelimit.RateLimiter;
 import com.sn0326.cicddemo.util.TokenGenerator;
 import com.sn0326.cicddemo.validator.PasswordValidator;
 import lombok.RequiredArgsConstructor;
@@ -19,10 +18,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.JdbcUserDetailsManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
-import java.util.Random;
 
 /**
  * パスワードリセット機能を提供するサービス
@@ -35,29 +32,21 @@ import java.util.Random;
 public class PasswordResetService {
 
     private final PasswordResetTokenRepository tokenRepository;
-    private final PasswordResetAttemptRepository attemptRepository;
     private final UserRepository userRepository;
     private final TokenGenerator tokenGenerator;
     private final PasswordEncoder passwordEncoder;
     private final PasswordValidator passwordValidator;
     private final SecurityNotificationService notificationService;
     private final JdbcUserDetailsManager userDetailsManager;
-    private final TransactionTemplate requiresNewTransactionTemplate;
+    private final RateLimiter passwordResetRateLimiter;
+    private final ForcePasswordChangeService forcePasswordChangeService;
 
     @Value("${security.password-reset.token-expiry-minutes:30}")
     private int tokenExpiryMinutes;
 
-    @Value("${security.password-reset.max-attempts-per-hour:5}")
-    private int maxAttemptsPerHour;
-
     @Value("${app.base-url:http://localhost:8080}")
     private String baseUrl;
 
-    private final Random random = new Random();
-
-    @Value("${security.password-reset.cleanup-probability:0.1}")
-    private double cleanupProbability;
-
     /**
      * パスワードリセット申請
      *
@@ -65,13 +54,9 @@ public class PasswordResetService {
      * @throws RateLimitExceededException レート制限超過時
      */
     public void requestPasswordReset(String username) {
-        // レート制限チェック
+        // レート制限チェック（セキュリティのため、ユーザー存在有無に関わらず許可した試行を記録する）
         checkRateLimit(username);
 
-        // 試行記録（独立トランザクション、セキュリティのため、ユーザー存在有無に関わらず記録）
-        // TransactionTemplateを使用することで、サービス間の直接呼び出しを避ける（TERASOLUNAガイドライン準拠）
-        recordAttempt(username);
-
         // ユーザー存在確認（存在しなくてもエラーを出さない - ユーザー名列挙攻撃対策）
         UserDetails userDetails;
         try {
@@ -112,9 +97,6 @@ public class PasswordResetService {
                 username, email, resetUrl, tokenExpiryMinutes);
 
         log.info("Password reset token generated for user: {}", username);
-
-        // 確率的にクリーンアップを実行
-        maybeCleanup();
     }
 
     /**
@@ -167,6 +149,7 @@ public class PasswordResetService {
         // パスワード更新
         String encodedPassword = passwordEncoder.encode(newPassword);
         userRepository.updatePasswordAndClearMustChangeFlag(username, encodedPassword);
+        forcePasswordChangeService.unregisterPasswordChangeRequired(username);
 
         // トークンを使用済みにマーク
         token.setUsedAt(LocalDateTime.now());
@@ -179,9 +162,6 @@ public class PasswordResetService {
         }
 
         log.info("Password successfully reset for user: {}", username);
-
-        // 確率的にクリーンアップを実行
-        maybeCleanup();
     }
 
     /**
@@ -191,77 +171,10 @@ public class PasswordResetService {
      * @throws RateLimitExceededException レート制限超過時
      */
     private void checkRateLimit(String username) {
-        LocalDateTime oneHourAgo = LocalDateTime.now().minusHours(1);
-        long attemptCount = attemptRepository.countByUsernameAndAttemptTimeSince(
-                username, oneHourAgo);
-
-        if (attemptCount >= maxAttemptsPerHour) {
+        if (!passwordResetRateLimiter.tryAcquire(username)) {
             log.warn("Rate limit exceeded for user: {}", username);
             throw new RateLimitExceededException(
                     "パスワードリセットの試行回数が上限に達しました。1時間後に再試行してください");
         }
     }
-
-    /**
-     * パスワードリセット試行を記録（独立トランザクション）
-     *
-     * TransactionTemplateを使用してREQUIRES_NEWトランザクションで実行します。
-     * これにより、メイン処理のトランザクションとは独立して記録が保存されます。
-     *
-     * TERASOLUNAガイドラインに従い、サービス間の直接呼び出しを避け、
-     * プログラマティックなトランザクション制御を使用しています。
-     *
-     * @param username ユーザー名
-     */
-    private void recordAttempt(String username) {
-        try {
-            requiresNewTransactionTemplate.execute(status -> {
-                PasswordResetAttempt attempt = new PasswordResetAttempt(
-                        username, LocalDateTime.now());
-                attemptRepository.save(attempt);
-                log.debug("Password reset attempt recorded for user: {}", username);
-                return null;
-            });
-        } catch (Exception e) {
-            // 試行記録の失敗はメイン処理に影響を与えない
-            log.error("Failed to record password reset attempt for user: {}", username, e);
-        }
-    }
-
-    /**
-     * 期限切れトークンと古い試行記録のクリーンアップ
-     *
-     * 注意: @Scheduledは常駐アプリケーションでないと動作しないため、
-     * 手動呼び出しまたはリクエスト時の確率的クリーンアップを使用してください。
-     */
-    @Transactional
-    public void cleanupExpiredData() {
-        try {
-            LocalDateTime now = LocalDateTime.now();
-
-            // 期限切れトークン削除
-            int deletedTokens = tokenRepository.deleteExpiredTokens(now);
-
-            // 7日以上前の試行記録を削除
-            int deletedAttempts = attemptRepository.deleteOldAttempts(now.minusDays(7));
-
-            if (deletedTokens > 0 || deletedAttempts > 0) {
-                log.info("Cleaned up {} expired password reset tokens and {} old attempts",
-                        deletedTokens, deletedAttempts);
-            }
-        } catch (Exception e) {
-            log.error("Failed to cleanup expired password reset data", e);
-        }
-    }
-
-    /**
-     * 確率的にクリーンアップを実行
-     * リクエスト処理時に呼び出されることで、パフォーマンスへの影響を最小限に抑えつつクリーンアップを実行
-     */
-    private void maybeCleanup() {
-        if (random.nextDouble() < cleanupProbability) {
-            log.debug("Probabilistic cleanup triggered for password reset tokens");
-            cleanupExpiredData();
-        }
-    }
 }
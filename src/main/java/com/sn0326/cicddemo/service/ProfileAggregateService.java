@@ -0,0 +1,213 @@
+package com.sn0326.cicddemo.service;
+
+import com.sn0326.cicddemo.dto.ProfileSummary;
+import com.sn0326.cicddemo.dto.UserOidcConnections;
+import com.sn0326.cicddemo.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * プロフィールページの表示に必要な情報をまとめて取得するサービス
+ *
+ * 前回ログイン日時・OIDC連携・メールアドレス・パスキー登録状態は互いに独立しているため、
+ * 仮想スレッドで同時に取得し、ページの応答時間を各取得時間の合計ではなく最も遅い1件に抑えます。
+ * 各取得はリクエストごとの期限（load-timeout-ms）内に終わらなければ取り消し、
+ * その項目のみを「取得できなかった」としてページを表示します。
+ *
+ * 各取得はDB接続を1つ使うため、同時に取得するページの数をmax-concurrent-pages（全リクエスト合計）に制限し、
+ * プロフィールページへのアクセスが集中しても接続プールを使い切らないようにします。
+ * 1ページ分（LOADS_PER_PAGE件）の枠はまとめて確保し、空きがなければ待たずに
+ * リクエストスレッドで1件ずつ順に取得します（項目は欠落させず、使う接続は通常のリクエストと同じ1つ。
+ * 期限による取り消しは行わず、クエリのタイムアウトのみを適用します）。
+ * 取り消しによる割り込みではPostgreSQLのクエリは止まらないため、各取得は読み取り専用トランザクションで実行し、
+ * 期限を秒単位に切り上げたタイムアウトをクエリに設定して、取り消した取得が接続を持ち続けないようにします。
+ */
+@Service
+public class ProfileAggregateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProfileAggregateService.class);
+
+    /** 1ページで同時に取得する項目数（前回ログイン日時・OIDC連携・メールアドレス・パスキー） */
+    private static final int LOADS_PER_PAGE = 4;
+
+    private final LastLoginService lastLoginService;
+    private final OidcConnectionService oidcConnectionService;
+    private final UserRepository userRepository;
+    private final PasskeyService passkeyService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.profile.load-timeout-ms:500}")
+    private long loadTimeoutMillis;
+
+    @Value("${app.profile.max-concurrent-pages:1}")
+    private int maxConcurrentPages;
+
+    private ExecutorService loaderExecutor;
+    private Semaphore loadPermits;
+    private TransactionTemplate loaderTransactionTemplate;
+
+    private final LongAdder unavailableCount = new LongAdder();
+    private final LongAdder sequentialLoadCount = new LongAdder();
+
+    public ProfileAggregateService(LastLoginService lastLoginService,
+                                   OidcConnectionService oidcConnectionService,
+                                   UserRepository userRepository,
+                                   PasskeyService passkeyService,
+                                   PlatformTransactionManager transactionManager) {
+        this.lastLoginService = lastLoginService;
+        this.oidcConnectionService = oidcConnectionService;
+        this.userRepository = userRepository;
+        this.passkeyService = passkeyService;
+        this.transactionManager = transactionManager;
+    }
+
+    @PostConstruct
+    public void start() {
+        loaderExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        loadPermits = new Semaphore(LOADS_PER_PAGE * Math.max(1, maxConcurrentPages));
+
+        // トランザクションのタイムアウトはJdbcTemplateのクエリのタイムアウトとしても設定される
+        loaderTransactionTemplate = new TransactionTemplate(transactionManager);
+        loaderTransactionTemplate.setReadOnly(true);
+        loaderTransactionTemplate.setTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(loadTimeoutMillis + 999)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loaderExecutor.close();
+    }
+
+    /**
+     * プロフィールページの情報を同時に取得する
+     *
+     * @param username ユーザー名
+     * @return 取得結果（期限内に取得できなかった項目はnull）
+     */
+    public ProfileSummary loadProfile(String username) {
+        // 1ページ分の枠をまとめて確保する（項目ごとに確保すると、複数のページが枠を分け合って互いに待つ）
+        boolean concurrent = loadPermits.tryAcquire(LOADS_PER_PAGE);
+        if (!concurrent) {
+            sequentialLoadCount.increment();
+            logger.debug("No free slot for concurrent profile loading, loading sequentially: username={}", username);
+        }
+        // すべての取得に同じ期限を適用する（同時に実行しているため、待ち時間は最も遅い1件分）
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(loadTimeoutMillis);
+
+        Load<Optional<LocalDateTime>> lastLogin = start(concurrent,
+                () -> lastLoginService.getLastLogin(username));
+        Load<UserOidcConnections> oidcConnections = start(concurrent,
+                () -> oidcConnectionService.getConnections(username));
+        Load<String> email = start(concurrent,
+                () -> Optional.ofNullable(userRepository.findEmailByUsername(username)).orElse(""));
+        Load<Boolean> hasPasskey = start(concurrent,
+                () -> passkeyService.hasPasskey(username));
+
+        Set<String> unavailable = new LinkedHashSet<>();
+        Optional<LocalDateTime> lastLoginResult = await(ProfileSummary.LAST_LOGIN, lastLogin, deadline, unavailable);
+        return new ProfileSummary(
+                lastLoginResult == null ? null : lastLoginResult.orElse(null),
+                await(ProfileSummary.OIDC_CONNECTIONS, oidcConnections, deadline, unavailable),
+                await(ProfileSummary.EMAIL, email, deadline, unavailable),
+                await(ProfileSummary.PASSKEY, hasPasskey, deadline, unavailable),
+                unavailable);
+    }
+
+    /**
+     * 取得できなかった項目の累計数を取得
+     */
+    public long getUnavailableCount() {
+        return unavailableCount.sum();
+    }
+
+    /**
+     * 同時に取得する代わりにリクエストスレッドで順に取得した回数を取得
+     */
+    public long getSequentialLoadCount() {
+        return sequentialLoadCount.sum();
+    }
+
+    /**
+     * 取得を開始する
+     * concurrentの場合は確保済みの枠を1つ使って仮想スレッドで取得し、終了時に枠を返す。
+     * そうでない場合はリクエストスレッドでその場で取得する
+     */
+    private <T> Load<T> start(boolean concurrent, Supplier<T> loader) {
+        if (!concurrent) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                result.complete(loaderTransactionTemplate.execute(status -> loader.get()));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+            return new Load<>(result, new AtomicBoolean(true));
+        }
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future = loaderExecutor.submit(() -> {
+            // 開始前に取り消された場合は、取り消した側が枠を返している
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                return loaderTransactionTemplate.execute(status -> loader.get());
+            } finally {
+                loadPermits.release();
+            }
+        });
+        return new Load<>(future, claimed);
+    }
+
+    /**
+     * 期限まで結果を待つ
+     * 期限切れ・エラーの場合は取得を取り消してnullを返し、項目名をunavailableに追加する
+     */
+    private <T> T await(String item, Load<T> load, long deadline, Set<String> unavailable) {
+        Future<T> future = load.future();
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Profile item '{}' did not load within {} ms", item, loadTimeoutMillis);
+        } catch (ExecutionException e) {
+            logger.warn("Failed to load profile item '{}'", item, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        future.cancel(true);
+        // 開始前に取り消した場合は取得が実行されないため、ここで枠を返す
+        if (load.claimed().compareAndSet(false, true)) {
+            loadPermits.release();
+        }
+        unavailable.add(item);
+        unavailableCount.increment();
+        return null;
+    }
+
+    /**
+     * 開始した取得
+     *
+     * @param claimed 枠を返す責任の所在が決まったか（取得の開始時、または開始前の取り消し時に設定する）
+     */
+    private record Load<T>(Future<T> future, AtomicBoolean claimed) {
+    }
+}
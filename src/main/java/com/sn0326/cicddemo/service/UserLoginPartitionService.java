@@ -0,0 +1,225 @@
+package com.sn0326.cicddemo.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ログイン履歴テーブル（user_logins）の月単位パーティションを管理するサービス
+ *
+ * - 起動時と定期実行で、当月からpremake-months先までのパーティションを作成する
+ * - デフォルトパーティションに行がある月は、パーティションを作成してその月の行を移す
+ *   （旧形式のテーブルから移行した行もここで振り分けられる）
+ * - retention-monthsより前の月のパーティションは、行単位のDELETEではなくDROP TABLEで削除する
+ *
+ * パーティション名は user_logins_pYYYYMM（例: user_logins_p202610）です。
+ * 複数インスタンスで同時に実行しないよう、トランザクション単位のアドバイザリロックを取得します。
+ */
+@Service
+public class UserLoginPartitionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserLoginPartitionService.class);
+
+    private static final String PARENT_TABLE = "user_logins";
+    private static final String DEFAULT_PARTITION = "user_logins_default";
+    private static final Pattern PARTITION_NAME = Pattern.compile("user_logins_p(\\d{6})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /** pg_advisory_xact_lockのキー（"partlog"） */
+    private static final long ADVISORY_LOCK_KEY = 0x706172746c6f67L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.login-partitions.premake-months:3}")
+    private int premakeMonths;
+
+    @Value("${app.login-partitions.retention-months:12}")
+    private int retentionMonths;
+
+    public UserLoginPartitionService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 起動時にパーティションを用意する（リクエスト受付前）
+     */
+    @PostConstruct
+    public void init() {
+        maintain();
+    }
+
+    /**
+     * パーティションの作成と保持期間を過ぎたパーティションの削除
+     */
+    @Scheduled(initialDelayString = "${app.login-partitions.maintenance-interval-ms:21600000}",
+               fixedDelayString = "${app.login-partitions.maintenance-interval-ms:21600000}")
+    public void maintain() {
+        try {
+            if (!isPartitioned()) {
+                logger.warn("user_logins is not a partitioned table, skipping partition maintenance");
+                return;
+            }
+
+            YearMonth current = YearMonth.now();
+            YearMonth oldestRetained = current.minusMonths(retentionMonths);
+
+            Set<YearMonth> existing = findPartitionMonths();
+            for (YearMonth month : monthsToCreate(current, oldestRetained, existing)) {
+                createPartition(month);
+            }
+            for (YearMonth month : existing) {
+                if (month.isBefore(oldestRetained)) {
+                    dropPartition(month);
+                }
+            }
+            purgeDefaultPartition(oldestRetained);
+        } catch (Exception e) {
+            // 失敗してもデフォルトパーティションに書き込まれるため、ログイン記録は欠落しない
+            logger.error("Failed to maintain user_logins partitions", e);
+        }
+    }
+
+    private boolean isPartitioned() {
+        String relkind = jdbcTemplate.queryForObject(
+                "SELECT (SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?))", String.class, PARENT_TABLE);
+        return "p".equals(relkind);
+    }
+
+    private Set<YearMonth> findPartitionMonths() {
+        List<String> names = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = to_regclass(?)", String.class, PARENT_TABLE);
+        Set<YearMonth> months = new TreeSet<>();
+        for (String name : names) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                months.add(YearMonth.parse(matcher.group(1), PARTITION_SUFFIX));
+            }
+        }
+        return months;
+    }
+
+    /**
+     * 作成するパーティションの月
+     * 当月からpremake-months先まで、およびデフォルトパーティションに行がある保持期間内の月
+     */
+    private Set<YearMonth> monthsToCreate(YearMonth current, YearMonth oldestRetained, Set<YearMonth> existing) {
+        Set<YearMonth> months = new TreeSet<>();
+        for (int i = 0; i <= premakeMonths; i++) {
+            months.add(current.plusMonths(i));
+        }
+        DefaultPartitionRange range = jdbcTemplate.queryForObject(
+                "SELECT MIN(logged_in_at) AS min_at, MAX(logged_in_at) AS max_at FROM " + DEFAULT_PARTITION,
+                (rs, rowNum) -> new DefaultPartitionRange(rs.getTimestamp("min_at"), rs.getTimestamp("max_at")));
+        if (range != null && range.min() != null) {
+            YearMonth from = YearMonth.from(range.min().toLocalDateTime());
+            YearMonth to = YearMonth.from(range.max().toLocalDateTime());
+            if (from.isBefore(oldestRetained)) {
+                from = oldestRetained;
+            }
+            for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+                months.add(month);
+            }
+        }
+        months.removeAll(existing);
+        return months;
+    }
+
+    /**
+     * パーティションを作成する
+     * デフォルトパーティションにその月の行がある場合は、デフォルトを一時的に切り離して行を移す
+     */
+    private void createPartition(YearMonth month) {
+        String name = partitionName(month);
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        Timestamp fromTs = Timestamp.valueOf(from.atStartOfDay());
+        Timestamp toTs = Timestamp.valueOf(to.atStartOfDay());
+        String bounds = " FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+
+        transactionTemplate.executeWithoutResult(status -> {
+            lockForMaintenance();
+            if (exists(name)) {
+                return;
+            }
+
+            Boolean hasRows = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION +
+                    " WHERE logged_in_at >= ? AND logged_in_at < ?)", Boolean.class, fromTs, toTs);
+            if (!Boolean.TRUE.equals(hasRows)) {
+                jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF " + PARENT_TABLE + bounds);
+                logger.info("Created partition {}", name);
+                return;
+            }
+
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + DEFAULT_PARTITION);
+            jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF " + PARENT_TABLE + bounds);
+            int moved = jdbcTemplate.update(
+                    "INSERT INTO " + name + " SELECT * FROM " + DEFAULT_PARTITION +
+                    " WHERE logged_in_at >= ? AND logged_in_at < ?", fromTs, toTs);
+            jdbcTemplate.update(
+                    "DELETE FROM " + DEFAULT_PARTITION + " WHERE logged_in_at >= ? AND logged_in_at < ?", fromTs, toTs);
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+            logger.info("Created partition {} and moved {} rows from {}", name, moved, DEFAULT_PARTITION);
+        });
+    }
+
+    private void dropPartition(YearMonth month) {
+        String name = partitionName(month);
+        transactionTemplate.executeWithoutResult(status -> {
+            lockForMaintenance();
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + name);
+        });
+        logger.info("Dropped partition {} (retention: {} months)", name, retentionMonths);
+    }
+
+    /**
+     * デフォルトパーティションに残った保持期間外の行を削除する
+     * 通常は旧形式のテーブルから移行した古い行のみが対象
+     */
+    private void purgeDefaultPartition(YearMonth oldestRetained) {
+        int deleted = jdbcTemplate.update(
+                "DELETE FROM " + DEFAULT_PARTITION + " WHERE logged_in_at < ?",
+                Timestamp.valueOf(oldestRetained.atDay(1).atStartOfDay()));
+        if (deleted > 0) {
+            logger.info("Deleted {} rows older than retention from {}", deleted, DEFAULT_PARTITION);
+        }
+    }
+
+    /**
+     * 他のインスタンスと同時にパーティションを変更しないよう、トランザクション終了まで待機・保持するロックを取得
+     */
+    private void lockForMaintenance() {
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + ADVISORY_LOCK_KEY + ")");
+    }
+
+    private boolean exists(String table) {
+        return Boolean.TRUE.equals(
+                jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table));
+    }
+
+    private static String partitionName(YearMonth month) {
+        return PARENT_TABLE + "_p" + month.format(PARTITION_SUFFIX);
+    }
+
+    private record DefaultPartitionRange(Timestamp min, Timestamp max) {
+    }
+}
@@ -1,39 +1,113 @@
 package com.sn0326.cicddemo.service;
 
-import com.sn0326.cicddemo.model.WeakPassword;
-import com.sn0326.cicddemo.repository.WeakPasswordRepository;
+import com.sn0326.cicddemo.service.weakpassword.WeakPasswordHashFile;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * 弱いパスワードのキャッシュサービス
  *
- * アプリケーション起動時にDBから全件読み込み、メモリにキャッシュします。
- * 定期的（1時間ごと）にキャッシュをリフレッシュします。
+ * 以下の2つの保持方式を設定（security.weak-password.store）で切り替えます。
+ * - memory: アプリケーション起動時にDBから全件読み込み、メモリにキャッシュします（既定）
+ *           リフレッシュ時はupdated_atのウォーターマーク以降に更新された行と、
+ *           deleted_atのウォーターマーク以降の削除記録（weak_password_deletions）のみを読み込み、
+ *           変更分だけをキャッシュに直接反映します（リフレッシュのたびに全件を複製・再構築しません）
+ * - mapped: ハッシュ値を昇順に並べたファイルをメモリマップし、ブルームフィルタと二分探索で照合します。
+ *           数百万件規模の漏洩パスワードリストをヒープをほぼ使わずに扱えます
+ *
+ * 定期的（既定は1時間ごと）にキャッシュをリフレッシュします。
  */
 @Service
 public class WeakPasswordCacheService {
 
     private static final Logger logger = LoggerFactory.getLogger(WeakPasswordCacheService.class);
 
-    private final WeakPasswordRepository repository;
+    private static final String STORE_MAPPED = "mapped";
+
+    private static final int FETCH_SIZE = 10000;
+
+    /**
+     * ウォーターマークより少し前から読み直す幅
+     * 更新日時の古いトランザクションが後からコミットされた場合の取りこぼしを防ぐ
+     */
+    private static final Duration WATERMARK_OVERLAP = Duration.ofMinutes(1);
+
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate requiresNewTransactionTemplate;
+
+    /**
+     * 照合用の弱いパスワード（小文字化）の集合（memory方式の場合のみ）
+     * リフレッシュ時は変更分のみをその場で追加・削除する
+     */
+    private final Set<String> passwords = ConcurrentHashMap.newKeySet();
+
+    /**
+     * IDと小文字化したパスワードの対応（更新・削除時に古いパスワードを集合から除くために使う）
+     */
+    private final Map<Long, String> passwordsById = new ConcurrentHashMap<>();
+
+    /**
+     * 読み込み済みの最新の更新日時（未読み込みの場合null）
+     */
+    private volatile Timestamp watermark;
+
+    /**
+     * 反映済みの最新の削除日時
+     */
+    private volatile Timestamp deletionWatermark;
+
+    /**
+     * メモリマップされたハッシュファイル（mapped方式の場合のみ）
+     */
+    private volatile WeakPasswordHashFile hashFile;
 
     /**
-     * 弱いパスワードのキャッシュ（小文字で保存）
-     * ConcurrentHashMapのkeySetを使用してスレッドセーフを確保
+     * ハッシュファイル作成時のweak_passwordsテーブルの状態（最終更新日時と最終削除日時）
      */
-    private Set<String> cachedPasswords;
+    private volatile String builtTableSignature;
+
+    @Value("${security.weak-password.store:memory}")
+    private String store;
+
+    @Value("${security.weak-password.mapped.file:data/weak-passwords.idx}")
+    private Path hashFilePath;
+
+    @Value("${security.weak-password.mapped.import-file:}")
+    private String importFile;
+
+    @Value("${security.weak-password.mapped.false-positive-rate:0.01}")
+    private double falsePositiveRate;
 
-    public WeakPasswordCacheService(WeakPasswordRepository repository) {
-        this.repository = repository;
-        this.cachedPasswords = ConcurrentHashMap.newKeySet();
+    @Value("${security.weak-password.mapped.rebuild-from-database:true}")
+    private boolean rebuildFromDatabase;
+
+    public WeakPasswordCacheService(JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate requiresNewTransactionTemplate) {
+        this.requiresNewTransactionTemplate = requiresNewTransactionTemplate;
+
+        // 大量件数を一度にメモリへ載せないよう、カーソルで少しずつ取得する
+        this.streamingJdbcTemplate = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+        this.streamingJdbcTemplate.setFetchSize(FETCH_SIZE);
     }
 
     /**
@@ -41,26 +115,29 @@ public class WeakPasswordCacheService {
      */
     @PostConstruct
     public void init() {
+        if (isMappedStore()) {
+            initHashFile();
+            return;
+        }
         refreshCache();
-        logger.info("弱いパスワードキャッシュを初期化しました: {} 件", cachedPasswords.size());
+        logger.info("弱いパスワードキャッシュを初期化しました: {} 件", passwords.size());
     }
 
     /**
-     * 定期的にキャッシュをリフレッシュ（1時間ごと）
+     * 定期的にキャッシュをリフレッシュ
      */
-    @Scheduled(fixedRate = 3600000)
-    public void refreshCache() {
+    @Scheduled(fixedRateString = "${security.weak-password.refresh-interval-ms:3600000}")
+    public synchronized void refreshCache() {
+        if (isMappedStore()) {
+            refreshHashFile();
+            return;
+        }
         try {
-            Set<String> newCache = repository.findAll()
-                .stream()
-                .map(WeakPassword::getPassword)
-                .map(String::toLowerCase)
-                .collect(Collectors.toSet());
-
-            cachedPasswords = ConcurrentHashMap.newKeySet();
-            cachedPasswords.addAll(newCache);
-
-            logger.debug("弱いパスワードキャッシュをリフレッシュしました: {} 件", cachedPasswords.size());
+            if (watermark == null) {
+                loadAll();
+            } else {
+                loadChanges();
+            }
         } catch (Exception e) {
             logger.error("弱いパスワードキャッシュのリフレッシュに失敗しました", e);
         }
@@ -76,13 +153,202 @@ public class WeakPasswordCacheService {
         if (password == null || password.isEmpty()) {
             return false;
         }
-        return cachedPasswords.contains(password.toLowerCase());
+        if (isMappedStore()) {
+            WeakPasswordHashFile current = hashFile;
+            return current != null && current.contains(password);
+        }
+        return passwords.contains(password.toLowerCase());
     }
 
     /**
      * キャッシュされているパスワード数を取得（デバッグ用）
      */
     public int getCacheSize() {
-        return cachedPasswords.size();
+        if (isMappedStore()) {
+            WeakPasswordHashFile current = hashFile;
+            return current != null ? (int) Math.min(current.size(), Integer.MAX_VALUE) : 0;
+        }
+        return passwords.size();
+    }
+
+    /**
+     * ハッシュファイルをweak_passwordsテーブル（と取り込みファイル）から作り直し、差し替える
+     * 作成中も既存のハッシュファイルで照合を続ける
+     */
+    public synchronized void rebuildHashFile() throws IOException {
+        long start = System.currentTimeMillis();
+        String signature = rebuildFromDatabase ? readTableSignature() : null;
+
+        WeakPasswordHashFile.Builder builder = new WeakPasswordHashFile.Builder();
+        if (rebuildFromDatabase) {
+            requiresNewTransactionTemplate.executeWithoutResult(status ->
+                    streamingJdbcTemplate.query("SELECT password FROM weak_passwords",
+                            rs -> { builder.add(rs.getString(1)); }));
+        }
+        if (!importFile.isBlank()) {
+            try (BufferedReader reader = Files.newBufferedReader(Path.of(importFile), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    builder.add(line.strip());
+                }
+            }
+        }
+
+        long count = builder.writeTo(hashFilePath, falsePositiveRate);
+        hashFile = WeakPasswordHashFile.open(hashFilePath);
+        builtTableSignature = signature;
+        logger.info("弱いパスワードのハッシュファイルを作成しました: {} 件, {} ms, file={}",
+                count, System.currentTimeMillis() - start, hashFilePath.toAbsolutePath());
+    }
+
+    /**
+     * weak_passwordsテーブルを全件読み込み、キャッシュを作成する
+     */
+    private void loadAll() {
+        // 読み込み中の削除を次回のリフレッシュで反映できるよう、削除のウォーターマークを先に取得する
+        Timestamp loadedDeletionWatermark = later(new Timestamp(0), streamingJdbcTemplate.queryForObject(
+                "SELECT MAX(deleted_at) FROM weak_password_deletions", Timestamp.class));
+        Timestamp[] loadedWatermark = {new Timestamp(0)};
+        requiresNewTransactionTemplate.executeWithoutResult(status ->
+                streamingJdbcTemplate.query(
+                        "SELECT id, password, updated_at FROM weak_passwords",
+                        rs -> {
+                            String password = rs.getString(2).toLowerCase();
+                            passwordsById.put(rs.getLong(1), password);
+                            passwords.add(password);
+                            loadedWatermark[0] = later(loadedWatermark[0], rs.getTimestamp(3));
+                        }));
+        deletionWatermark = loadedDeletionWatermark;
+        watermark = loadedWatermark[0];
+    }
+
+    /**
+     * ウォーターマーク以降に更新された行と削除記録のみを読み込み、キャッシュに直接反映する
+     * 読み込み量・反映の手間は前回からの変更件数に比例し、テーブル全体の件数には依存しない
+     *
+     * 反映中の照合では、更新された行の古いパスワードを除いてから新しいパスワードを加えるまでの間、
+     * 一時的にどちらも含まれない場合があります。
+     */
+    private void loadChanges() {
+        Map<Long, String> changes = new HashMap<>();
+        Timestamp[] loadedWatermark = {watermark};
+        Timestamp since = new Timestamp(watermark.getTime() - WATERMARK_OVERLAP.toMillis());
+        requiresNewTransactionTemplate.executeWithoutResult(status ->
+                streamingJdbcTemplate.query(
+                        "SELECT id, password, updated_at FROM weak_passwords WHERE updated_at > ? ORDER BY updated_at",
+                        rs -> {
+                            long id = rs.getLong(1);
+                            String password = rs.getString(2).toLowerCase();
+                            if (!password.equals(passwordsById.get(id))) {
+                                changes.put(id, password);
+                            }
+                            loadedWatermark[0] = later(loadedWatermark[0], rs.getTimestamp(3));
+                        },
+                        since));
+
+        Set<Long> deletedIds = new HashSet<>();
+        Timestamp[] loadedDeletionWatermark = {deletionWatermark};
+        Timestamp deletionSince = new Timestamp(deletionWatermark.getTime() - WATERMARK_OVERLAP.toMillis());
+        streamingJdbcTemplate.query(
+                "SELECT weak_password_id, deleted_at FROM weak_password_deletions WHERE deleted_at > ?",
+                rs -> {
+                    long id = rs.getLong(1);
+                    if (passwordsById.containsKey(id) || changes.containsKey(id)) {
+                        deletedIds.add(id);
+                    }
+                    loadedDeletionWatermark[0] = later(loadedDeletionWatermark[0], rs.getTimestamp(2));
+                },
+                deletionSince);
+
+        if (!changes.isEmpty() || !deletedIds.isEmpty()) {
+            // 別のIDへ付け替えられたパスワードを消さないよう、古いパスワードをすべて除いてから加える
+            // （更新の後に削除された行もあるため、削除記録のあるIDは加えない）
+            for (Long id : changes.keySet()) {
+                removePassword(id);
+            }
+            for (Long id : deletedIds) {
+                removePassword(id);
+            }
+            changes.forEach((id, password) -> {
+                if (!deletedIds.contains(id)) {
+                    passwordsById.put(id, password);
+                    passwords.add(password);
+                }
+            });
+            logger.info("弱いパスワードキャッシュに変更を反映しました: 追加・更新 {} 件, 削除 {} 件",
+                    changes.size(), deletedIds.size());
+        }
+        watermark = loadedWatermark[0];
+        deletionWatermark = loadedDeletionWatermark[0];
+    }
+
+    private void removePassword(long id) {
+        String password = passwordsById.remove(id);
+        if (password != null) {
+            passwords.remove(password);
+        }
+    }
+
+    private static Timestamp later(Timestamp current, Timestamp candidate) {
+        return candidate != null && candidate.after(current) ? candidate : current;
+    }
+
+    private boolean isMappedStore() {
+        return STORE_MAPPED.equalsIgnoreCase(store);
+    }
+
+    /**
+     * 既存のハッシュファイルがあれば読み込み、なければ作成する
+     */
+    private void initHashFile() {
+        try {
+            if (Files.exists(hashFilePath)) {
+                hashFile = WeakPasswordHashFile.open(hashFilePath);
+                // 既存のファイルは現在のテーブルの状態で作成済みとみなし、以降の変更時のみ作り直す
+                if (rebuildFromDatabase) {
+                    builtTableSignature = readTableSignature();
+                }
+                logger.info("弱いパスワードのハッシュファイルを読み込みました: {} 件, file={}",
+                        hashFile.size(), hashFilePath.toAbsolutePath());
+            } else {
+                rebuildHashFile();
+            }
+        } catch (Exception e) {
+            logger.error("弱いパスワードのハッシュファイルの初期化に失敗しました: file={}",
+                    hashFilePath.toAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * weak_passwordsテーブルが前回の作成時から変更されている場合のみハッシュファイルを作り直す
+     */
+    private void refreshHashFile() {
+        if (!rebuildFromDatabase) {
+            return;
+        }
+        try {
+            if (hashFile != null && readTableSignature().equals(builtTableSignature)) {
+                logger.debug("weak_passwordsテーブルに変更がないため、ハッシュファイルを再作成しません");
+                return;
+            }
+            rebuildHashFile();
+        } catch (Exception e) {
+            logger.error("弱いパスワードのハッシュファイルのリフレッシュに失敗しました", e);
+        }
+    }
+
+    /**
+     * テーブルの状態を表す文字列（どちらもインデックスのみで求まり、件数に依存しない）
+     */
+    private String readTableSignature() {
+        return streamingJdbcTemplate.queryForObject(
+                "SELECT (SELECT MAX(updated_at) FROM weak_passwords), " +
+                "(SELECT MAX(deleted_at) FROM weak_password_deletions)",
+                (rs, rowNum) -> {
+                    Timestamp lastUpdated = rs.getTimestamp(1);
+                    Timestamp lastDeleted = rs.getTimestamp(2);
+                    return (lastUpdated != null ? lastUpdated.getTime() : 0) + ":"
+                            + (lastDeleted != null ? lastDeleted.getTime() : 0);
+                });
     }
 }
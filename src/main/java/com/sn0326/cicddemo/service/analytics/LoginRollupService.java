@@ -0,0 +1,214 @@
+package com.sn0326.cicddemo.service.analytics;
+
+import com.sn0326.cicddemo.dto.LoginRollupSummary;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ログイン件数の時間単位集計（login_rollups_hourly）を管理するサービス
+ *
+ * ログイン成功・失敗のたびにDBへ書き込むのではなく、(時間, 方式, プロバイダー) ごとの
+ * メモリ上のカウンターに加算し、flush-interval-msごとに加算のUPSERTでまとめて書き込みます。
+ * 複数インスタンスからの書き込みも加算されるため、集計値はインスタンス間で合算されます。
+ *
+ * ダッシュボードは集計テーブルのみを参照するため、ログイン履歴の件数に関わらず表示コストは一定です。
+ * 未書き込みの件数（最大flush-interval-ms分）は表示に含まれません。
+ *
+ * パスワードのハッシュ計算の混雑による拒否は、認証情報の誤りとは原因が異なるため
+ * 失敗件数には含めず、拒否件数として別に集計します。
+ */
+@Service
+public class LoginRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginRollupService.class);
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO login_rollups_hourly " +
+            "(bucket_start, login_method, oidc_provider, success_count, failure_count, rejected_count) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (bucket_start, login_method, oidc_provider) DO UPDATE SET " +
+            "success_count = login_rollups_hourly.success_count + EXCLUDED.success_count, " +
+            "failure_count = login_rollups_hourly.failure_count + EXCLUDED.failure_count, " +
+            "rejected_count = login_rollups_hourly.rejected_count + EXCLUDED.rejected_count";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<RollupKey, Counters> counters = new ConcurrentHashMap<>();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder failedFlushCount = new LongAdder();
+
+    public LoginRollupService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * ログイン成功を集計に加算
+     *
+     * @param loginMethod ログイン方式（FORM / OIDC / PASSKEY）
+     * @param oidcProvider OIDCプロバイダー（OIDC以外の場合はnull）
+     * @param loggedInAt ログイン日時
+     */
+    public void recordSuccess(String loginMethod, String oidcProvider, LocalDateTime loggedInAt) {
+        countersFor(loginMethod, oidcProvider, loggedInAt).success.increment();
+    }
+
+    /**
+     * ログイン失敗を集計に加算
+     *
+     * @param loginMethod ログイン方式（FORM / OIDC / PASSKEY）
+     * @param oidcProvider OIDCプロバイダー（OIDC以外の場合はnull）
+     * @param failedAt 失敗日時
+     */
+    public void recordFailure(String loginMethod, String oidcProvider, LocalDateTime failedAt) {
+        countersFor(loginMethod, oidcProvider, failedAt).failure.increment();
+    }
+
+    /**
+     * 混雑による拒否（認証情報を検証できなかったログイン）を集計に加算
+     *
+     * @param loginMethod ログイン方式（FORM / OIDC / PASSKEY）
+     * @param oidcProvider OIDCプロバイダー（OIDC以外の場合はnull）
+     * @param rejectedAt 拒否日時
+     */
+    public void recordRejection(String loginMethod, String oidcProvider, LocalDateTime rejectedAt) {
+        countersFor(loginMethod, oidcProvider, rejectedAt).rejected.increment();
+    }
+
+    /**
+     * メモリ上のカウンターを集計テーブルへ書き込む
+     * 書き込みに失敗した場合はカウンターに戻し、次回に再試行する
+     */
+    @Scheduled(initialDelayString = "${app.login-rollups.flush-interval-ms:10000}",
+               fixedDelayString = "${app.login-rollups.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        LocalDateTime staleBefore = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+        List<PendingRow> pending = new ArrayList<>();
+
+        for (Map.Entry<RollupKey, Counters> entry : counters.entrySet()) {
+            RollupKey key = entry.getKey();
+            long success = entry.getValue().success.sumThenReset();
+            long failure = entry.getValue().failure.sumThenReset();
+            long rejected = entry.getValue().rejected.sumThenReset();
+            if (success > 0 || failure > 0 || rejected > 0) {
+                pending.add(new PendingRow(key, success, failure, rejected));
+            } else if (key.bucketStart().isBefore(staleBefore)) {
+                // 過去の時間のカウンターには新たな加算はないため破棄する
+                counters.remove(key, entry.getValue());
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> args = new ArrayList<>(pending.size());
+        for (PendingRow row : pending) {
+            args.add(new Object[]{Timestamp.valueOf(row.key().bucketStart()), row.key().loginMethod(),
+                    row.key().oidcProvider(), row.success(), row.failure(), row.rejected()});
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+            flushedRows.add(pending.size());
+        } catch (Exception e) {
+            failedFlushCount.increment();
+            logger.error("Failed to flush {} login rollup rows, will retry", pending.size(), e);
+            for (PendingRow row : pending) {
+                Counters restored = counters.computeIfAbsent(row.key(), k -> new Counters());
+                restored.success.add(row.success());
+                restored.failure.add(row.failure());
+                restored.rejected.add(row.rejected());
+            }
+        }
+    }
+
+    /**
+     * シャットダウン時に未書き込みの集計を書き込む
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * 時間ごとの成功・失敗・拒否件数（全方式の合計、古い順）
+     *
+     * @param since この日時以降の時間を対象にする
+     */
+    public List<LoginRollupSummary> findHourlyTotals(LocalDateTime since) {
+        return jdbcTemplate.query(
+                "SELECT bucket_start, SUM(success_count) AS success_count, SUM(failure_count) AS failure_count, " +
+                "SUM(rejected_count) AS rejected_count " +
+                "FROM login_rollups_hourly WHERE bucket_start >= ? " +
+                "GROUP BY bucket_start ORDER BY bucket_start",
+                (rs, rowNum) -> new LoginRollupSummary(
+                        rs.getTimestamp("bucket_start").toLocalDateTime(), null, null,
+                        rs.getLong("success_count"), rs.getLong("failure_count"), rs.getLong("rejected_count")),
+                Timestamp.valueOf(since.truncatedTo(ChronoUnit.HOURS)));
+    }
+
+    /**
+     * 方式・プロバイダーごとの成功・失敗・拒否件数
+     *
+     * @param since この日時以降の時間を対象にする
+     */
+    public List<LoginRollupSummary> findMethodTotals(LocalDateTime since) {
+        return jdbcTemplate.query(
+                "SELECT login_method, oidc_provider, " +
+                "SUM(success_count) AS success_count, SUM(failure_count) AS failure_count, " +
+                "SUM(rejected_count) AS rejected_count " +
+                "FROM login_rollups_hourly WHERE bucket_start >= ? " +
+                "GROUP BY login_method, oidc_provider ORDER BY login_method, oidc_provider",
+                (rs, rowNum) -> new LoginRollupSummary(
+                        null, rs.getString("login_method"), emptyToNull(rs.getString("oidc_provider")),
+                        rs.getLong("success_count"), rs.getLong("failure_count"), rs.getLong("rejected_count")),
+                Timestamp.valueOf(since.truncatedTo(ChronoUnit.HOURS)));
+    }
+
+    /**
+     * 集計テーブルへ書き込んだ行数（UPSERT件数）を取得
+     */
+    public long getFlushedRowCount() {
+        return flushedRows.sum();
+    }
+
+    /**
+     * 書き込みに失敗した回数を取得
+     */
+    public long getFailedFlushCount() {
+        return failedFlushCount.sum();
+    }
+
+    private Counters countersFor(String loginMethod, String oidcProvider, LocalDateTime at) {
+        RollupKey key = new RollupKey(at.truncatedTo(ChronoUnit.HOURS), loginMethod,
+                oidcProvider == null ? "" : oidcProvider);
+        return counters.computeIfAbsent(key, k -> new Counters());
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private record RollupKey(LocalDateTime bucketStart, String loginMethod, String oidcProvider) {
+    }
+
+    private record PendingRow(RollupKey key, long success, long failure, long rejected) {
+    }
+
+    private static final class Counters {
+        final LongAdder success = new LongAdder();
+        final LongAdder failure = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+    }
+}
@@ -0,0 +1,32 @@
+package com.sn0326.cicddemo.service.cleanup;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * クリーンアップの実行結果
+ *
+ * @param startedAt 開始日時
+ * @param elapsedMillis 所要時間（ミリ秒）
+ * @param skipped 他のインスタンス（またはこのインスタンス）で実行中のため実行しなかった場合はtrue
+ * @param deletedRows テーブルごとの削除件数（実行順）
+ * @param failedTables 削除中にエラーとなったテーブルとエラーメッセージ
+ */
+public record CleanupReport(
+        LocalDateTime startedAt,
+        long elapsedMillis,
+        boolean skipped,
+        Map<String, Long> deletedRows,
+        Map<String, String> failedTables) {
+
+    static CleanupReport skipped(LocalDateTime startedAt) {
+        return new CleanupReport(startedAt, 0, true, Map.of(), Map.of());
+    }
+
+    /**
+     * 全テーブルの削除件数の合計
+     */
+    public long getTotalDeletedRows() {
+        return deletedRows.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
@@ -0,0 +1,217 @@
+package com.sn0326.cicddemo.service.cleanup;
+
+import com.sn0326.cicddemo.config.RememberMeProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 期限切れトークン・古い試行記録等を削除するクリーンアップサービス
+ *
+ * - 日時列の昇順に、chunk-size件ずつ削除する（1回のDELETEで長時間ロックを保持しない）
+ * - チャンクごとに前回削除した最大日時を下限にし、削除済みのインデックス範囲を再走査しない
+ * - チャンクの間にpause-msだけ待機し、他の処理への影響を抑える
+ * - PostgreSQLのアドバイザリロックで、複数インスタンスのうち1つだけが実行する
+ *
+ * 実行はアプリ内のタイマー（interval-ms）または管理者向けエンドポイントから行う。
+ * ログイン履歴（user_logins）はUserLoginPartitionServiceがパーティション単位で削除する。
+ */
+@Service
+public class CleanupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CleanupService.class);
+
+    /** pg_try_advisory_lockのキー（"cleanup"） */
+    private static final long ADVISORY_LOCK_KEY = 0x636c65616e7570L;
+
+    /** 最初のチャンクの下限 */
+    private static final Timestamp LOWEST_TIMESTAMP = Timestamp.valueOf(LocalDateTime.of(1970, 1, 1, 0, 0));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final List<CleanupTarget> targets;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${app.cleanup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cleanup.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.cleanup.pause-ms:50}")
+    private long pauseMillis;
+
+    @Value("${app.cleanup.max-chunks-per-table:1000}")
+    private int maxChunksPerTable;
+
+    private volatile CleanupReport lastReport;
+
+    public CleanupService(JdbcTemplate jdbcTemplate,
+                          RememberMeProperties rememberMeProperties,
+                          @Value("${app.cleanup.attempts-retention-days:7}") int attemptsRetentionDays,
+                          @Value("${app.cleanup.failed-authentications-retention-days:7}") int failedAuthRetentionDays,
+                          @Value("${app.cleanup.mail-outbox-retention-days:30}") int mailOutboxRetentionDays,
+                          @Value("${app.cleanup.login-rollups-retention-days:400}") int loginRollupsRetentionDays,
+                          @Value("${app.cleanup.weak-password-deletions-retention-days:7}")
+                          int weakPasswordDeletionsRetentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.targets = List.of(
+                new CleanupTarget("password_reset_tokens", "expiry_date", Duration.ZERO),
+                new CleanupTarget("email_change_tokens", "expiry_date", Duration.ZERO),
+                new CleanupTarget("password_reset_attempts", "attempt_time", Duration.ofDays(attemptsRetentionDays)),
+                new CleanupTarget("email_change_attempts", "attempt_time", Duration.ofDays(attemptsRetentionDays)),
+                new CleanupTarget("failed_authentications", "authentication_timestamp",
+                        Duration.ofDays(failedAuthRetentionDays)),
+                new CleanupTarget("persistent_logins", "last_used",
+                        Duration.ofDays(rememberMeProperties.getCleanupDays())),
+                new CleanupTarget("mail_outbox", "created_at", Duration.ofDays(mailOutboxRetentionDays),
+                        "status <> 'PENDING'"),
+                new CleanupTarget("login_rollups_hourly", "bucket_start", Duration.ofDays(loginRollupsRetentionDays)),
+                new CleanupTarget("weak_password_deletions", "deleted_at",
+                        Duration.ofDays(weakPasswordDeletionsRetentionDays)));
+    }
+
+    /**
+     * 定期実行
+     */
+    @Scheduled(initialDelayString = "${app.cleanup.initial-delay-ms:300000}",
+               fixedDelayString = "${app.cleanup.interval-ms:3600000}")
+    public void runScheduled() {
+        if (enabled) {
+            run();
+        }
+    }
+
+    /**
+     * クリーンアップを実行する
+     * 他のインスタンスで実行中の場合は何もせず、skippedの結果を返す
+     *
+     * @return 実行結果
+     */
+    public CleanupReport run() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        if (!running.compareAndSet(false, true)) {
+            logger.info("クリーンアップは既に実行中です");
+            return CleanupReport.skipped(startedAt);
+        }
+        try {
+            // アドバイザリロックはセッション単位のため、ロックの取得から解放まで同じ接続を使う
+            CleanupReport report = jdbcTemplate.execute((ConnectionCallback<CleanupReport>) connection -> {
+                JdbcTemplate session = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+                Boolean locked = session.queryForObject(
+                        "SELECT pg_try_advisory_lock(?)", Boolean.class, ADVISORY_LOCK_KEY);
+                if (!Boolean.TRUE.equals(locked)) {
+                    logger.info("他のインスタンスでクリーンアップを実行中のためスキップします");
+                    return CleanupReport.skipped(startedAt);
+                }
+                try {
+                    return cleanupAll(session, startedAt);
+                } finally {
+                    session.queryForObject("SELECT pg_advisory_unlock(?)", Boolean.class, ADVISORY_LOCK_KEY);
+                }
+            });
+            lastReport = report;
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 直近の実行結果を取得
+     */
+    public Optional<CleanupReport> getLastReport() {
+        return Optional.ofNullable(lastReport);
+    }
+
+    private CleanupReport cleanupAll(JdbcTemplate session, LocalDateTime startedAt) {
+        long start = System.currentTimeMillis();
+        Map<String, Long> deletedRows = new LinkedHashMap<>();
+        Map<String, String> failedTables = new LinkedHashMap<>();
+        for (CleanupTarget target : targets) {
+            try {
+                deletedRows.put(target.table(), cleanup(session, target));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedTables.put(target.table(), "interrupted");
+                break;
+            } catch (Exception e) {
+                // 1つのテーブルの失敗で他のテーブルのクリーンアップを止めない
+                logger.error("クリーンアップに失敗しました: table={}", target.table(), e);
+                failedTables.put(target.table(), e.getMessage());
+            }
+        }
+        CleanupReport report = new CleanupReport(
+                startedAt, System.currentTimeMillis() - start, false, deletedRows, failedTables);
+        logger.info("クリーンアップが完了しました: deleted={}, failed={}, {} ms",
+                report.deletedRows(), report.failedTables().keySet(), report.elapsedMillis());
+        return report;
+    }
+
+    /**
+     * 1テーブル分を分割して削除する
+     *
+     * @return 削除件数
+     */
+    private long cleanup(JdbcTemplate session, CleanupTarget target) throws InterruptedException {
+        String sql = deleteChunkSql(target);
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(target.retention()));
+        Timestamp lowerBound = LOWEST_TIMESTAMP;
+        long total = 0;
+
+        for (int chunk = 0; chunk < maxChunksPerTable; chunk++) {
+            ChunkResult result = session.queryForObject(sql,
+                    (rs, rowNum) -> new ChunkResult(rs.getLong("deleted"), rs.getTimestamp("last_value")),
+                    lowerBound, cutoff, chunkSize);
+            if (result == null || result.deleted() == 0) {
+                break;
+            }
+            total += result.deleted();
+            lowerBound = result.lastValue();
+            if (result.deleted() < chunkSize) {
+                break;
+            }
+            if (pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+
+        if (total > 0) {
+            logger.debug("Deleted {} rows from {} (before {})", total, target.table(), cutoff);
+        }
+        return total;
+    }
+
+    /**
+     * 1チャンク分を削除し、削除件数と削除した最大日時を返すSQL
+     * ctidで対象行を特定するため、主キーの構成に関わらず同じ形で削除できる
+     */
+    private static String deleteChunkSql(CleanupTarget target) {
+        String table = target.table();
+        String column = target.timeColumn();
+        String condition = target.condition() == null ? "" : " AND " + target.condition();
+        return "WITH deleted AS (" +
+               "  DELETE FROM " + table + " WHERE ctid = ANY (ARRAY(" +
+               "    SELECT ctid FROM " + table +
+               "    WHERE " + column + " >= ? AND " + column + " < ?" + condition +
+               "    ORDER BY " + column + " LIMIT ?))" +
+               "  RETURNING " + column +
+               ") SELECT COUNT(*) AS deleted, MAX(" + column + ") AS last_value FROM deleted";
+    }
+
+    private record ChunkResult(long deleted, Timestamp lastValue) {
+    }
+}
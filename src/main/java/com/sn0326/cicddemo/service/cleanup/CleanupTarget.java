@@ -0,0 +1,21 @@
+package com.sn0326.cicddemo.service.cleanup;
+
+import java.time.Duration;
+
+/**
+ * クリーンアップ対象のテーブル定義
+ *
+ * timeColumnがretentionより古い行を削除します。
+ * timeColumnの昇順に分割して削除するため、timeColumnにはインデックスが必要です。
+ *
+ * @param table テーブル名
+ * @param timeColumn 保持期間の判定に使う日時列
+ * @param retention 保持期間（Duration.ZEROの場合は現在時刻より前の行を削除）
+ * @param condition 追加の削除条件（不要な場合はnull）
+ */
+public record CleanupTarget(String table, String timeColumn, Duration retention, String condition) {
+
+    public CleanupTarget(String table, String timeColumn, Duration retention) {
+        this(table, timeColumn, retention, null);
+    }
+}
@@ -0,0 +1,39 @@
+package com.sn0326.cicddemo.service.export;
+
+/**
+ * エクスポート形式
+ */
+public enum ExportFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    /**
+     * 形式名（大文字小文字を区別しない）から取得
+     *
+     * @throws IllegalArgumentException 未対応の形式の場合
+     */
+    public static ExportFormat from(String name) {
+        for (ExportFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name) || format.extension.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("未対応のエクスポート形式です: " + name);
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
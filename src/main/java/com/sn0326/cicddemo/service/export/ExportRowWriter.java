@@ -0,0 +1,142 @@
+package com.sn0326.cicddemo.service.export;
+
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * エクスポートの行を1行ずつ出力するライター
+ * 行をメモリに溜めず、バッファ経由で直接出力ストリームへ書き込む
+ */
+abstract sealed class ExportRowWriter implements AutoCloseable
+        permits ExportRowWriter.Csv, ExportRowWriter.Ndjson {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final Writer writer;
+    protected final String[] columns;
+
+    private ExportRowWriter(OutputStream out, String[] columns) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.columns = columns;
+    }
+
+    static ExportRowWriter create(ExportFormat format, OutputStream out, String[] columns, JsonMapper jsonMapper)
+            throws IOException {
+        return switch (format) {
+            case CSV -> new Csv(out, columns);
+            case NDJSON -> new Ndjson(out, columns, jsonMapper);
+        };
+    }
+
+    /**
+     * 1行を出力
+     *
+     * @param values 列の値（String / Boolean / Number / null）
+     */
+    abstract void writeRow(Object[] values) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * CSV（RFC 4180）形式
+     *
+     * 表計算ソフトで開いたときに数式として実行されないよう、数式の開始文字で始まる文字列の値は
+     * 先頭に'を付けて出力する（user_agentやemailは利用者が任意の値を設定できるため）
+     */
+    static final class Csv extends ExportRowWriter {
+
+        Csv(OutputStream out, String[] columns) throws IOException {
+            super(out, columns);
+            writeRow(columns);
+        }
+
+        @Override
+        void writeRow(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (values[i] instanceof String s) {
+                    writeField(neutralizeFormula(s));
+                } else if (values[i] != null) {
+                    writeField(values[i].toString());
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        private static String neutralizeFormula(String value) {
+            if (value.isEmpty()) {
+                return value;
+            }
+            return switch (value.charAt(0)) {
+                case '=', '+', '-', '@', '\t', '\r' -> "'" + value;
+                default -> value;
+            };
+        }
+
+        private void writeField(String value) throws IOException {
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    /**
+     * NDJSON（1行1オブジェクトのJSON）形式
+     */
+    static final class Ndjson extends ExportRowWriter {
+
+        private final JsonGenerator generator;
+        private boolean empty = true;
+
+        Ndjson(OutputStream out, String[] columns, JsonMapper jsonMapper) {
+            super(out, columns);
+            this.generator = jsonMapper.writer().withRootValueSeparator("\n").createGenerator(writer);
+        }
+
+        @Override
+        void writeRow(Object[] values) {
+            generator.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                Object value = values[i];
+                if (value == null) {
+                    generator.writeNullProperty(columns[i]);
+                } else if (value instanceof Boolean b) {
+                    generator.writeBooleanProperty(columns[i], b);
+                } else if (value instanceof Long || value instanceof Integer) {
+                    generator.writeNumberProperty(columns[i], ((Number) value).longValue());
+                } else {
+                    generator.writeStringProperty(columns[i], value.toString());
+                }
+            }
+            generator.writeEndObject();
+            empty = false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.flush();
+            if (!empty) {
+                writer.write('\n');
+            }
+            super.close();
+        }
+    }
+}
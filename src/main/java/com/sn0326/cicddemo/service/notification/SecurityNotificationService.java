@@ -1,27 +1,30 @@
 package com.sn0326.cicddemo.service.notification;
 
 import com.sn0326.cicddemo.mail.MailMessage;
-import com.sn0326.cicddemo.mail.MailSender;
 import com.sn0326.cicddemo.mail.MailTemplate;
+import com.sn0326.cicddemo.mail.outbox.MailOutboxDispatcher;
 import com.sn0326.cicddemo.mail.template.MailTemplateRenderer;
+import com.sn0326.cicddemo.mail.template.TemplateVariables;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * セキュリティイベントに関する通知を行うサービス
+ * メールはアウトボックスに登録するのみで、送信はバックグラウンドで行われる
+ *
+ * アウトボックスへの登録は呼び出し元のトランザクション内で行われるため、登録に失敗した場合は例外をそのまま伝え、
+ * 業務上の変更とともにロールバックさせる（握りつぶすと、中断されたトランザクションがコミット時に別のエラーで失敗する）。
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SecurityNotificationService {
 
-    private final MailSender mailSender;
+    private final MailOutboxDispatcher notificationOutbox;
     private final MailTemplateRenderer templateRenderer;
 
     private static final DateTimeFormatter DATETIME_FORMATTER =
@@ -37,31 +40,22 @@ public class SecurityNotificationService {
      */
     public void sendPasswordResetNotification(String username, String email,
                                               String tempPassword, String resetBy) {
-        try {
-            log.info("パスワードリセット通知を送信: username={}, email={}", username, email);
+        log.info("パスワードリセット通知を送信: username={}, email={}", username, email);
 
-            Map<String, String> variables = new HashMap<>();
-            variables.put("username", username);
-            variables.put("tempPassword", tempPassword);
-            variables.put("resetBy", resetBy);
+        String body = templateRenderer.render(MailTemplate.PASSWORD_RESET,
+                new PasswordResetVariables(username, tempPassword, resetBy));
 
-            String body = templateRenderer.render(MailTemplate.PASSWORD_RESET, variables);
+        MailMessage message = MailMessage.builder()
+                .to(email)
+                .subject(MailTemplate.PASSWORD_RESET.getDefaultSubject())
+                .textBody(body)
+                .build();
 
-            MailMessage message = MailMessage.builder()
-                    .to(email)
-                    .subject(MailTemplate.PASSWORD_RESET.getDefaultSubject())
-                    .textBody(body)
-                    .build();
+        message.addMetadata("type", "password_reset");
+        message.addMetadata("username", username);
 
-            message.addMetadata("type", "password_reset");
-            message.addMetadata("username", username);
-
-            var result = mailSender.send(message);
-            log.info("パスワードリセット通知の送信成功: messageId={}", result.getMessageId());
-
-        } catch (Exception e) {
-            log.error("パスワードリセット通知の送信中にエラーが発生しました", e);
-        }
+        notificationOutbox.enqueue(message);
+        log.info("パスワードリセット通知を送信キューに登録しました");
     }
 
     /**
@@ -71,30 +65,22 @@ public class SecurityNotificationService {
      * @param email メールアドレス
      */
     public void sendPasswordChangedNotification(String username, String email) {
-        try {
-            log.info("パスワード変更通知を送信: username={}, email={}", username, email);
+        log.info("パスワード変更通知を送信: username={}, email={}", username, email);
 
-            Map<String, String> variables = new HashMap<>();
-            variables.put("username", username);
-            variables.put("changedAt", LocalDateTime.now().format(DATETIME_FORMATTER));
+        String body = templateRenderer.render(MailTemplate.PASSWORD_CHANGED,
+                new PasswordChangedVariables(username, LocalDateTime.now().format(DATETIME_FORMATTER)));
 
-            String body = templateRenderer.render(MailTemplate.PASSWORD_CHANGED, variables);
+        MailMessage message = MailMessage.builder()
+                .to(email)
+                .subject(MailTemplate.PASSWORD_CHANGED.getDefaultSubject())
+                .textBody(body)
+                .build();
 
-            MailMessage message = MailMessage.builder()
-                    .to(email)
-                    .subject(MailTemplate.PASSWORD_CHANGED.getDefaultSubject())
-                    .textBody(body)
-                    .build();
+        message.addMetadata("type", "password_changed");
+        message.addMetadata("username", username);
 
-            message.addMetadata("type", "password_changed");
-            message.addMetadata("username", username);
-
-            var result = mailSender.send(message);
-            log.info("パスワード変更通知の送信成功: messageId={}", result.getMessageId());
-
-        } catch (Exception e) {
-            log.error("パスワード変更通知の送信中にエラーが発生しました", e);
-        }
+        notificationOutbox.enqueue(message);
+        log.info("パスワード変更通知を送信キューに登録しました");
     }
 
     /**
@@ -107,33 +93,24 @@ public class SecurityNotificationService {
      */
     public void sendSuspiciousLoginNotification(String username, String email,
                                                 String ipAddress, String location) {
-        try {
-            log.info("不審なログイン通知を送信: username={}, email={}, ip={}", username, email, ipAddress);
+        log.info("不審なログイン通知を送信: username={}, email={}, ip={}", username, email, ipAddress);
 
-            Map<String, String> variables = new HashMap<>();
-            variables.put("username", username);
-            variables.put("ipAddress", ipAddress);
-            variables.put("location", location != null ? location : "不明");
-            variables.put("timestamp", LocalDateTime.now().format(DATETIME_FORMATTER));
+        String body = templateRenderer.render(MailTemplate.SUSPICIOUS_LOGIN,
+                new SuspiciousLoginVariables(username, ipAddress, location != null ? location : "不明",
+                        LocalDateTime.now().format(DATETIME_FORMATTER)));
 
-            String body = templateRenderer.render(MailTemplate.SUSPICIOUS_LOGIN, variables);
+        MailMessage message = MailMessage.builder()
+                .to(email)
+                .subject(MailTemplate.SUSPICIOUS_LOGIN.getDefaultSubject())
+                .textBody(body)
+                .build();
 
-            MailMessage message = MailMessage.builder()
-                    .to(email)
-                    .subject(MailTemplate.SUSPICIOUS_LOGIN.getDefaultSubject())
-                    .textBody(body)
-                    .build();
+        message.addMetadata("type", "suspicious_login");
+        message.addMetadata("username", username);
+        message.addMetadata("ipAddress", ipAddress);
 
-            message.addMetadata("type", "suspicious_login");
-            message.addMetadata("username", username);
-            message.addMetadata("ipAddress", ipAddress);
-
-            var result = mailSender.send(message);
-            log.info("不審なログイン通知の送信成功: messageId={}", result.getMessageId());
-
-        } catch (Exception e) {
-            log.error("不審なログイン通知の送信中にエラーが発生しました", e);
-        }
+        notificationOutbox.enqueue(message);
+        log.info("不審なログイン通知を送信キューに登録しました");
     }
 
     /**
@@ -146,31 +123,22 @@ public class SecurityNotificationService {
      */
     public void sendAccountDisabledNotification(String username, String email,
                                                 String reason, String disabledBy) {
-        try {
-            log.info("アカウント無効化通知を送信: username={}, email={}", username, email);
-
-            Map<String, String> variables = new HashMap<>();
-            variables.put("username", username);
-            variables.put("reason", reason != null ? reason : "管理者の判断により");
-            variables.put("disabledBy", disabledBy);
-
-            String body = templateRenderer.render(MailTemplate.ACCOUNT_DISABLED, variables);
+        log.info("アカウント無効化通知を送信: username={}, email={}", username, email);
 
-            MailMessage message = MailMessage.builder()
-                    .to(email)
-                    .subject(MailTemplate.ACCOUNT_DISABLED.getDefaultSubject())
-                    .textBody(body)
-                    .build();
+        String body = templateRenderer.render(MailTemplate.ACCOUNT_DISABLED,
+                new AccountDisabledVariables(username, reason != null ? reason : "管理者の判断により", disabledBy));
 
-            message.addMetadata("type", "account_disabled");
-            message.addMetadata("username", username);
+        MailMessage message = MailMessage.builder()
+                .to(email)
+                .subject(MailTemplate.ACCOUNT_DISABLED.getDefaultSubject())
+                .textBody(body)
+                .build();
 
-            var result = mailSender.send(message);
-            log.info("アカウント無効化通知の送信成功: messageId={}", result.getMessageId());
+        message.addMetadata("type", "account_disabled");
+        message.addMetadata("username", username);
 
-        } catch (Exception e) {
-            log.error("アカウント無効化通知の送信中にエラーが発生しました", e);
-        }
+        notificationOutbox.enqueue(message);
+        log.info("アカウント無効化通知を送信キューに登録しました");
     }
 
     /**
@@ -181,30 +149,22 @@ public class SecurityNotificationService {
      * @param enabledBy 有効化実施者
      */
     public void sendAccountEnabledNotification(String username, String email, String enabledBy) {
-        try {
-            log.info("アカウント有効化通知を送信: username={}, email={}", username, email);
-
-            Map<String, String> variables = new HashMap<>();
-            variables.put("username", username);
-            variables.put("enabledBy", enabledBy);
-
-            String body = templateRenderer.render(MailTemplate.ACCOUNT_ENABLED, variables);
+        log.info("アカウント有効化通知を送信: username={}, email={}", username, email);
 
-            MailMessage message = MailMessage.builder()
-                    .to(email)
-                    .subject(MailTemplate.ACCOUNT_ENABLED.getDefaultSubject())
-                    .textBody(body)
-                    .build();
+        String body = templateRenderer.render(MailTemplate.ACCOUNT_ENABLED,
+                new AccountEnabledVariables(username, enabledBy));
 
-            message.addMetadata("type", "account_enabled");
-            message.addMetadata("username", username);
+        MailMessage message = MailMessage.builder()
+                .to(email)
+                .subject(MailTemplate.ACCOUNT_ENABLED.getDefaultSubject())
+                .textBody(body)
+                .build();
 
-            var result = mailSender.send(message);
-            log.info("アカウント有効化通知の送信成功: messageId={}", result.getMessageId());
+        message.addMetadata("type", "account_enabled");
+        message.addMetadata("username", username);
 
-        } catch (Exception e) {
-            log.error("アカウント有効化通知の送信中にエラーが発生しました", e);
-        }
+        notificationOutbox.enqueue(message);
+        log.info("アカウント有効化通知を送信キューに登録しました");
     }
 
     /**
@@ -217,31 +177,22 @@ public class SecurityNotificationService {
      */
     public void sendPasswordResetNotification(String username, String email,
                                               String resetUrl, int expiryMinutes) {
-        try {
-            log.info("パスワード再発行URL通知を送信: username={}, email={}", username, email);
-
-            Map<String, String> variables = new HashMap<>();
-            variables.put("username", username);
-            variables.put("resetUrl", resetUrl);
-            variables.put("expiryMinutes", String.valueOf(expiryMinutes));
+        log.info("パスワード再発行URL通知を送信: username={}, email={}", username, email);
 
-            String body = templateRenderer.render(MailTemplate.PASSWORD_REISSUE, variables);
+        String body = templateRenderer.render(MailTemplate.PASSWORD_REISSUE,
+                new PasswordReissueVariables(username, resetUrl, String.valueOf(expiryMinutes)));
 
-            MailMessage message = MailMessage.builder()
-                    .to(email)
-                    .subject(MailTemplate.PASSWORD_REISSUE.getDefaultSubject())
-                    .textBody(body)
-                    .build();
+        MailMessage message = MailMessage.builder()
+                .to(email)
+                .subject(MailTemplate.PASSWORD_REISSUE.getDefaultSubject())
+                .textBody(body)
+                .build();
 
-            message.addMetadata("type", "password_reissue");
-            message.addMetadata("username", username);
+        message.addMetadata("type", "password_reissue");
+        message.addMetadata("username", username);
 
-            var result = mailSender.send(message);
-            log.info("パスワード再発行URL通知の送信成功: messageId={}", result.getMessageId());
-
-        } catch (Exception e) {
-            log.error("パスワード再発行URL通知の送信中にエラーが発生しました", e);
-        }
+        notificationOutbox.enqueue(message);
+        log.info("パスワード再発行URL通知を送信キューに登録しました");
     }
 
     /**
@@ -254,32 +205,22 @@ public class SecurityNotificationService {
      */
     public void sendEmailChangeVerification(String username, String newEmail,
                                            String verificationUrl, int expiryMinutes) {
-        try {
-            log.info("メールアドレス変更確認メールを送信: username={}, newEmail={}", username, newEmail);
-
-            Map<String, String> variables = new HashMap<>();
-            variables.put("username", username);
-            variables.put("newEmail", newEmail);
-            variables.put("verificationUrl", verificationUrl);
-            variables.put("expiryMinutes", String.valueOf(expiryMinutes));
+        log.info("メールアドレス変更確認メールを送信: username={}, newEmail={}", username, newEmail);
 
-            String body = templateRenderer.render(MailTemplate.EMAIL_CHANGE_VERIFICATION, variables);
+        String body = templateRenderer.render(MailTemplate.EMAIL_CHANGE_VERIFICATION,
+                new EmailChangeVerificationVariables(username, newEmail, verificationUrl, String.valueOf(expiryMinutes)));
 
-            MailMessage message = MailMessage.builder()
-                    .to(newEmail)
-                    .subject(MailTemplate.EMAIL_CHANGE_VERIFICATION.getDefaultSubject())
-                    .textBody(body)
-                    .build();
+        MailMessage message = MailMessage.builder()
+                .to(newEmail)
+                .subject(MailTemplate.EMAIL_CHANGE_VERIFICATION.getDefaultSubject())
+                .textBody(body)
+                .build();
 
-            message.addMetadata("type", "email_change_verification");
-            message.addMetadata("username", username);
+        message.addMetadata("type", "email_change_verification");
+        message.addMetadata("username", username);
 
-            var result = mailSender.send(message);
-            log.info("メールアドレス変更確認メールの送信成功: messageId={}", result.getMessageId());
-
-        } catch (Exception e) {
-            log.error("メールアドレス変更確認メールの送信中にエラーが発生しました", e);
-        }
+        notificationOutbox.enqueue(message);
+        log.info("メールアドレス変更確認メールを送信キューに登録しました");
     }
 
     /**
@@ -290,32 +231,126 @@ public class SecurityNotificationService {
      * @param newEmail 新メールアドレス
      */
     public void sendEmailChangedNotification(String username, String oldEmail, String newEmail) {
-        try {
-            log.info("メールアドレス変更通知を送信: username={}, oldEmail={}, newEmail={}", username, oldEmail, newEmail);
+        log.info("メールアドレス変更通知を送信: username={}, oldEmail={}, newEmail={}", username, oldEmail, newEmail);
 
-            Map<String, String> variables = new HashMap<>();
-            variables.put("username", username);
-            variables.put("oldEmail", oldEmail);
-            variables.put("newEmail", newEmail);
-            variables.put("changedAt", LocalDateTime.now().format(DATETIME_FORMATTER));
+        String body = templateRenderer.render(MailTemplate.EMAIL_CHANGED,
+                new EmailChangedVariables(username, oldEmail, newEmail, LocalDateTime.now().format(DATETIME_FORMATTER)));
 
-            String body = templateRenderer.render(MailTemplate.EMAIL_CHANGED, variables);
+        // 旧メールアドレスに送信
+        MailMessage message = MailMessage.builder()
+                .to(oldEmail)
+                .subject(MailTemplate.EMAIL_CHANGED.getDefaultSubject())
+                .textBody(body)
+                .build();
 
-            // 旧メールアドレスに送信
-            MailMessage message = MailMessage.builder()
-                    .to(oldEmail)
-                    .subject(MailTemplate.EMAIL_CHANGED.getDefaultSubject())
-                    .textBody(body)
-                    .build();
+        message.addMetadata("type", "email_changed");
+        message.addMetadata("username", username);
 
-            message.addMetadata("type", "email_changed");
-            message.addMetadata("username", username);
+        notificationOutbox.enqueue(message);
+        log.info("メールアドレス変更通知を送信キューに登録しました");
+    }
+
+    // テンプレート変数（通知ごとにMapを生成せず、描画時にスロット名から直接参照する）
+    private record PasswordResetVariables(String username, String tempPassword, String resetBy)
+            implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "tempPassword" -> tempPassword;
+                case "resetBy" -> resetBy;
+                default -> null;
+            };
+        }
+    }
 
-            var result = mailSender.send(message);
-            log.info("メールアドレス変更通知の送信成功: messageId={}", result.getMessageId());
+    private record PasswordChangedVariables(String username, String changedAt) implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "changedAt" -> changedAt;
+                default -> null;
+            };
+        }
+    }
+
+    private record SuspiciousLoginVariables(String username, String ipAddress, String location, String timestamp)
+            implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "ipAddress" -> ipAddress;
+                case "location" -> location;
+                case "timestamp" -> timestamp;
+                default -> null;
+            };
+        }
+    }
+
+    private record AccountDisabledVariables(String username, String reason, String disabledBy)
+            implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "reason" -> reason;
+                case "disabledBy" -> disabledBy;
+                default -> null;
+            };
+        }
+    }
+
+    private record AccountEnabledVariables(String username, String enabledBy) implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "enabledBy" -> enabledBy;
+                default -> null;
+            };
+        }
+    }
+
+    private record PasswordReissueVariables(String username, String resetUrl, String expiryMinutes)
+            implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "resetUrl" -> resetUrl;
+                case "expiryMinutes" -> expiryMinutes;
+                default -> null;
+            };
+        }
+    }
+
+    private record EmailChangeVerificationVariables(String username, String newEmail, String verificationUrl, String expiryMinutes)
+            implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "newEmail" -> newEmail;
+                case "verificationUrl" -> verificationUrl;
+                case "expiryMinutes" -> expiryMinutes;
+                default -> null;
+            };
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("メールアドレス変更通知の送信中にエラーが発生しました", e);
+    private record EmailChangedVariables(String username, String oldEmail, String newEmail, String changedAt)
+            implements TemplateVariables {
+        @Override
+        public String resolve(String name) {
+            return switch (name) {
+                case "username" -> username;
+                case "oldEmail" -> oldEmail;
+                case "newEmail" -> newEmail;
+                case "changedAt" -> changedAt;
+                default -> null;
+            };
         }
     }
 }
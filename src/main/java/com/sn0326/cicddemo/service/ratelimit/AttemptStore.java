@@ -0,0 +1,43 @@
+package com.sn0326.cicddemo.service.ratelimit;
+
+import java.util.List;
+
+/**
+ * レートリミッターの試行記録を永続化するストア
+ *
+ * 判定はメモリ上で行い、ストアは再起動後に直近の試行を復元するために使用します。
+ * キー数の上限に達している間は、メモリ上にない新しいキーの判定にも使用します。
+ */
+public interface AttemptStore {
+
+    /**
+     * 試行を記録する（呼び出し元を待たせない）
+     *
+     * @param key キー
+     * @param attemptedAtMillis 試行日時（エポックミリ秒）
+     */
+    void record(String key, long attemptedAtMillis);
+
+    /**
+     * 指定日時以降の試行を読み込む
+     *
+     * @param sinceMillis 基準日時（エポックミリ秒、この日時を含む）
+     * @return キー・試行日時の昇順に並んだ試行
+     */
+    List<Attempt> loadSince(long sinceMillis);
+
+    /**
+     * 指定キーの指定日時より後の試行件数を数える
+     *
+     * @param key キー
+     * @param sinceMillis 基準日時（エポックミリ秒、この日時を含まない）
+     * @return 試行件数
+     */
+    int countSince(String key, long sinceMillis);
+
+    /**
+     * 永続化された試行
+     */
+    record Attempt(String key, long attemptedAtMillis) {
+    }
+}
@@ -0,0 +1,131 @@
+package com.sn0326.cicddemo.service.ratelimit;
+
+import com.sn0326.cicddemo.util.BatchingQueueWorker;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 試行記録テーブル（username, attempt_time）へ非同期に書き込むAttemptStore
+ *
+ * record()はキューへの追加のみを行い、バックグラウンドのワーカーがバッチINSERTでまとめて書き込みます。
+ * 判定はメモリ上で完結しているため、キューが満杯の場合は記録を破棄します（再起動時の復元精度のみが下がる）。
+ * シャットダウン時には未書き込みの記録をすべて書き込みます。
+ */
+public class JdbcAttemptStore implements AttemptStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcAttemptStore.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String tableName;
+    private final String insertSql;
+    private final String selectSql;
+    private final String countSql;
+    private final BatchingQueueWorker<Attempt> writer;
+
+    private final LongAdder writtenCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    /**
+     * コンストラクタ
+     * @param jdbcTemplate JdbcTemplate
+     * @param tableName 試行記録テーブル名（username, attempt_time列を持つこと）
+     * @param queueCapacity 書き込みキューの最大件数
+     * @param batchSize 1回のバッチで書き込む最大件数
+     */
+    public JdbcAttemptStore(JdbcTemplate jdbcTemplate, String tableName, int queueCapacity, int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tableName = tableName;
+        this.insertSql = "INSERT INTO " + tableName + " (username, attempt_time) VALUES (?, ?) " +
+                "ON CONFLICT (username, attempt_time) DO NOTHING";
+        this.selectSql = "SELECT username, attempt_time FROM " + tableName +
+                " WHERE attempt_time > ? ORDER BY username, attempt_time";
+        this.countSql = "SELECT COUNT(*) FROM " + tableName + " WHERE username = ? AND attempt_time > ?";
+        this.writer = new BatchingQueueWorker<>(tableName + "-writer", queueCapacity, batchSize, this::write);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    @Override
+    public void record(String key, long attemptedAtMillis) {
+        if (!writer.offer(new Attempt(key, attemptedAtMillis))) {
+            droppedCount.increment();
+            logger.debug("Attempt queue is full, dropping record: table={}, key={}", tableName, key);
+        }
+    }
+
+    @Override
+    public List<Attempt> loadSince(long sinceMillis) {
+        return jdbcTemplate.query(selectSql,
+                (rs, rowNum) -> new Attempt(rs.getString("username"), rs.getTimestamp("attempt_time").getTime()),
+                new Timestamp(sinceMillis));
+    }
+
+    @Override
+    public int countSince(String key, long sinceMillis) {
+        Integer count = jdbcTemplate.queryForObject(countSql, Integer.class, key, new Timestamp(sinceMillis));
+        return count != null ? count : 0;
+    }
+
+    /**
+     * キューに溜まっている件数を取得
+     */
+    public int getQueueDepth() {
+        return writer.size();
+    }
+
+    /**
+     * DBへ書き込んだ件数を取得
+     */
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    /**
+     * キュー満杯により破棄した件数を取得
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 書き込みに失敗した件数を取得
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * シャットダウン時にワーカーを停止し、残りの記録を書き込む
+     */
+    @PreDestroy
+    public void shutdown() {
+        writer.stop(true);
+        logger.info("Attempt store stopped: table={}, written={}, dropped={}, failed={}",
+                tableName, getWrittenCount(), getDroppedCount(), getFailedCount());
+    }
+
+    private void write(List<Attempt> attempts) {
+        try {
+            jdbcTemplate.batchUpdate(insertSql, attempts, attempts.size(), (ps, attempt) -> {
+                ps.setString(1, attempt.key());
+                ps.setTimestamp(2, new Timestamp(attempt.attemptedAtMillis()));
+            });
+            writtenCount.add(attempts.size());
+        } catch (Exception e) {
+            // 試行記録の失敗はレート制限の判定に影響しない
+            failedCount.add(attempts.size());
+            logger.error("Failed to write {} attempts: table={}", attempts.size(), tableName, e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.sn0326.cicddemo.service.ratelimit;
+
+/**
+ * キー（ユーザー名など）ごとの試行回数を制限するレートリミッター
+ */
+public interface RateLimiter {
+
+    /**
+     * 試行を1回消費する
+     *
+     * @param key 制限の単位となるキー
+     * @return 制限内で試行を記録した場合はtrue、上限に達している場合はfalse（記録しない）
+     */
+    boolean tryAcquire(String key);
+}
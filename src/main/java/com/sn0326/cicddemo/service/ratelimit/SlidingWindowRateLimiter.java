@@ -0,0 +1,300 @@
+package com.sn0326.cicddemo.service.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * スライディングログ方式のレートリミッター
+ *
+ * キーごとに時間窓内の試行日時（昇順の配列）をメモリ上に保持し、
+ * 「直近の時間窓内の試行がmaxAttempts回未満なら許可」という判定を行います。
+ * 配列は不変で、ConcurrentHashMapの比較置換（replace / putIfAbsent）で更新するため、
+ * ロックを取らずに判定と記録を1回の操作で行えます。
+ *
+ * キー数がmaxKeysに達した場合の扱いは、AttemptStoreの有無で異なります。
+ * - AttemptStoreあり: 時間窓内の試行が残っているキーは削除せず
+ *   （存在しないユーザー名などを大量に送っても、他のキーの試行記録を追い出して制限を回避できない）、
+ *   満杯の間の新しいキーは永続化された試行件数で判定する（メモリには保持しない）
+ * - AttemptStoreなし: 最終試行の古いキーからmaxKeysの1割をまとめて削除し、新しいキーを受け付ける
+ *   （多数のアドレスから送られても、新しいクライアントをすべて拒否する状態にはならない）
+ * 時間窓を過ぎたキーの走査はsweepIntervalごとに1回までとし、満杯の間のリクエストごとには行いません。
+ *
+ * 判定はインスタンスごとのため、N台構成では全体でN倍の試行を許可します。
+ *
+ * AttemptStoreを指定した場合、許可した試行を非同期に永続化し、
+ * 起動時にrestore()で直近の試行を復元します。
+ */
+public class SlidingWindowRateLimiter implements RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlidingWindowRateLimiter.class);
+
+    private static final long[] EMPTY = new long[0];
+
+    /** 満杯時に時間窓を過ぎたキーを走査する最小間隔 */
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    /** AttemptStoreがない場合に、満杯時にまとめて削除するキーの割合（削除のたびに全件を並べ替えないため） */
+    private static final double EVICTION_RATIO = 0.1;
+
+    private final String name;
+    private final int maxAttempts;
+    private final long windowMillis;
+    private final int maxKeys;
+    private final AttemptStore store;
+
+    private final ConcurrentHashMap<String, long[]> attempts = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepAt = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final LongAdder allowedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder capacityRejectedCount = new LongAdder();
+    private final LongAdder storeFallbackCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+
+    /**
+     * コンストラクタ
+     * @param name ログ出力用の名前
+     * @param maxAttempts 時間窓内に許可する最大試行回数
+     * @param window 時間窓
+     * @param maxKeys 保持する最大キー数
+     * @param store 試行記録の永続化先（nullの場合はメモリ上のみ）
+     */
+    public SlidingWindowRateLimiter(String name, int maxAttempts, Duration window, int maxKeys, AttemptStore store) {
+        if (maxAttempts <= 0 || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("maxAttempts and window must be positive");
+        }
+        this.name = name;
+        this.maxAttempts = maxAttempts;
+        this.windowMillis = window.toMillis();
+        this.maxKeys = maxKeys;
+        this.store = store;
+    }
+
+    @Override
+    public boolean tryAcquire(String key) {
+        long now = System.currentTimeMillis();
+        long windowStart = now - windowMillis;
+        while (true) {
+            long[] current = attempts.get(key);
+            long[] live = withinWindow(current, windowStart);
+            if (live.length >= maxAttempts) {
+                rejectedCount.increment();
+                logger.debug("Rate limit exceeded: limiter={}, key={}", name, key);
+                return false;
+            }
+
+            long[] next = Arrays.copyOf(live, live.length + 1);
+            next[live.length] = now;
+
+            boolean updated;
+            if (current == null) {
+                if (attempts.size() >= maxKeys && !makeRoom(now, windowStart)) {
+                    if (store != null) {
+                        return tryAcquireFromStore(key, now, windowStart);
+                    }
+                    evictLeastRecentlyAttempted();
+                }
+                updated = attempts.putIfAbsent(key, next) == null;
+            } else {
+                updated = attempts.replace(key, current, next);
+            }
+            if (updated) {
+                allowedCount.increment();
+                if (store != null) {
+                    store.record(key, now);
+                }
+                return true;
+            }
+            // 他スレッドが同じキーを更新したため再判定する
+        }
+    }
+
+    /**
+     * 永続化された直近の試行を読み込み、メモリ上の状態を復元する
+     * 起動直後（リクエスト受付前）に呼び出す
+     */
+    public void restore() {
+        if (store == null) {
+            return;
+        }
+        long windowStart = System.currentTimeMillis() - windowMillis;
+        List<AttemptStore.Attempt> persisted;
+        try {
+            persisted = store.loadSince(windowStart);
+        } catch (Exception e) {
+            // 復元できなくても判定自体は行える
+            logger.warn("Failed to restore rate limit attempts: limiter={}", name, e);
+            return;
+        }
+
+        int from = 0;
+        while (from < persisted.size()) {
+            String key = persisted.get(from).key();
+            int to = from;
+            while (to < persisted.size() && persisted.get(to).key().equals(key)) {
+                to++;
+            }
+            // 上限を超える分は判定に影響しないため、新しいものだけを保持する
+            int start = Math.max(from, to - maxAttempts);
+            long[] times = new long[to - start];
+            for (int i = start; i < to; i++) {
+                times[i - start] = persisted.get(i).attemptedAtMillis();
+            }
+            attempts.put(key, times);
+            from = to;
+        }
+        logger.info("Restored rate limit attempts: limiter={}, keys={}, attempts={}",
+                name, attempts.size(), persisted.size());
+    }
+
+    /**
+     * 時間窓を過ぎたキーを削除する
+     */
+    @Scheduled(fixedDelayString = "${security.rate-limit.eviction-interval-ms:300000}")
+    public void evictExpired() {
+        long windowStart = System.currentTimeMillis() - windowMillis;
+        attempts.values().removeIf(times -> isExpired(times, windowStart));
+    }
+
+    /**
+     * 許可した試行回数を取得
+     */
+    public long getAllowedCount() {
+        return allowedCount.sum();
+    }
+
+    /**
+     * 拒否した試行回数を取得
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * キー数の上限により拒否した試行回数を取得（rejectedCountの内数）
+     */
+    public long getCapacityRejectedCount() {
+        return capacityRejectedCount.sum();
+    }
+
+    /**
+     * キー数の上限により永続化された試行件数で判定した回数を取得
+     */
+    public long getStoreFallbackCount() {
+        return storeFallbackCount.sum();
+    }
+
+    /**
+     * キー数の上限により、時間窓内の試行が残っていても削除したキー数を取得
+     */
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * 保持しているキー数を取得
+     */
+    public int getSize() {
+        return attempts.size();
+    }
+
+    /**
+     * 上限到達時に空きを作る
+     * 時間窓を過ぎたキーのみを削除する（時間窓内の試行が残るキーは削除しない）。
+     * 走査は全スレッドでSWEEP_INTERVAL_MILLISごとに1回までとし、他のスレッドは走査せずに判定する
+     *
+     * @return 新しいキーを追加する空きがある場合true
+     */
+    private boolean makeRoom(long now, long windowStart) {
+        long sweepAt = nextSweepAt.get();
+        if (now >= sweepAt && nextSweepAt.compareAndSet(sweepAt, now + SWEEP_INTERVAL_MILLIS)) {
+            attempts.values().removeIf(times -> isExpired(times, windowStart));
+            if (attempts.size() >= maxKeys && store != null) {
+                logger.warn("Rate limit key capacity exhausted, checking the attempt store for new keys: " +
+                        "limiter={}, keys={}", name, attempts.size());
+            }
+        }
+        return attempts.size() < maxKeys;
+    }
+
+    /**
+     * 満杯の間の新しいキーを、永続化された時間窓内の試行件数で判定する
+     * 許可した試行は永続化のみ行い、メモリには保持しない
+     * （書き込みは非同期のため、キューに残っている直前の試行は数えられない）
+     */
+    private boolean tryAcquireFromStore(String key, long now, long windowStart) {
+        storeFallbackCount.increment();
+        int persisted;
+        try {
+            persisted = store.countSince(key, windowStart);
+        } catch (Exception e) {
+            rejectedCount.increment();
+            capacityRejectedCount.increment();
+            logger.error("Failed to count persisted attempts: limiter={}, key={}", name, key, e);
+            return false;
+        }
+        if (persisted >= maxAttempts) {
+            rejectedCount.increment();
+            logger.debug("Rate limit exceeded: limiter={}, key={}", name, key);
+            return false;
+        }
+        allowedCount.increment();
+        store.record(key, now);
+        return true;
+    }
+
+    /**
+     * 最終試行の古いキーからmaxKeysのEVICTION_RATIO分をまとめて削除する（AttemptStoreがない場合）
+     * 並べ替えは削除1回につき1回のため、満杯の間も新しいキーごとの負荷は小さい
+     */
+    private void evictLeastRecentlyAttempted() {
+        synchronized (evictionLock) {
+            // 待っている間に他のスレッドが削除した場合は何もしない
+            if (attempts.size() < maxKeys) {
+                return;
+            }
+            long[] lastAttempts = attempts.values().stream()
+                    .mapToLong(times -> times.length == 0 ? 0 : times[times.length - 1])
+                    .sorted()
+                    .toArray();
+            if (lastAttempts.length == 0) {
+                return;
+            }
+            int evictCount = Math.min(lastAttempts.length, Math.max(1, (int) (maxKeys * EVICTION_RATIO)));
+            long cutoff = lastAttempts[evictCount - 1];
+            int before = attempts.size();
+            attempts.values().removeIf(times -> isExpired(times, cutoff));
+            int evicted = before - attempts.size();
+            evictedCount.add(evicted);
+            logger.warn("Rate limit key capacity exhausted, evicted least recently attempted keys: " +
+                    "limiter={}, evicted={}, keys={}", name, evicted, attempts.size());
+        }
+    }
+
+    /**
+     * 時間窓内の試行のみを返す（配列は昇順のため先頭から判定）
+     */
+    private static long[] withinWindow(long[] times, long windowStart) {
+        if (times == null) {
+            return EMPTY;
+        }
+        int first = 0;
+        while (first < times.length && times[first] <= windowStart) {
+            first++;
+        }
+        return first == 0 ? times : Arrays.copyOfRange(times, first, times.length);
+    }
+
+    private static boolean isExpired(long[] times, long windowStart) {
+        return times.length == 0 || times[times.length - 1] <= windowStart;
+    }
+}
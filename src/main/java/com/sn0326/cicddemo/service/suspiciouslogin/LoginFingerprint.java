@@ -0,0 +1,125 @@
+package com.sn0326.cicddemo.service.suspiciouslogin;
+
+import java.util.Locale;
+
+/**
+ * ユーザーごとのログイン元の特徴（既知のIPアドレスのプレフィックスとUser-Agentのファミリー）
+ *
+ * 文字列ではなくハッシュ値を固定長の配列に保持し、1ユーザーあたり数百バイトに収めます。
+ * 上限を超えた場合は最も古く登録した値から上書きします。
+ * 更新はSuspiciousLoginDetectorのワーカースレッドのみが行うため、同期は行いません。
+ */
+final class LoginFingerprint {
+
+    private static final String[] BROWSERS = {"Edg/", "OPR/", "Firefox/", "Chrome/", "Safari/"};
+    private static final String[] PLATFORMS = {"Android", "iPhone", "iPad", "Windows", "Mac OS X", "CrOS", "Linux"};
+
+    private final int[] ipPrefixes;
+    private final int[] userAgentFamilies;
+    private int ipCount;
+    private int userAgentCount;
+    private int ipNext;
+    private int userAgentNext;
+    private int loginCount;
+
+    LoginFingerprint(int maxIpPrefixes, int maxUserAgentFamilies) {
+        this.ipPrefixes = new int[maxIpPrefixes];
+        this.userAgentFamilies = new int[maxUserAgentFamilies];
+    }
+
+    /**
+     * ログイン元を既知として登録する（不明な値（0）は登録しない）
+     */
+    void learn(int ipPrefix, int userAgentFamily) {
+        if (ipPrefix != 0 && !contains(ipPrefixes, ipCount, ipPrefix)) {
+            ipPrefixes[ipNext] = ipPrefix;
+            ipNext = (ipNext + 1) % ipPrefixes.length;
+            ipCount = Math.min(ipCount + 1, ipPrefixes.length);
+        }
+        if (userAgentFamily != 0 && !contains(userAgentFamilies, userAgentCount, userAgentFamily)) {
+            userAgentFamilies[userAgentNext] = userAgentFamily;
+            userAgentNext = (userAgentNext + 1) % userAgentFamilies.length;
+            userAgentCount = Math.min(userAgentCount + 1, userAgentFamilies.length);
+        }
+        loginCount++;
+    }
+
+    boolean knowsIpPrefix(int ipPrefix) {
+        return contains(ipPrefixes, ipCount, ipPrefix);
+    }
+
+    boolean knowsUserAgentFamily(int userAgentFamily) {
+        return contains(userAgentFamilies, userAgentCount, userAgentFamily);
+    }
+
+    /**
+     * 登録したログインの件数（判定に十分な履歴があるかの確認用）
+     */
+    int getLoginCount() {
+        return loginCount;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * IPアドレスのプレフィックス（IPv4は/24、IPv6は/48）のハッシュ値
+     * 同じネットワーク内でのアドレスの変化は同じ値になる（不明な場合は0）
+     */
+    static int ipPrefixKey(String ipAddress) {
+        if (ipAddress == null || ipAddress.isEmpty()) {
+            return 0;
+        }
+        if (ipAddress.indexOf(':') < 0) {
+            int lastDot = ipAddress.lastIndexOf('.');
+            return (lastDot < 0 ? ipAddress : ipAddress.substring(0, lastDot)).hashCode();
+        }
+        return ipv6Prefix(ipAddress.toLowerCase(Locale.ROOT)).hashCode();
+    }
+
+    /**
+     * IPv6アドレスの先頭3グループ（"::"による省略を展開してから取り出す）
+     */
+    private static String ipv6Prefix(String ipAddress) {
+        int zone = ipAddress.indexOf('%');
+        String address = zone < 0 ? ipAddress : ipAddress.substring(0, zone);
+        int compressed = address.indexOf("::");
+        String head = compressed < 0 ? address : address.substring(0, compressed);
+        String[] groups = head.isEmpty() ? new String[0] : head.split(":");
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            if (i > 0) {
+                prefix.append(':');
+            }
+            // 省略された部分はゼロ
+            prefix.append(i < groups.length ? groups[i] : "0");
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * User-Agentのファミリー（ブラウザとプラットフォームの組み合わせ）のハッシュ値
+     * バージョンの違いは同じ値になる（不明な場合は0）
+     */
+    static int userAgentFamilyKey(String userAgent) {
+        if (userAgent == null || userAgent.isEmpty()) {
+            return 0;
+        }
+        return (firstMatch(userAgent, BROWSERS) + "|" + firstMatch(userAgent, PLATFORMS)).hashCode();
+    }
+
+    private static String firstMatch(String userAgent, String[] candidates) {
+        for (String candidate : candidates) {
+            if (userAgent.contains(candidate)) {
+                return candidate;
+            }
+        }
+        return "other";
+    }
+}
@@ -0,0 +1,231 @@
+package com.sn0326.cicddemo.service.suspiciouslogin;
+
+import com.sn0326.cicddemo.repository.UserRepository;
+import com.sn0326.cicddemo.service.AsyncLoginRecorder.LoginRecord;
+import com.sn0326.cicddemo.service.notification.SecurityNotificationService;
+import com.sn0326.cicddemo.util.BatchingQueueWorker;
+import com.sn0326.cicddemo.util.BoundedTtlCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 不審なログインを検知し、ユーザーへ通知するサービス
+ *
+ * ログイン成功時はキューへの追加のみを行い（満杯の場合は判定を諦める）、
+ * 判定はバックグラウンドのワーカーが行うため、ログイン後のリダイレクトを待たせません。
+ *
+ * ユーザーごとに既知のIPアドレスのプレフィックスとUser-Agentのファミリーをメモリ上に保持し、
+ * どちらも未知のログイン元（スコアがthreshold以上）の場合に通知します。
+ * 判定にはクライアントが偽装できない、信頼できるプロキシが付加したIPアドレス（trustedIpAddress）を使い、
+ * X-Forwarded-Forの先頭（ipAddress）は通知の表示にのみ使います。
+ * メモリ上にないユーザーは、ログイン履歴（user_logins）の直近lookback-days日分から復元します。
+ * 判定したログイン元は既知として登録するため、同じログイン元からの通知は1回のみです。
+ */
+@Service
+public class SuspiciousLoginDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuspiciousLoginDetector.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final SecurityNotificationService notificationService;
+
+    @Value("${security.suspicious-login.enabled:true}")
+    private boolean enabled;
+
+    @Value("${security.suspicious-login.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${security.suspicious-login.cache-max-size:10000}")
+    private int cacheMaxSize;
+
+    @Value("${security.suspicious-login.lookback-days:90}")
+    private int lookbackDays;
+
+    @Value("${security.suspicious-login.history-size:50}")
+    private int historySize;
+
+    @Value("${security.suspicious-login.min-history:3}")
+    private int minHistory;
+
+    @Value("${security.suspicious-login.threshold:2}")
+    private int threshold;
+
+    @Value("${security.suspicious-login.max-ip-prefixes:16}")
+    private int maxIpPrefixes;
+
+    @Value("${security.suspicious-login.max-user-agent-families:8}")
+    private int maxUserAgentFamilies;
+
+    /**
+     * ユーザーごとの既知のログイン元
+     * 履歴の参照期間（lookback-days）を過ぎたものは履歴から読み直す
+     */
+    private BoundedTtlCache<String, LoginFingerprint> fingerprints;
+
+    private BatchingQueueWorker<LoginRecord> worker;
+
+    private final LongAdder evaluatedCount = new LongAdder();
+    private final LongAdder suspiciousCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder totalScoringNanos = new LongAdder();
+
+    public SuspiciousLoginDetector(JdbcTemplate jdbcTemplate,
+                                   UserRepository userRepository,
+                                   SecurityNotificationService notificationService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userRepository = userRepository;
+        this.notificationService = notificationService;
+    }
+
+    @PostConstruct
+    public void start() {
+        fingerprints = new BoundedTtlCache<>(Duration.ofDays(lookbackDays), cacheMaxSize);
+        // 1件ごとに判定する（判定中の例外で同じバッチの他のログインを判定し損ねないため）
+        worker = new BatchingQueueWorker<>("suspicious-login-detector", queueCapacity, 1, this::evaluateAll);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 未判定のログインは破棄する（通知は補助的なもので、監査記録はuser_loginsに残る）
+        worker.stop(false);
+    }
+
+    /**
+     * ログインを判定対象としてキューへ追加（待機しない）
+     *
+     * @param record 記録したログイン
+     */
+    public void submit(LoginRecord record) {
+        if (!enabled || record == null) {
+            return;
+        }
+        if (!worker.offer(record)) {
+            droppedCount.increment();
+            logger.debug("Suspicious login queue is full, skipping: username={}", record.username());
+        }
+    }
+
+    /**
+     * 判定した件数を取得
+     */
+    public long getEvaluatedCount() {
+        return evaluatedCount.sum();
+    }
+
+    /**
+     * 不審なログインとして通知した件数を取得
+     */
+    public long getSuspiciousCount() {
+        return suspiciousCount.sum();
+    }
+
+    /**
+     * キュー満杯により判定しなかった件数を取得
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 判定（履歴の読み込みを除く）の平均所要時間を取得（マイクロ秒）
+     */
+    public double getAverageScoringMicros() {
+        long evaluated = evaluatedCount.sum();
+        return evaluated == 0 ? 0.0 : totalScoringNanos.sum() / 1_000.0 / evaluated;
+    }
+
+    /**
+     * メモリ上に保持しているユーザー数を取得
+     */
+    public int getCachedUserCount() {
+        return fingerprints.size();
+    }
+
+    private void evaluateAll(List<LoginRecord> records) {
+        records.forEach(this::evaluate);
+    }
+
+    private void evaluate(LoginRecord record) {
+        LoginFingerprint fingerprint = fingerprints.get(record.username());
+        if (fingerprint == null) {
+            fingerprint = loadFingerprint(record);
+            fingerprints.put(record.username(), fingerprint);
+        }
+
+        long start = System.nanoTime();
+        int ipPrefix = LoginFingerprint.ipPrefixKey(record.trustedIpAddress());
+        int userAgentFamily = LoginFingerprint.userAgentFamilyKey(record.userAgent());
+        boolean hasBaseline = fingerprint.getLoginCount() >= minHistory;
+        int score = 0;
+        if (ipPrefix != 0 && !fingerprint.knowsIpPrefix(ipPrefix)) {
+            score++;
+        }
+        if (userAgentFamily != 0 && !fingerprint.knowsUserAgentFamily(userAgentFamily)) {
+            score++;
+        }
+        fingerprint.learn(ipPrefix, userAgentFamily);
+        totalScoringNanos.add(System.nanoTime() - start);
+        evaluatedCount.increment();
+
+        // 履歴の少ないユーザーは比較対象がないため通知しない
+        if (hasBaseline && score >= threshold) {
+            suspiciousCount.increment();
+            notifySuspiciousLogin(record);
+        }
+    }
+
+    /**
+     * ログイン履歴から既知のログイン元を復元する
+     * 判定対象のログイン自体は非同期に書き込まれるため、その日時より前の行のみを読み込む
+     * 上限を超えた場合に新しいログイン元が残るよう、古い順に登録する
+     * （履歴のip_addressは表示用のアドレスのため、偽装のない通常のログインでは判定用のアドレスと一致する）
+     */
+    private LoginFingerprint loadFingerprint(LoginRecord record) {
+        LoginFingerprint fingerprint = new LoginFingerprint(maxIpPrefixes, maxUserAgentFamilies);
+        try {
+            jdbcTemplate.query(
+                    "SELECT ip_address, user_agent FROM (" +
+                    "  SELECT logged_in_at, ip_address, user_agent FROM user_logins " +
+                    "  WHERE username = ? AND success = true AND logged_in_at >= ? AND logged_in_at < ? " +
+                    "  ORDER BY logged_in_at DESC LIMIT ?" +
+                    ") recent ORDER BY logged_in_at",
+                    rs -> {
+                        fingerprint.learn(LoginFingerprint.ipPrefixKey(rs.getString("ip_address")),
+                                LoginFingerprint.userAgentFamilyKey(rs.getString("user_agent")));
+                    },
+                    record.username(),
+                    Timestamp.valueOf(record.loggedInAt().minusDays(lookbackDays)),
+                    Timestamp.valueOf(record.loggedInAt()),
+                    historySize);
+        } catch (Exception e) {
+            // 履歴を読めない場合は空の状態から始める（履歴が少ない間は通知しない）
+            logger.warn("Failed to load login history for suspicious login detection: username={}",
+                    record.username(), e);
+        }
+        return fingerprint;
+    }
+
+    private void notifySuspiciousLogin(LoginRecord record) {
+        logger.warn("Suspicious login detected: username={}, ip={}, trustedIp={}",
+                record.username(), record.ipAddress(), record.trustedIpAddress());
+        String email = userRepository.findEmailByUsername(record.username());
+        if (email == null || email.isEmpty()) {
+            logger.info("Email not registered, skipping suspicious login notification: username={}",
+                    record.username());
+            return;
+        }
+        notificationService.sendSuspiciousLoginNotification(record.username(), email, record.ipAddress(), null);
+    }
+}
@@ -0,0 +1,134 @@
+package com.sn0326.cicddemo.service.userimport;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ユーザー一括登録ジョブの進捗
+ * ジョブの実行スレッドから更新され、状態確認APIから参照される
+ */
+public class UserImportJob {
+
+    /**
+     * 保持する行エラーの上限（超過分は件数のみ集計）
+     */
+    private static final int MAX_ERRORS = 1000;
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final String requestedBy;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final List<RowError> errors = new ArrayList<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile int total;
+    private volatile LocalDateTime finishedAt;
+    private volatile String message;
+
+    UserImportJob(String id, String requestedBy) {
+        this.id = id;
+        this.requestedBy = requestedBy;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRequestedBy() {
+        return requestedBy;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * 行エラーの一覧（先頭から最大1000件）
+     */
+    public List<RowError> getErrors() {
+        synchronized (errors) {
+            return List.copyOf(errors);
+        }
+    }
+
+    boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    void start(int total) {
+        this.total = total;
+        this.status = Status.RUNNING;
+    }
+
+    void recordSuccess(int count) {
+        succeeded.addAndGet(count);
+        processed.addAndGet(count);
+    }
+
+    void recordError(int line, String username, String error) {
+        failed.incrementAndGet();
+        processed.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(new RowError(line, username, error));
+            }
+        }
+    }
+
+    void complete() {
+        this.finishedAt = LocalDateTime.now();
+        this.status = Status.COMPLETED;
+    }
+
+    void fail(String message) {
+        this.message = message;
+        this.finishedAt = LocalDateTime.now();
+        this.status = Status.FAILED;
+    }
+
+    /**
+     * 行単位のエラー
+     *
+     * @param line 行番号（CSVはヘッダーを1行目、JSONは配列の1件目を1とする）
+     * @param username ユーザー名（取得できた場合）
+     * @param error エラー内容
+     */
+    public record RowError(int line, String username, String error) {
+    }
+}
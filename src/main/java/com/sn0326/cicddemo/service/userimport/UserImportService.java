@@ -0,0 +1,493 @@
+package com.sn0326.cicddemo.service.userimport;
+
+import com.sn0326.cicddemo.exception.UserValidationException;
+import com.sn0326.cicddemo.security.BoundedPasswordEncoder;
+import com.sn0326.cicddemo.service.ForcePasswordChangeService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * ユーザー一括登録サービス
+ *
+ * CSVまたはJSONで受け取ったユーザーを検証し、バックグラウンドのジョブとして登録します。
+ * - パスワードのハッシュ化はCPUコア数に合わせた固定サイズのスレッドプールで並列に行う
+ *   （BoundedPasswordEncoderのバックグラウンド用の枠で計算し、ログイン用の空きを常に残す）
+ * - users / authorities への書き込みはチャンク単位のJDBCバッチで行う
+ * - 行ごとのエラーと進捗はジョブ（{@link UserImportJob}）から参照できる
+ *
+ * 登録したユーザーは初期パスワードのため、パスワード変更が必要な状態で作成します。
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+
+    private static final Pattern USERNAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_-]{3,50}$");
+    private static final Set<String> ALLOWED_ROLES = Set.of("ROLE_USER", "ROLE_ADMIN");
+    private static final String[] CSV_COLUMNS = {"username", "password", "roles", "enabled", "email"};
+
+    private static final String INSERT_USER_SQL =
+            "INSERT INTO users (username, password, enabled, password_must_change, email) " +
+            "VALUES (?, ?, ?, TRUE, ?) ON CONFLICT (username) DO NOTHING";
+
+    private static final String INSERT_AUTHORITY_SQL =
+            "INSERT INTO authorities (username, authority) VALUES (?, ?) ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BoundedPasswordEncoder passwordEncoder;
+    private final ForcePasswordChangeService forcePasswordChangeService;
+    private final JsonMapper jsonMapper;
+
+    private final Map<String, UserImportJob> jobs = new ConcurrentHashMap<>();
+
+    @Value("${admin.import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${admin.import.hash-threads:0}")
+    private int hashThreads;
+
+    @Value("${admin.import.max-rows:100000}")
+    private int maxRows;
+
+    @Value("${admin.import.job-retention-minutes:60}")
+    private long jobRetentionMinutes;
+
+    /**
+     * ジョブを1件ずつ順番に実行するスレッド
+     */
+    private ExecutorService jobExecutor;
+
+    /**
+     * パスワードのハッシュ化用スレッドプール（CPUバウンドのためコア数で制限）
+     */
+    private ThreadPoolExecutor hashExecutor;
+
+    public UserImportService(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             BoundedPasswordEncoder passwordEncoder,
+                             ForcePasswordChangeService forcePasswordChangeService,
+                             JsonMapper jsonMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.passwordEncoder = passwordEncoder;
+        this.forcePasswordChangeService = forcePasswordChangeService;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @PostConstruct
+    public void start() {
+        // 枠を超えるスレッドは待機するだけのため、既定はバックグラウンド用の枠と同じ数にする
+        int threads = hashThreads > 0 ? hashThreads : passwordEncoder.getMaxBackground();
+        AtomicInteger threadCount = new AtomicInteger();
+        hashExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(chunkSize, 1)),
+                runnable -> Thread.ofPlatform()
+                        .name("user-import-hash-" + threadCount.incrementAndGet())
+                        .daemon(true)
+                        .unstarted(runnable),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        jobExecutor = Executors.newSingleThreadExecutor(runnable -> Thread.ofPlatform()
+                .name("user-import-job")
+                .daemon(true)
+                .unstarted(runnable));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        hashExecutor.shutdownNow();
+    }
+
+    /**
+     * 一括登録ジョブを受け付ける
+     *
+     * @param content ファイルの内容（UTF-8）
+     * @param format 形式（csv または json）
+     * @param requestedBy 実行した管理者
+     * @return 受け付けたジョブ
+     */
+    public UserImportJob submit(byte[] content, String format, String requestedBy) {
+        String normalizedFormat = format == null ? "" : format.toLowerCase(Locale.ROOT);
+        if (!normalizedFormat.equals("csv") && !normalizedFormat.equals("json")) {
+            throw new UserValidationException("未対応のファイル形式です（csv または json を指定してください）: " + format);
+        }
+
+        UserImportJob job = new UserImportJob(UUID.randomUUID().toString(), requestedBy);
+        jobs.put(job.getId(), job);
+        jobExecutor.execute(() -> run(job, content, normalizedFormat));
+        logger.info("ユーザー一括登録ジョブを受け付けました: jobId={}, format={}, bytes={}, requestedBy={}",
+                job.getId(), normalizedFormat, content.length, requestedBy);
+        return job;
+    }
+
+    /**
+     * ジョブを取得
+     */
+    public Optional<UserImportJob> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * 終了から一定時間経過したジョブを削除
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void evictFinishedJobs() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(jobRetentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(threshold));
+    }
+
+    private void run(UserImportJob job, byte[] content, String format) {
+        long start = System.currentTimeMillis();
+        try {
+            List<ImportRow> rows = format.equals("json") ? parseJson(content) : parseCsv(content);
+            if (rows.size() > maxRows) {
+                job.fail("件数が上限を超えています: " + rows.size() + " 件（上限 " + maxRows + " 件）");
+                return;
+            }
+            job.start(rows.size());
+
+            List<ImportRow> validRows = validate(rows, job);
+            for (int from = 0; from < validRows.size(); from += chunkSize) {
+                importChunk(validRows.subList(from, Math.min(from + chunkSize, validRows.size())), job);
+            }
+
+            job.complete();
+            logger.info("ユーザー一括登録ジョブが完了しました: jobId={}, total={}, succeeded={}, failed={}, {} ms",
+                    job.getId(), job.getTotal(), job.getSucceeded(), job.getFailed(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("ユーザー一括登録ジョブが失敗しました: jobId={}", job.getId(), e);
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 行の入力チェックとファイル内の重複チェック
+     *
+     * @return 登録対象の行
+     */
+    private List<ImportRow> validate(List<ImportRow> rows, UserImportJob job) {
+        List<ImportRow> validRows = new ArrayList<>(rows.size());
+        Set<String> seen = new HashSet<>();
+        for (ImportRow row : rows) {
+            String error = validateRow(row);
+            if (error == null && !seen.add(row.username())) {
+                error = "ファイル内でユーザー名が重複しています";
+            }
+            if (error != null) {
+                job.recordError(row.line(), row.username(), error);
+            } else {
+                validRows.add(row);
+            }
+        }
+        return validRows;
+    }
+
+    private static String validateRow(ImportRow row) {
+        if (row.error() != null) {
+            return row.error();
+        }
+        if (row.username() == null || row.username().isBlank()) {
+            return "ユーザー名は必須です";
+        }
+        if (!USERNAME_PATTERN.matcher(row.username()).matches()) {
+            return "ユーザー名は3文字以上50文字以内の半角英数字、アンダースコア、ハイフンで入力してください";
+        }
+        if (row.password() == null || row.password().length() < 8 || row.password().length() > 100) {
+            return "パスワードは8文字以上100文字以内で入力してください";
+        }
+        if (row.roles().isEmpty()) {
+            return "少なくとも1つのロールを指定してください";
+        }
+        for (String role : row.roles()) {
+            if (!ALLOWED_ROLES.contains(role)) {
+                return "不明なロールです: " + role;
+            }
+        }
+        if (row.email() != null && (row.email().length() > 255 || !row.email().contains("@"))) {
+            return "メールアドレスの形式が正しくありません";
+        }
+        return null;
+    }
+
+    /**
+     * 1チャンク分のユーザーを登録する
+     * 既存ユーザーを除外し、パスワードを並列にハッシュ化した上で1トランザクションでバッチ登録する
+     */
+    private void importChunk(List<ImportRow> chunk, UserImportJob job) throws InterruptedException {
+        String[] usernames = chunk.stream().map(ImportRow::username).toArray(String[]::new);
+        Set<String> existing = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT username FROM users WHERE username = ANY (?)", String.class, (Object) usernames));
+
+        List<ImportRow> targets = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            if (existing.contains(row.username())) {
+                job.recordError(row.line(), row.username(), "ユーザー名は既に存在します");
+            } else {
+                targets.add(row);
+            }
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        List<String> hashes = hashPasswords(targets);
+
+        List<ImportRow> inserted = transactionTemplate.execute(status -> {
+            int[] results = jdbcTemplate.batchUpdate(INSERT_USER_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ImportRow row = targets.get(i);
+                    ps.setString(1, row.username());
+                    ps.setString(2, hashes.get(i));
+                    ps.setBoolean(3, row.enabled());
+                    ps.setString(4, row.email());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return targets.size();
+                }
+            });
+
+            List<ImportRow> insertedRows = new ArrayList<>(targets.size());
+            List<Object[]> authorities = new ArrayList<>();
+            for (int i = 0; i < targets.size(); i++) {
+                if (results[i] == 0) {
+                    // 重複チェック後に他の処理で同じユーザー名が登録された
+                    job.recordError(targets.get(i).line(), targets.get(i).username(), "ユーザー名は既に存在します");
+                    continue;
+                }
+                insertedRows.add(targets.get(i));
+                for (String role : targets.get(i).roles()) {
+                    authorities.add(new Object[]{targets.get(i).username(), role});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_AUTHORITY_SQL, authorities);
+            return insertedRows;
+        });
+
+        if (inserted != null && !inserted.isEmpty()) {
+            forcePasswordChangeService.registerPasswordChangeRequired(
+                    inserted.stream().map(ImportRow::username).toList());
+            job.recordSuccess(inserted.size());
+        }
+    }
+
+    /**
+     * パスワードを並列にハッシュ化する
+     *
+     * @return 行と同じ順序のハッシュ値
+     */
+    private List<String> hashPasswords(List<ImportRow> rows) throws InterruptedException {
+        List<Callable<String>> tasks = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            tasks.add(() -> passwordEncoder.encodeInBackground(row.password()));
+        }
+        List<String> hashes = new ArrayList<>(rows.size());
+        for (Future<String> future : hashExecutor.invokeAll(tasks)) {
+            try {
+                hashes.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("パスワードのハッシュ化に失敗しました", e.getCause());
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * CSVを読み込む
+     * 1行目はヘッダー（username,password,roles,enabled,email）で、列の順序は任意
+     * rolesは「;」区切りで複数指定できる
+     */
+    private List<ImportRow> parseCsv(byte[] content) throws IOException {
+        List<ImportRow> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                return rows;
+            }
+            List<String> header = parseCsvLine(headerLine.replace("\uFEFF", "")).stream()
+                    .map(column -> column.trim().toLowerCase(Locale.ROOT))
+                    .toList();
+            int[] indexes = Arrays.stream(CSV_COLUMNS).mapToInt(header::indexOf).toArray();
+            if (indexes[0] < 0 || indexes[1] < 0) {
+                throw new UserValidationException("CSVのヘッダーに username と password が必要です");
+            }
+
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                List<String> fields = parseCsvLine(line);
+                String username = field(fields, indexes[0]);
+                String roles = field(fields, indexes[2]);
+                String enabled = field(fields, indexes[3]);
+                String email = field(fields, indexes[4]);
+                rows.add(new ImportRow(
+                        lineNumber,
+                        username != null ? username.trim() : null,
+                        field(fields, indexes[1]),
+                        normalizeRoles(roles == null ? List.of() : Arrays.asList(roles.split(";"))),
+                        enabled == null || enabled.isBlank() || parseBoolean(enabled),
+                        email == null || email.isBlank() ? null : email.trim(),
+                        enabled != null && !enabled.isBlank() && !isBoolean(enabled)
+                                ? "enabledは true または false で指定してください" : null));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * JSONを読み込む
+     * [{"username": "...", "password": "...", "roles": ["USER"], "enabled": true, "email": "..."}] の形式
+     */
+    private List<ImportRow> parseJson(byte[] content) {
+        JsonNode root = jsonMapper.readTree(content);
+        if (!root.isArray()) {
+            throw new UserValidationException("JSONはユーザーの配列で指定してください");
+        }
+        List<ImportRow> rows = new ArrayList<>(root.size());
+        int index = 0;
+        for (JsonNode node : root) {
+            index++;
+            if (!node.isObject()) {
+                rows.add(new ImportRow(index, null, null, List.of(), true, null, "ユーザーはオブジェクトで指定してください"));
+                continue;
+            }
+            List<String> roles = new ArrayList<>();
+            JsonNode rolesNode = node.path("roles");
+            if (rolesNode.isArray()) {
+                rolesNode.forEach(role -> roles.add(role.asString("")));
+            } else if (!rolesNode.isMissingNode() && !rolesNode.isNull()) {
+                roles.addAll(Arrays.asList(rolesNode.asString("").split(";")));
+            }
+            String email = node.path("email").asString(null);
+            rows.add(new ImportRow(
+                    index,
+                    textOrNull(node.path("username")),
+                    textOrNull(node.path("password")),
+                    normalizeRoles(roles),
+                    node.path("enabled").asBoolean(true),
+                    email == null || email.isBlank() ? null : email.trim(),
+                    null));
+        }
+        return rows;
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node.isMissingNode() || node.isNull() ? null : node.asString();
+    }
+
+    private static List<String> normalizeRoles(List<String> roles) {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String role : roles) {
+            String trimmed = role.trim().toUpperCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                normalized.add(trimmed.startsWith("ROLE_") ? trimmed : "ROLE_" + trimmed);
+            }
+        }
+        return List.copyOf(normalized);
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index) : null;
+    }
+
+    private static boolean isBoolean(String value) {
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        return normalized.equals("true") || normalized.equals("false")
+                || normalized.equals("1") || normalized.equals("0");
+    }
+
+    private static boolean parseBoolean(String value) {
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        return normalized.equals("true") || normalized.equals("1");
+    }
+
+    /**
+     * CSVの1行を分割する（ダブルクォートで囲まれたフィールドに対応）
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    /**
+     * 取り込み対象の1行
+     *
+     * @param error 読み込み時に検出したエラー（なければnull）
+     */
+    private record ImportRow(int line, String username, String password, List<String> roles,
+                             boolean enabled, String email, String error) {
+    }
+}
@@ -0,0 +1,276 @@
+package com.sn0326.cicddemo.service.weakpassword;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 弱いパスワードのハッシュファイル（メモリマップ方式）
+ *
+ * 大量の漏洩パスワードリストをヒープに載せずに照合するための読み取り専用ストアです。
+ * パスワード（小文字化）のSHA-256先頭8バイトを固定長で昇順に並べ、二分探索で検索します。
+ * 検索の前にブルームフィルタ（ハッシュ値の後ろに配置）を確認し、リストに含まれないパスワードの大半は二分探索せずに除外します。
+ *
+ * ファイル形式（ビッグエンディアン）:
+ * - ヘッダー（32バイト）: マジック, バージョン, 件数, ブルームフィルタのハッシュ関数数, 予約, ブルームフィルタのビット数
+ * - ハッシュ値（8バイト × 件数、昇順）
+ * - ブルームフィルタ（ビット数 / 8 バイト）
+ *
+ * ファイル全体を読み取り専用でメモリマップするため、ヒープ使用量はほぼゼロです。
+ */
+public final class WeakPasswordHashFile {
+
+    private static final int MAGIC = 0x57504831; // "WPH1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private final MappedByteBuffer buffer;
+    private final long count;
+    private final int bloomHashes;
+    private final long bloomBits;
+    private final long bloomOffset;
+
+    private WeakPasswordHashFile(MappedByteBuffer buffer, long count, int bloomHashes, long bloomBits) {
+        this.buffer = buffer;
+        this.count = count;
+        this.bloomHashes = bloomHashes;
+        this.bloomBits = bloomBits;
+        this.bloomOffset = HEADER_SIZE + count * Long.BYTES;
+    }
+
+    /**
+     * ハッシュファイルを読み取り専用でメモリマップします
+     *
+     * @param path ファイルパス
+     * @return ハッシュファイル
+     * @throws IOException 読み込みに失敗した場合、またはファイル形式が不正な場合
+     */
+    public static WeakPasswordHashFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("弱いパスワードのハッシュファイルのサイズが不正です: " + path + " (" + size + " bytes)");
+            }
+            // マッピングはチャネルを閉じた後も有効
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("弱いパスワードのハッシュファイルの形式が不正です: " + path);
+            }
+            long count = buffer.getLong(8);
+            int bloomHashes = buffer.getInt(16);
+            long bloomBits = buffer.getLong(24);
+            if (HEADER_SIZE + count * Long.BYTES + bloomBits / Byte.SIZE != size) {
+                throw new IOException("弱いパスワードのハッシュファイルが破損しています: " + path);
+            }
+            return new WeakPasswordHashFile(buffer, count, bloomHashes, bloomBits);
+        }
+    }
+
+    /**
+     * パスワードがリストに含まれているかチェック
+     *
+     * @param password チェック対象のパスワード（大文字小文字は区別しない）
+     * @return 含まれている場合true
+     */
+    public boolean contains(String password) {
+        long hash = hash(password);
+        return mightContain(hash) && binarySearch(hash);
+    }
+
+    /**
+     * 登録されているパスワード数を取得
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * パスワードのハッシュ値（小文字化したUTF-8のSHA-256先頭8バイト）を計算
+     */
+    static long hash(String password) {
+        byte[] digest = sha256().digest(password.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(digest).getLong();
+    }
+
+    private boolean mightContain(long hash) {
+        if (bloomBits == 0) {
+            return false;
+        }
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= bloomHashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bloomBits);
+            byte b = buffer.get((int) (bloomOffset + bit / Byte.SIZE));
+            if ((b & (1 << (bit % Byte.SIZE))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean binarySearch(long hash) {
+        long low = 0;
+        long high = count - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long value = buffer.getLong((int) (HEADER_SIZE + mid * Long.BYTES));
+            if (value < hash) {
+                low = mid + 1;
+            } else if (value > hash) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * ハッシュファイルの作成
+     *
+     * 追加されたパスワードのハッシュ値を一時的にlong配列で保持し、
+     * ソート・重複除去した上でブルームフィルタとともにファイルへ書き出します。
+     */
+    public static final class Builder {
+
+        private long[] hashes = new long[1024];
+        private int size;
+
+        /**
+         * パスワードを追加
+         *
+         * @param password パスワード（空の場合は無視）
+         */
+        public void add(String password) {
+            if (password == null || password.isEmpty()) {
+                return;
+            }
+            if (size == hashes.length) {
+                if (hashes.length >= Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("弱いパスワードの件数が上限を超えました");
+                }
+                hashes = Arrays.copyOf(hashes, (int) Math.min((long) hashes.length * 2, Integer.MAX_VALUE - 8));
+            }
+            hashes[size++] = hash(password);
+        }
+
+        /**
+         * ハッシュファイルを書き出します
+         * 一時ファイルに書き込んだ後にリネームするため、読み込み中のファイルを壊しません
+         *
+         * @param path 出力先
+         * @param falsePositiveRate ブルームフィルタの偽陽性率
+         * @return 書き出した件数（重複除去後）
+         * @throws IOException 書き込みに失敗した場合
+         */
+        public long writeTo(Path path, double falsePositiveRate) throws IOException {
+            Arrays.parallelSort(hashes, 0, size);
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (count == 0 || hashes[count - 1] != hashes[i]) {
+                    hashes[count++] = hashes[i];
+                }
+            }
+
+            long bloomBits = bloomBits(count, falsePositiveRate);
+            int bloomHashes = bloomHashes(count, bloomBits);
+            byte[] bloom = new byte[Math.toIntExact(bloomBits / Byte.SIZE)];
+            for (int i = 0; i < count; i++) {
+                int h1 = (int) hashes[i];
+                int h2 = (int) (hashes[i] >>> 32);
+                for (int k = 1; k <= bloomHashes; k++) {
+                    long bit = Math.floorMod(h1 + (long) k * h2, bloomBits);
+                    bloom[(int) (bit / Byte.SIZE)] |= (byte) (1 << (bit % Byte.SIZE));
+                }
+            }
+
+            long fileSize = HEADER_SIZE + (long) count * Long.BYTES + bloom.length;
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("弱いパスワードのハッシュファイルが大きすぎます: " + fileSize + " bytes");
+            }
+
+            Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                            .putInt(MAGIC)
+                            .putInt(VERSION)
+                            .putLong(count)
+                            .putInt(bloomHashes)
+                            .putInt(0)
+                            .putLong(bloomBits)
+                            .flip();
+                    writeFully(channel, header);
+
+                    ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+                    for (int i = 0; i < count; i++) {
+                        if (!chunk.hasRemaining()) {
+                            writeFully(channel, chunk.flip());
+                            chunk.clear();
+                        }
+                        chunk.putLong(hashes[i]);
+                    }
+                    writeFully(channel, chunk.flip());
+                    writeFully(channel, ByteBuffer.wrap(bloom));
+                    channel.force(true);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            hashes = new long[0];
+            size = 0;
+            return count;
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * ブルームフィルタのビット数（64の倍数）を計算: m = -n ln(p) / (ln 2)^2
+         */
+        private static long bloomBits(int count, double falsePositiveRate) {
+            if (count == 0) {
+                return 0;
+            }
+            double bits = -count * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+            return Math.max(64, ((long) Math.ceil(bits) + 63) / 64 * 64);
+        }
+
+        /**
+         * ブルームフィルタのハッシュ関数数を計算: k = (m / n) ln 2
+         */
+        private static int bloomHashes(int count, long bloomBits) {
+            if (count == 0) {
+                return 0;
+            }
+            return Math.max(1, (int) Math.round((double) bloomBits / count * Math.log(2)));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.sn0326.cicddemo.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 有界キューに積んだ要素をバックグラウンドのスレッドでまとめて処理するワーカー
+ *
+ * ログイン履歴・レート制限の試行記録の書き込みや、不審なログインの判定で共通に使用します。
+ * - 呼び出し元はキューへの追加のみを行い、満杯時の扱い（破棄・同期処理など）は呼び出し元が決める
+ * - ワーカーは最初の1件を待ってから、キューに溜まっている分をbatchSize件までまとめて処理する
+ * - 処理中の例外はログに出力して次のバッチへ進む（失敗の記録は処理側で行う）
+ * - 停止時は残りを処理するか、破棄するかを選べる
+ *
+ * @param <T> キューに積む要素
+ */
+public class BatchingQueueWorker<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingQueueWorker.class);
+
+    /** 停止時にワーカーの終了を待つ最大時間 */
+    private static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int batchSize;
+    private final Consumer<List<T>> handler;
+
+    private Thread worker;
+    private volatile boolean running;
+
+    /**
+     * コンストラクタ
+     * @param name ワーカースレッド名（ログ出力にも使用）
+     * @param queueCapacity キューの最大件数
+     * @param batchSize 1回にまとめて処理する最大件数
+     * @param handler バッチを処理する関数（ワーカースレッド、または停止時は呼び出し元スレッドで呼ばれる）
+     */
+    public BatchingQueueWorker(String name, int queueCapacity, int batchSize, Consumer<List<T>> handler) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.handler = handler;
+    }
+
+    /**
+     * ワーカースレッドを開始する
+     */
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform()
+                .name(name)
+                .daemon(true)
+                .start(this::run);
+    }
+
+    /**
+     * キューへ追加する（待機しない）
+     *
+     * @return 追加できた場合true（停止後・満杯の場合はfalse）
+     */
+    public boolean offer(T element) {
+        return running && queue.offer(element);
+    }
+
+    /**
+     * キューへ追加する（満杯の場合は最大timeoutまで待機する）
+     *
+     * @return 追加できた場合true（停止後・タイムアウトした場合はfalse）
+     */
+    public boolean offer(T element, long timeout, TimeUnit unit) throws InterruptedException {
+        return running && queue.offer(element, timeout, unit);
+    }
+
+    /**
+     * キューに溜まっている件数を取得
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * ワーカーを停止する
+     *
+     * @param drain trueの場合は処理中のバッチの完了を待ってから残りを呼び出し元スレッドで処理し、
+     *              falseの場合はワーカーに割り込んで残りを破棄する
+     */
+    public void stop(boolean drain) {
+        running = false;
+        if (worker == null) {
+            return;
+        }
+        if (!drain) {
+            worker.interrupt();
+            queue.clear();
+            return;
+        }
+        // 処理中のバッチを中断しないよう割り込みは行わず、ワーカーの終了を待つ
+        try {
+            worker.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<T> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            handle(batch);
+            batch.clear();
+        }
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                T first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                handle(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void handle(List<T> batch) {
+        try {
+            handler.accept(batch);
+        } catch (Exception e) {
+            logger.error("Unexpected error in queue worker: name={}, batch={}", name, batch.size(), e);
+        }
+    }
+}
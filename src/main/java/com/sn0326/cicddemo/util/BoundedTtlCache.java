@@ -0,0 +1,207 @@
+package com.sn0326.cicddemo.util;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 有効期限と最大件数を持つメモリ上のキャッシュ
+ *
+ * ユーザー情報・OIDC連携・Remember Meトークン・パスキー・ログイン日時・ログイン元のキャッシュで共通に使用します。
+ * - 有効期限を過ぎたエントリは取得時に削除し、ミスとして扱う
+ * - 上限到達時は期限切れエントリを削除し、なければ任意の1件を削除する
+ *   （期限切れエントリの一括削除はSWEEP_INTERVAL_MILLISに1回までとし、新しいキーのたびに全件を走査しない）
+ * - 有効期限または最大件数がゼロ以下の場合は何もキャッシュしない
+ *
+ * 複数インスタンス構成では、他のインスタンスでの変更は最大で有効期限の間反映されません。
+ * 無効化の遅れが問題になる用途では、有効期限を短くしてください。
+ *
+ * @param <K> キー
+ * @param <V> 値
+ */
+public class BoundedTtlCache<K, V> {
+
+    /** 上限到達時に期限切れエントリを一括削除する最小間隔 */
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final int maxSize;
+    private final AtomicLong nextSweepAt = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * コンストラクタ
+     * @param ttl キャッシュの有効期限（ゼロの場合はキャッシュしない）
+     * @param maxSize キャッシュする最大件数
+     */
+    public BoundedTtlCache(Duration ttl, int maxSize) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * キャッシュが有効か（有効期限・最大件数がともに正の値か）
+     */
+    public boolean isEnabled() {
+        return ttlMillis > 0 && maxSize > 0;
+    }
+
+    /**
+     * 値を取得する（ヒット数・ミス数を計測する）
+     *
+     * @return 有効期限内の値。ない場合はnull
+     */
+    public V get(K key) {
+        V value = peek(key);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 値を取得する（ヒット数・ミス数を計測しない）
+     * 更新時に現在の値を参照する場合に使う
+     *
+     * @return 有効期限内の値。ない場合はnull
+     */
+    public V peek(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * 値を格納する（有効期限は格納時点から数える）
+     */
+    public void put(K key, V value) {
+        if (!isEnabled()) {
+            return;
+        }
+        makeRoomFor(key);
+        entries.put(key, newEntry(value));
+    }
+
+    /**
+     * 値を格納する。既存の値がある場合はkeepで残す方を選ぶ
+     * 同時に読み込んだ古い値で更新後の値を上書きしないために使う
+     *
+     * @param keep (既存の値, 新しい値) から残す方を返す関数。既存の値を返した場合は有効期限も延長しない
+     */
+    public void merge(K key, V value, BinaryOperator<V> keep) {
+        if (!isEnabled()) {
+            return;
+        }
+        makeRoomFor(key);
+        entries.merge(key, newEntry(value), (current, candidate) -> {
+            if (current.isExpired(System.currentTimeMillis())) {
+                return candidate;
+            }
+            return keep.apply(current.value(), candidate.value()) == current.value() ? current : candidate;
+        });
+    }
+
+    /**
+     * 現在の値から新しい値を求めて格納する（同じキーの更新とは原子的に行う）
+     * 有効期限は格納時点から数える
+     *
+     * @param remapping 現在の値（ない場合・期限切れの場合はnull）から新しい値を返す関数。nullを返した場合は削除する
+     */
+    public void compute(K key, UnaryOperator<V> remapping) {
+        if (!isEnabled()) {
+            return;
+        }
+        makeRoomFor(key);
+        entries.compute(key, (k, current) -> {
+            long now = System.currentTimeMillis();
+            V value = remapping.apply(current == null || current.isExpired(now) ? null : current.value());
+            return value == null ? null : new Entry<>(value, now + ttlMillis);
+        });
+    }
+
+    /**
+     * 値を削除する
+     *
+     * @return 削除した場合はtrue
+     */
+    public boolean remove(K key) {
+        return entries.remove(key) != null;
+    }
+
+    /**
+     * 条件に一致する値をすべて削除する（全件を走査する）
+     */
+    public void removeIf(Predicate<? super V> filter) {
+        entries.values().removeIf(entry -> filter.test(entry.value()));
+    }
+
+    /**
+     * キャッシュヒット数を取得
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * キャッシュミス数を取得
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * キャッシュされている件数を取得（期限切れで未削除のエントリを含む）
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry<V> newEntry(V value) {
+        return new Entry<>(value, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * 上限到達時に空きを作る
+     * 期限切れエントリを優先して削除し、なければ任意の1件を削除する
+     */
+    private void makeRoomFor(K key) {
+        if (entries.size() < maxSize || entries.containsKey(key)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long sweepAt = nextSweepAt.get();
+        if (now >= sweepAt && nextSweepAt.compareAndSet(sweepAt, now + SWEEP_INTERVAL_MILLIS)) {
+            entries.values().removeIf(entry -> entry.isExpired(now));
+        }
+        if (entries.size() >= maxSize) {
+            Iterator<K> it = entries.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.sn0326.cicddemo.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
+/**
+ * クライアントのIPアドレスを取得するユーティリティ
+ *
+ * ログイン履歴の記録とIPアドレス単位のスロットリングで使用するため、取得方法をここに集約しています。
+ * - resolve: 表示・記録用。X-Forwarded-Forの先頭（クライアントが自由に設定できる値）を含めて返す
+ * - resolveTrusted: 不審なログインの判定用。信頼できるプロキシが付加したアドレスのみを使う
+ * - resolveThrottleKey: 制限の判定用。resolveTrustedのアドレスを正規化し、IPv6は/64単位にまとめる
+ */
+public final class ClientIpAddressResolver {
+
+    /** IPアドレスとして解釈できない場合のキー（同じ制限枠を共有させる） */
+    public static final String UNKNOWN_KEY = "unknown";
+
+    private static final Pattern IPV4_LITERAL = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final Pattern IPV6_LITERAL = Pattern.compile("[0-9a-fA-F:.]{2,45}");
+
+    /** IPv6は利用者ごとに/64が割り当てられるため、/64単位で制限する */
+    private static final int IPV6_PREFIX_BYTES = 8;
+
+    private ClientIpAddressResolver() {
+    }
+
+    /**
+     * クライアントのIPアドレスを取得する
+     * プロキシ経由の場合はX-Forwarded-Forヘッダーを確認
+     *
+     * @param request HTTPリクエスト
+     * @return IPアドレス
+     */
+    public static String resolve(HttpServletRequest request) {
+        String xForwardedFor = request.getHeader("X-Forwarded-For");
+        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
+            // X-Forwarded-Forには複数のIPが含まれる場合があるため、最初のIPを取得
+            int comma = xForwardedFor.indexOf(',');
+            return (comma < 0 ? xForwardedFor : xForwardedFor.substring(0, comma)).trim();
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * 判定に使うクライアントのIPアドレスを取得する（正規化は行わない）
+     * X-Forwarded-Forは直接参照しない（理由はresolveThrottleKeyを参照）
+     *
+     * @param request HTTPリクエスト
+     * @return 信頼できるプロキシを除いた最初のIPアドレス
+     */
+    public static String resolveTrusted(HttpServletRequest request) {
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * 制限の判定に使うクライアントのキーを取得する
+     *
+     * X-Forwarded-Forは直接参照せず、request.getRemoteAddr()を使う。
+     * server.forward-headers-strategy: NATIVEの場合、TomcatのRemoteIpValveが信頼できるプロキシ
+     * （server.tomcat.remoteip.internal-proxies / trusted-proxies）を右から除いた最初のアドレスを設定するため、
+     * クライアントが付加した偽のアドレスは使われない。
+     * IPアドレスの表記に正規化し、IPv6は/64単位にまとめる。解釈できない場合はUNKNOWN_KEYを返す
+     *
+     * @param request HTTPリクエスト
+     * @return 正規化したIPアドレス（IPv6は「プレフィックス/64」）
+     */
+    public static String resolveThrottleKey(HttpServletRequest request) {
+        String address = resolveTrusted(request);
+        if (address == null) {
+            return UNKNOWN_KEY;
+        }
+        if (IPV4_LITERAL.matcher(address).matches()) {
+            return normalizeIpv4(address);
+        }
+        // IPv6の表記（「:」を含む）のみを解釈するため、名前解決は行われない
+        if (address.indexOf(':') < 0 || !IPV6_LITERAL.matcher(address).matches()) {
+            return UNKNOWN_KEY;
+        }
+        try {
+            InetAddress inetAddress = InetAddress.getByName(address);
+            if (inetAddress instanceof Inet6Address) {
+                byte[] prefix = new byte[16];
+                System.arraycopy(inetAddress.getAddress(), 0, prefix, 0, IPV6_PREFIX_BYTES);
+                return InetAddress.getByAddress(prefix).getHostAddress() + "/64";
+            }
+            return inetAddress.getHostAddress();
+        } catch (UnknownHostException e) {
+            return UNKNOWN_KEY;
+        }
+    }
+
+    /**
+     * IPv4の表記を正規化する（先頭の0を除く）。範囲外のオクテットを含む場合はUNKNOWN_KEYを返す
+     */
+    private static String normalizeIpv4(String address) {
+        StringBuilder normalized = new StringBuilder(15);
+        for (String octet : address.split("\\.")) {
+            int value = Integer.parseInt(octet);
+            if (value > 255) {
+                return UNKNOWN_KEY;
+            }
+            if (!normalized.isEmpty()) {
+                normalized.append('.');
+            }
+            normalized.append(value);
+        }
+        return normalized.toString();
+    }
+}
@@ -33,9 +33,27 @@ CREATE TABLE IF NOT EXISTS user_oidc_connections (
 CREATE INDEX IF NOT EXISTS idx_oidc_username ON user_oidc_connections(username);
 CREATE INDEX IF NOT EXISTS idx_oidc_provider_id ON user_oidc_connections(provider, provider_id);
 
--- ログインテーブル
+-- 旧形式（パーティションなし）のuser_loginsをuser_logins_legacyへ退避する
+-- 行は下のブロックでパーティション化したuser_loginsへ移し、月ごとのパーティションへの振り分けは
+-- UserLoginPartitionServiceが起動時に行う
+-- （spring.sql.initはドル引用符を解釈しないため、本体は単一引用符で記述する）
+DO '
+BEGIN
+    IF (SELECT relkind FROM pg_class WHERE oid = to_regclass(''user_logins'')) = ''r'' THEN
+        ALTER TABLE user_logins RENAME TO user_logins_legacy;
+        ALTER TABLE user_logins_legacy RENAME CONSTRAINT user_logins_pkey TO user_logins_legacy_pkey;
+        ALTER SEQUENCE IF EXISTS user_logins_id_seq RENAME TO user_logins_legacy_id_seq;
+        DROP INDEX IF EXISTS idx_user_logins_username;
+        DROP INDEX IF EXISTS idx_user_logins_logged_in_at;
+        DROP INDEX IF EXISTS idx_user_logins_username_logged_in_at;
+    END IF;
+END';
+
+-- ログインテーブル（logged_in_atによる月単位のレンジパーティション）
+-- 月ごとのパーティション（user_logins_pYYYYMM）はUserLoginPartitionServiceが起動時と定期的に作成し、
+-- 保持期間を過ぎたパーティションは行単位のDELETEではなくパーティションごと削除する
 CREATE TABLE IF NOT EXISTS user_logins (
-    id              SERIAL PRIMARY KEY,
+    id              BIGSERIAL,
     username        VARCHAR(50) NOT NULL,
     logged_in_at    TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     login_method    VARCHAR(20) NOT NULL,     -- 'FORM', 'OIDC', or 'PASSKEY'
@@ -43,13 +61,30 @@ CREATE TABLE IF NOT EXISTS user_logins (
     ip_address      VARCHAR(45),              -- IPv4/IPv6対応
     user_agent      VARCHAR(500),
     success         BOOLEAN NOT NULL DEFAULT true,
+    PRIMARY KEY (id, logged_in_at),
     CONSTRAINT fk_user_logins_users FOREIGN KEY(username) REFERENCES users(username) ON DELETE CASCADE
-);
+) PARTITION BY RANGE (logged_in_at);
+
+-- 対応する月のパーティションがない行の受け皿
+CREATE TABLE IF NOT EXISTS user_logins_default PARTITION OF user_logins DEFAULT;
 
-CREATE INDEX IF NOT EXISTS idx_user_logins_username ON user_logins(username);
+-- パーティションごとに作成される（username単独のインデックスは複合インデックスで代替）
 CREATE INDEX IF NOT EXISTS idx_user_logins_logged_in_at ON user_logins(logged_in_at DESC);
 CREATE INDEX IF NOT EXISTS idx_user_logins_username_logged_in_at ON user_logins(username, logged_in_at DESC);
 
+-- 退避した旧形式の行を移す（いったんデフォルトパーティションに入る）
+DO '
+BEGIN
+    IF to_regclass(''user_logins_legacy'') IS NOT NULL THEN
+        INSERT INTO user_logins (id, username, logged_in_at, login_method, oidc_provider, ip_address, user_agent, success)
+            SELECT id, username, logged_in_at, login_method, oidc_provider, ip_address, user_agent, success
+            FROM user_logins_legacy;
+        PERFORM setval(pg_get_serial_sequence(''user_logins'', ''id''),
+                       COALESCE((SELECT MAX(id) FROM user_logins), 0) + 1, false);
+        DROP TABLE user_logins_legacy;
+    END IF;
+END';
+
 -- 弱いパスワードテーブル（NIST SP 800-63B準拠）
 CREATE TABLE IF NOT EXISTS weak_passwords (
     id SERIAL PRIMARY KEY,
@@ -60,6 +95,42 @@ CREATE TABLE IF NOT EXISTS weak_passwords (
 );
 
 CREATE INDEX IF NOT EXISTS idx_weak_passwords_password ON weak_passwords(password);
+CREATE INDEX IF NOT EXISTS idx_weak_passwords_updated_at ON weak_passwords(updated_at);
+
+-- 削除された弱いパスワードの記録（トゥームストーン）
+-- キャッシュのリフレッシュはupdated_atと同様にdeleted_atのウォーターマーク以降のみを読み込み、
+-- 件数の比較や全ID走査をせずに削除を反映する
+CREATE TABLE IF NOT EXISTS weak_password_deletions (
+    id BIGSERIAL PRIMARY KEY,
+    weak_password_id INT NOT NULL,
+    deleted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_weak_password_deletions_deleted_at ON weak_password_deletions(deleted_at);
+
+-- 削除経路（管理画面・手動のSQL等）に関わらず記録するため、トリガーで登録する
+-- （spring.sql.initはドル引用符を解釈しないため、本体は単一引用符で記述する）
+CREATE OR REPLACE FUNCTION record_weak_password_deletion() RETURNS trigger LANGUAGE plpgsql AS '
+BEGIN
+    INSERT INTO weak_password_deletions (weak_password_id) VALUES (OLD.id);
+    RETURN OLD;
+END';
+
+DROP TRIGGER IF EXISTS trg_weak_passwords_deleted ON weak_passwords;
+CREATE TRIGGER trg_weak_passwords_deleted AFTER DELETE ON weak_passwords
+    FOR EACH ROW EXECUTE FUNCTION record_weak_password_deletion();
+
+-- 更新経路（JPAの@PreUpdate以外の直接のSQL等）に関わらずキャッシュのリフレッシュで検出できるよう、
+-- updated_atもトリガーで設定する
+CREATE OR REPLACE FUNCTION touch_weak_password_updated_at() RETURNS trigger LANGUAGE plpgsql AS '
+BEGIN
+    NEW.updated_at := CURRENT_TIMESTAMP;
+    RETURN NEW;
+END';
+
+DROP TRIGGER IF EXISTS trg_weak_passwords_updated ON weak_passwords;
+CREATE TRIGGER trg_weak_passwords_updated BEFORE UPDATE ON weak_passwords
+    FOR EACH ROW EXECUTE FUNCTION touch_weak_password_updated_at();
 
 -- ログイン失敗記録テーブル（アカウントロックアウト機能）
 CREATE TABLE IF NOT EXISTS failed_authentications (
@@ -70,6 +141,20 @@ CREATE TABLE IF NOT EXISTS failed_authentications (
 );
 
 CREATE INDEX IF NOT EXISTS idx_failed_auth_lookup ON failed_authentications(username, authentication_timestamp DESC);
+CREATE INDEX IF NOT EXISTS idx_failed_auth_timestamp ON failed_authentications(authentication_timestamp);
+
+-- ログイン件数の時間単位集計（管理者ダッシュボード用）
+-- LoginRollupServiceがメモリ上で集計し、定期的に加算のUPSERTで書き込む
+-- oidc_providerはOIDC以外の場合は空文字（主キーに含めるためNULLにしない）
+CREATE TABLE IF NOT EXISTS login_rollups_hourly (
+    bucket_start    TIMESTAMP NOT NULL,       -- 集計対象の時間（毎時0分0秒）
+    login_method    VARCHAR(20) NOT NULL,     -- 'FORM', 'OIDC', or 'PASSKEY'
+    oidc_provider   VARCHAR(20) NOT NULL DEFAULT '',
+    success_count   BIGINT NOT NULL DEFAULT 0,
+    failure_count   BIGINT NOT NULL DEFAULT 0,  -- 認証情報の誤り等による失敗
+    rejected_count  BIGINT NOT NULL DEFAULT 0,  -- パスワードのハッシュ計算の混雑による拒否（failure_countに含めない）
+    PRIMARY KEY (bucket_start, login_method, oidc_provider)
+);
 
 -- Remember Me永続トークンテーブル（Spring Security標準）
 CREATE TABLE IF NOT EXISTS persistent_logins (
@@ -113,6 +198,9 @@ CREATE TABLE IF NOT EXISTS user_credentials (
     PRIMARY KEY (credential_id)
 );
 
+-- 認証・登録オプション生成時のユーザー単位の検索用
+CREATE INDEX IF NOT EXISTS idx_user_credentials_user_entity_user_id ON user_credentials(user_entity_user_id);
+
 -- ユーザーとパスキーの紐付けテーブル
 -- 既存のusersテーブル（username）とuser_entities（id）を紐付け
 -- Spring SecurityのWebAuthn実装では直接の紐付けは不要だが、
@@ -189,3 +277,35 @@ CREATE TABLE IF NOT EXISTS email_change_attempts (
 
 CREATE INDEX IF NOT EXISTS idx_email_change_attempts_time
     ON email_change_attempts(attempt_time);
+
+-- メール送信アウトボックステーブル（トランザクショナルアウトボックス）
+-- 通知メールは業務処理と同じトランザクションで登録し、バックグラウンドで送信する
+-- text_body/html_bodyは送信待ちの間のみ保持する（送信済み・送信失敗でNULLにする）
+CREATE TABLE IF NOT EXISTS mail_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    provider VARCHAR(20) NOT NULL,
+    recipient VARCHAR(255) NOT NULL,
+    sender VARCHAR(255),
+    subject VARCHAR(500) NOT NULL,
+    text_body TEXT,
+    html_body TEXT,
+    metadata TEXT,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',  -- 'PENDING', 'SENT', 'FAILED'
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    locked_until TIMESTAMP,
+    last_error VARCHAR(1000),
+    message_id VARCHAR(255),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    sent_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_mail_outbox_pending
+    ON mail_outbox(next_attempt_at) WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_mail_outbox_created_at_done
+    ON mail_outbox(created_at) WHERE status <> 'PENDING';
+
+-- 本文には秘密情報（リセットURL・一時パスワード等）が含まれるため送信完了時に削除する
+-- 以前のバージョンで本文を残したまま送信済みになった行もここで削除する
+UPDATE mail_outbox SET text_body = NULL, html_body = NULL
+    WHERE status <> 'PENDING' AND (text_body IS NOT NULL OR html_body IS NOT NULL);